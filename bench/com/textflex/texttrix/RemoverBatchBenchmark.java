@@ -0,0 +1,153 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is the Text Trix code.
+ *
+ * The Initial Developer of the Original Code is
+ * Text Flex.
+ * Portions created by the Initial Developer are Copyright (C) 2003-4
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s): David Young <dvd@textflex.com>
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+
+
+package com.textflex.texttrix;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**Throughput benchmark for cleaning batches of small messages.
+ * Cleans messages of a few kilobytes each from the synthetic corpora
+ * of {@link RemoverCorpus} one run at a time, as a batch on the 
+ * calling thread, and as a batch in parallel, reporting messages and
+ * megabytes per second for each, and checks that all three give the
+ * same output.
+ * <p>Usage:
+ * <pre>
+ * java com.textflex.texttrix.RemoverBatchBenchmark [-messages &#060;n&#062;] 
+ *     [-min &#060;chars&#062;] [-max &#060;chars&#062;] [-time &#060;secs&#062;]
+ * </pre>
+ * The process exits with status 1 if the outputs differ.
+*/
+public class RemoverBatchBenchmark {
+	
+	/**Runs the benchmark.
+	 * @param args <code>-messages</code> for the number of messages in 
+	 * a batch, 10,000 by default; <code>-min</code> and 
+	 * <code>-max</code> for the range of sizes of the messages in chars,
+	 * 2000 and 5000 by default; <code>-time</code> for the seconds to 
+	 * measure each way of cleaning, 3 by default
+	*/
+	public static void main(String[] args) {
+		int count = 10000;
+		int min = 2000;
+		int max = 5000;
+		double time = 3;
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-messages")) {
+				count = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-min")) {
+				min = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-max")) {
+				max = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-time")) {
+				time = Double.parseDouble(args[++i]);
+			} else {
+				System.err.println("Unknown option: " + args[i]);
+				System.exit(2);
+			}
+		}
+		
+		Random random = new Random(1);
+		List<String> messages = new ArrayList<String>();
+		long chars = 0;
+		for (int i = 0; i < count; i++) {
+			String message = 
+				RemoverCorpus.generate(
+					RemoverCorpus.ALL[i % RemoverCorpus.ALL.length],
+					min + random.nextInt(max - min + 1));
+			messages.add(message);
+			chars += message.length();
+		}
+		ExtraReturnsRemover remover = 
+			new ExtraReturnsRemover(
+				new RemoverOptions("-,[outline].,[outline]),*", 0, true, false));
+		ForkJoinPool pool = ForkJoinPool.commonPool();
+		System.out.println(
+			count + " messages, " + chars + " chars, on " 
+				+ pool.getParallelism() + " workers");
+		System.out.println(pad("way", 10) + pad("messages/s", 14) + "MB/s");
+		
+		String[][] outputs = new String[3][];
+		String[] ways = {"single", "batch", "parallel"};
+		for (int way = 0; way < ways.length; way++) {
+			// warms up and then measures whole batches
+			for (int pass = 0; pass < 2; pass++) {
+				long start = System.nanoTime();
+				long elapsed = 0;
+				int runs = 0;
+				do {
+					if (way == 0) {
+						String[] texts = new String[count];
+						for (int i = 0; i < count; i++) {
+							texts[i] = remover.remove(messages.get(i)).getText();
+						}
+						outputs[way] = texts;
+					} else if (way == 1) {
+						outputs[way] = remover.removeAll(messages).getTexts();
+					} else {
+						outputs[way] = remover.removeAll(messages, pool).getTexts();
+					}
+					runs++;
+				} while ((elapsed = System.nanoTime() - start) < time * 1e9);
+				if (pass == 0) continue;
+				double secs = elapsed / 1e9;
+				System.out.println(
+					pad(ways[way], 10)
+						+ pad(String.format("%.0f", (double) runs * count / secs), 14)
+						+ String.format("%.1f", (double) runs * chars / secs / 1e6));
+			}
+		}
+		boolean same = 
+			Arrays.equals(outputs[0], outputs[1]) 
+				&& Arrays.equals(outputs[0], outputs[2]);
+		System.out.println(same ? "Outputs match" : "FAILED: outputs differ");
+		System.exit(same ? 0 : 1);
+	}
+	
+	/**Pads a string to fill a column.
+	 * @param s the string
+	 * @param width the width of the column
+	 * @return the padded string
+	*/
+	private static String pad(String s, int width) {
+		StringBuffer padded = new StringBuffer(s);
+		while (padded.length() < width) padded.append(' ');
+		return padded.append(' ').toString();
+	}
+}
@@ -0,0 +1,243 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is the Text Trix code.
+ *
+ * The Initial Developer of the Original Code is
+ * Text Flex.
+ * Portions created by the Initial Developer are Copyright (C) 2003-4
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s): David Young <dvd@textflex.com>
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+
+package com.textflex.texttrix;
+
+import java.lang.management.*;
+import java.util.*;
+
+/**Throughput benchmarks for the extra returns remover.
+ * Runs the remover over each of the synthetic corpora from 
+ * {@link RemoverCorpus} at sizes growing sixteenfold from 1 KB, 
+ * reporting operations per second, chars per second, and the bytes
+ * allocated per operation.  Besides cleaning entire texts on the 
+ * current thread, each corpus is also cleaned in parallel, has only a 
+ * region in the middle of the text cleaned, and has its lines indexed,
+ * both on their own and feeding the remover from an index built ahead
+ * of time as a pipeline would cache it.
+ * <p>After the runs, a scaling check compares the time per char at the
+ * largest size against that at 16 KB, for entire texts cleaned on the
+ * current thread alone, so that a speedup from the parallel path can't
+ * hide a slowdown in the remover itself.  The time per char should hold
+ * steady as texts grow, so the check fails if it grows more than 
+ * fourfold, as it would if any part of the remover turned quadratic.
+ * <p>Usage:
+ * <pre>
+ * java com.textflex.texttrix.RemoverBenchmark [-max &#060;chars&#062;] 
+ *     [-time &#060;secs&#062;] [-corpus &#060;name&#062;]
+ * </pre>
+ * The process exits with status 1 if the scaling check fails.
+*/
+public class RemoverBenchmark {
+	
+	private static final int MIN_SIZE = 1024; // smallest text
+	private static final int BASE_SIZE = 16 * 1024; // size to scale from
+	private static final int SIZE_STEP = 16; // growth between sizes
+	// greatest tolerated growth in time per char from the base size
+	private static final double MAX_SCALING = 4.0;
+	
+	private static long blackhole = 0; // keeps results from being optimized away
+	
+	/**Runs the benchmarks.
+	 * @param args <code>-max</code> for the largest text size in chars,
+	 * 16M by default; <code>-time</code> for the seconds to measure 
+	 * each run, 1 by default; <code>-corpus</code> to only run one
+	 * corpus
+	*/
+	public static void main(String[] args) {
+		int max = 16 * 1024 * 1024;
+		double time = 1;
+		String[] corpora = RemoverCorpus.ALL;
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-max")) {
+				max = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-time")) {
+				time = Double.parseDouble(args[++i]);
+			} else if (args[i].equals("-corpus")) {
+				corpora = new String[] { args[++i] };
+			} else {
+				System.err.println("Unknown option: " + args[i]);
+				System.exit(2);
+			}
+		}
+		
+		ExtraReturnsRemover remover = 
+			new ExtraReturnsRemover(
+				new RemoverOptions("-,[outline].,[outline]),*", 0, true, false));
+		
+		System.out.println(
+			pad("corpus", 10) + pad("mode", 8) + pad("chars", 12) 
+				+ pad("ops/s", 12) + pad("MB/s", 10) + pad("B alloc/op", 14)
+				+ "ns/char");
+		boolean passed = true;
+		for (int c = 0; c < corpora.length; c++) {
+			double base = 0; // ns per char at the base size
+			double largest = 0; // ns per char at the largest size
+			int largestSize = 0;
+			for (long size = MIN_SIZE; size <= max; size *= SIZE_STEP) {
+				String s = RemoverCorpus.generate(corpora[c], (int) size);
+				double nsPerChar = measure(corpora[c], "whole", remover, s, time);
+				measure(corpora[c], "parallel", remover, s, time);
+				measure(corpora[c], "region", remover, s, time);
+				measure(corpora[c], "index", remover, s, time);
+				measure(corpora[c], "indexed", remover, s, time);
+				if (size == BASE_SIZE) base = nsPerChar;
+				largest = nsPerChar;
+				largestSize = (int) size;
+			}
+			if (base > 0 && largestSize > BASE_SIZE && largest > base * MAX_SCALING) {
+				System.out.println(
+					"FAILED: " + corpora[c] + " takes " 
+						+ String.format("%.1f", largest / base) 
+						+ " times as long per char at " + largestSize 
+						+ " chars as at " + BASE_SIZE);
+				passed = false;
+			}
+		}
+		System.out.println(passed ? "Scaling check passed" : "Scaling check failed");
+		if (blackhole == 42) System.out.println(); // uses the results
+		System.exit(passed ? 0 : 1);
+	}
+	
+	/**Measures the remover on a text.
+	 * Warms up for as long as the measurement itself before measuring.
+	 * The "whole" mode cleans the entire text on the current thread, 
+	 * while the "parallel" mode cleans it in the common fork/join pool.
+	 * In the "region" mode, only the middle tenth of the text is 
+	 * cleaned.  The "index" mode only builds line indexes of the text,
+	 * while the "indexed" mode cleans the text with one index built 
+	 * beforehand.
+	 * @param corpus the name of the corpus
+	 * @param mode "whole", "parallel", "region", "index", or "indexed"
+	 * @param remover the remover to measure
+	 * @param s the text
+	 * @param time the number of seconds to measure
+	 * @return the time per char of the text, in nanoseconds
+	*/
+	private static double measure(
+		String corpus,
+		String mode,
+		ExtraReturnsRemover remover,
+		String s,
+		double time) {
+		int x = s.length() / 20 * 9;
+		int y = s.length() / 20 * 11;
+		long nanos = (long) (time * 1e9);
+		RemoverLineIndex index = (mode.equals("indexed")) 
+			? new RemoverLineIndex(s, remover.getOptions())
+			: null;
+		
+		// warm up
+		long start = System.nanoTime();
+		while (System.nanoTime() - start < nanos) {
+			blackhole += run(mode, remover, s, x, y, index);
+		}
+		
+		long alloc = allocatedBytes();
+		long ops = 0;
+		start = System.nanoTime();
+		long elapsed = 0;
+		do {
+			blackhole += run(mode, remover, s, x, y, index);
+			ops++;
+		} while ((elapsed = System.nanoTime() - start) < nanos);
+		alloc = (alloc < 0) ? -1 : (allocatedBytes() - alloc) / ops;
+		
+		double secs = elapsed / 1e9;
+		double nsPerChar = elapsed / ((double) ops * s.length());
+		System.out.println(
+			pad(corpus, 10) + pad(mode, 8) + pad("" + s.length(), 12)
+				+ pad(String.format("%.1f", ops / secs), 12)
+				+ pad(String.format("%.1f", ops * s.length() / secs / 1e6), 10)
+				+ pad(alloc < 0 ? "n/a" : "" + alloc, 14)
+				+ String.format("%.2f", nsPerChar));
+		return nsPerChar;
+	}
+	
+	/**Runs the remover, or the indexing, once on a text.
+	 * @param mode "whole", "parallel", "region", "index", or "indexed"
+	 * @param remover the remover
+	 * @param s the text
+	 * @param x the start of the selected region
+	 * @param y the end of the selected region
+	 * @param index the index of the text's lines for the "indexed" mode,
+	 * <code>null</code> for the others
+	 * @return a number from the result, to keep it from being optimized
+	 * away
+	*/
+	private static long run(
+		String mode,
+		ExtraReturnsRemover remover,
+		String s,
+		int x,
+		int y,
+		RemoverLineIndex index) {
+		if (mode.equals("index")) {
+			return new RemoverLineIndex(s, remover.getOptions()).getLineCount();
+		} else if (mode.equals("indexed")) {
+			return remover.remove(index).getText().length();
+		} else if (mode.equals("parallel")) {
+			return remover.removeParallel(s).getText().length();
+		} else if (mode.equals("region")) {
+			return remover.removeRegion(s, x, y).getText().length();
+		}
+		return remover.remove(s).getText().length();
+	}
+
+	/**Gets the number of bytes that the current thread has allocated.
+	 * @return the number of bytes, or -1 if the JVM doesn't keep track
+	*/
+	private static long allocatedBytes() {
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) bean)
+				.getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return -1;
+	}
+	
+	/**Pads a string to fill a column.
+	 * @param s the string
+	 * @param width the width of the column
+	 * @return the padded string
+	*/
+	private static String pad(String s, int width) {
+		StringBuffer padded = new StringBuffer(s);
+		while (padded.length() < width) padded.append(' ');
+		return padded.append(' ').toString();
+	}
+}
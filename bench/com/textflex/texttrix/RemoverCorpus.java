@@ -0,0 +1,218 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is the Text Trix code.
+ *
+ * The Initial Developer of the Original Code is
+ * Text Flex.
+ * Portions created by the Initial Developer are Copyright (C) 2003-4
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s): David Young <dvd@textflex.com>
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+
+package com.textflex.texttrix;
+
+import java.util.*;
+
+/**Generators of synthetic text for benchmarking the extra returns
+ * remover.
+ * Each corpus mimics one of the shapes of text that the remover sees
+ * in practice.  The text is generated from a fixed seed, so the same
+ * corpus and size always give the same text.
+*/
+public class RemoverCorpus {
+	
+	/** Hard-wrapped plain email. */
+	public static final String PLAIN = "plain";
+	/** Deeply nested inline message reply chains. */
+	public static final String REPLIES = "replies";
+	/** Documents heavy with bulleted and outlined lists. */
+	public static final String LISTS = "lists";
+	/** Email with many <code>&#060;pre&#062;</code> code blocks. */
+	public static final String PRE = "pre";
+	/** Format=flowed replies around <code>&#060;pre&#062;</code> blocks 
+	 * too long for a streamed window to hold. */
+	public static final String FLOWED = "flowed";
+	/** All the corpora. */
+	public static final String[] ALL = { PLAIN, REPLIES, LISTS, PRE, FLOWED };
+	
+	private static final String[] WORDS = {
+		"the", "remover", "strips", "hard", "returns", "from", "email",
+		"messages", "that", "arrive", "wrapped", "at", "seventy", "two",
+		"columns", "and", "leaves", "paragraphs", "alone", "while", 
+		"quoted", "replies", "lose", "their", "markers", "of", "a", "to",
+		"in", "is", "text", "line", "with", "for"
+	};
+	private static final String[] BULLETS = {
+		"- ", "* ", "1. ", "2. ", "a) ", "b) ", "iv. ", "xi. ", "\t"
+	};
+	private static final int WRAP = 72; // column at which lines wrap
+	// lines in the long pre blocks, enough to outgrow a streamed window
+	private static final int LONG_PRE_LINES = 400;
+	
+	private Random random = null;
+	private StringBuffer text = null;
+	private int size = 0;
+	
+	/**Creates a generator.
+	 * @param aSize the approximate number of chars to generate
+	*/
+	private RemoverCorpus(int aSize) {
+		random = new Random(aSize);
+		size = aSize;
+		text = new StringBuffer(aSize + 1024);
+	}
+	
+	/**Generates a corpus.
+	 * @param corpus the name of the corpus, one of {@link #ALL}
+	 * @param size the approximate number of chars to generate
+	 * @return the generated text, cut to <code>size</code> chars
+	*/
+	public static String generate(String corpus, int size) {
+		RemoverCorpus gen = new RemoverCorpus(size);
+		while (gen.text.length() < size) {
+			if (corpus.equals(PLAIN)) {
+				gen.paragraph("", 3 + gen.random.nextInt(6));
+			} else if (corpus.equals(REPLIES)) {
+				gen.replyChain();
+			} else if (corpus.equals(LISTS)) {
+				gen.list();
+			} else if (corpus.equals(PRE)) {
+				gen.preBlock();
+			} else if (corpus.equals(FLOWED)) {
+				gen.flowedReply();
+			} else {
+				throw new IllegalArgumentException("Unknown corpus: " + corpus);
+			}
+		}
+		gen.text.setLength(size);
+		return gen.text.toString();
+	}
+	
+	/**Adds a hard-wrapped paragraph followed by a blank line.
+	 * @param prefix the chars to start each line with, such as inline
+	 * reply markers
+	 * @param lines the number of lines in the paragraph
+	*/
+	private void paragraph(String prefix, int lines) {
+		for (int i = 0; i < lines; i++) {
+			line(prefix, WRAP);
+		}
+		text.append(prefix.trim()).append('\n');
+	}
+	
+	/**Adds a format=flowed paragraph, with each line but the last 
+	 * ending in a space, followed by a blank line.
+	 * @param prefix the chars to start each line with, such as inline
+	 * reply markers
+	 * @param lines the number of lines in the paragraph
+	*/
+	private void flowedParagraph(String prefix, int lines) {
+		for (int i = 0; i < lines; i++) {
+			line(prefix, WRAP);
+			if (i < lines - 1) text.insert(text.length() - 1, ' ');
+		}
+		text.append(prefix.trim()).append('\n');
+	}
+	
+	/**Adds a single line of words.
+	 * @param prefix the chars to start the line with
+	 * @param width the approximate number of chars in the line
+	*/
+	private void line(String prefix, int width) {
+		int start = text.length();
+		text.append(prefix);
+		while (text.length() - start < width - 8) {
+			text.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+		}
+		text.append(WORDS[random.nextInt(WORDS.length)]).append('\n');
+	}
+	
+	/**Adds a message with replies quoted to increasing depths, 
+	 * eg "&#062; &#062; &#062; ".
+	*/
+	private void replyChain() {
+		int depth = 1 + random.nextInt(6);
+		paragraph("", 2 + random.nextInt(3));
+		for (int d = depth; d > 0; d--) {
+			StringBuffer prefix = new StringBuffer();
+			for (int i = 0; i < d; i++) prefix.append("> ");
+			paragraph(prefix.toString(), 2 + random.nextInt(4));
+		}
+		text.append('\n');
+	}
+	
+	/**Adds an introductory line followed by list items.
+	*/
+	private void list() {
+		line("", WRAP);
+		String bullet = BULLETS[random.nextInt(BULLETS.length)];
+		int items = 2 + random.nextInt(8);
+		for (int i = 0; i < items; i++) {
+			line(bullet, 20 + random.nextInt(WRAP - 20));
+		}
+		text.append('\n');
+		paragraph("", 1 + random.nextInt(3));
+	}
+	
+	/**Adds a format=flowed message with a quoted reply, ending now and
+	 * then with a flowed line right before a long block of code between
+	 * <code>&#060;pre&#062;</code> tags that starts with a quoted line.
+	*/
+	private void flowedReply() {
+		flowedParagraph("", 2 + random.nextInt(4));
+		flowedParagraph("> ", 2 + random.nextInt(4));
+		if (random.nextInt(8) == 0) {
+			line("", WRAP);
+			text.insert(text.length() - 1, ' ');
+			text.append("<pre>\n");
+			line("> ", WRAP);
+			for (int i = 0; i < LONG_PRE_LINES; i++) {
+				line("    ", 10 + random.nextInt(50));
+			}
+			text.append("</pre>\n");
+			flowedParagraph("> ", 1 + random.nextInt(3));
+		}
+		text.append('\n');
+	}
+	
+	/**Adds a paragraph followed by a block of code between 
+	 * <code>&#060;pre&#062;</code> tags.
+	*/
+	private void preBlock() {
+		paragraph("", 1 + random.nextInt(3));
+		text.append("<pre>\n");
+		int lines = 3 + random.nextInt(20);
+		for (int i = 0; i < lines; i++) {
+			int indent = random.nextInt(4) * 4;
+			for (int j = 0; j < indent; j++) text.append(' ');
+			line("", 10 + random.nextInt(50));
+		}
+		text.append("</pre>\n\n");
+	}
+}
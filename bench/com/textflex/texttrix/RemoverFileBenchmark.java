@@ -0,0 +1,265 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is the Text Trix code.
+ *
+ * The Initial Developer of the Original Code is
+ * Text Flex.
+ * Portions created by the Initial Developer are Copyright (C) 2003-4
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s): David Young <dvd@textflex.com>
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+
+package com.textflex.texttrix;
+
+import java.io.*;
+import java.lang.management.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.*;
+
+/**File-to-file benchmark for the extra returns remover.
+ * Writes a UTF-8 file of a synthetic corpus from {@link RemoverCorpus},
+ * 1 GB by default, and cleans it into another file through the mapped
+ * channel path, which works on the UTF-8 bytes without decoding them;
+ * through a reader and writer, which decode and encode the text a 
+ * window at a time; through the <code>String</code> path, which
+ * reads the whole file onto the heap, cleans it, and writes it back 
+ * out; and through the pieces path, which reads the whole file onto 
+ * the heap as well but cleans it into pieces that point into it, 
+ * writing them straight out without building a cleaned copy.  Reports
+ * the throughput of each path and the peak heap that each one took, 
+ * and checks that all the paths give the same output.
+ * The "flowed" corpus gets cleaned with the format=flowed option set,
+ * which checks the streamed paths against <code>&#060;pre&#062;</code>
+ * blocks that outgrow their windows.
+ * The <code>String</code> and pieces paths need a heap several times 
+ * the size of the file, so they get reported as out of memory rather
+ * than failing the run when the heap is too small.
+ * <p>Usage:
+ * <pre>
+ * java com.textflex.texttrix.RemoverFileBenchmark [-size &#060;bytes&#062;] 
+ *     [-corpus &#060;name&#062;] [-dir &#060;directory&#062;]
+ * </pre>
+ * The process exits with status 1 if the outputs differ.
+*/
+public class RemoverFileBenchmark {
+	
+	private static final int CHUNK_SIZE = 16 * 1024 * 1024; // chars per chunk
+	private static final int REPEATS = 3; // runs of each path
+	
+	/**Runs the benchmark.
+	 * @param args <code>-size</code> for the size of the file in bytes,
+	 * 1 GB by default; <code>-corpus</code> for the corpus to write, 
+	 * "replies" by default; <code>-dir</code> for the directory in 
+	 * which to write the files, the temporary directory by default
+	*/
+	public static void main(String[] args) throws IOException {
+		long size = 1L << 30;
+		String corpus = RemoverCorpus.REPLIES;
+		Path dir = Paths.get(System.getProperty("java.io.tmpdir"));
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-size")) {
+				size = Long.parseLong(args[++i]);
+			} else if (args[i].equals("-corpus")) {
+				corpus = args[++i];
+			} else if (args[i].equals("-dir")) {
+				dir = Paths.get(args[++i]);
+			} else {
+				System.err.println("Unknown option: " + args[i]);
+				System.exit(2);
+			}
+		}
+		
+		Charset charset = StandardCharsets.UTF_8;
+		ExtraReturnsRemover remover = 
+			new ExtraReturnsRemover(
+				new RemoverOptions(
+					"-,[outline].,[outline]),*",
+					0,
+					true,
+					false,
+					corpus.equals(RemoverCorpus.FLOWED),
+					false));
+		Path in = Files.createTempFile(dir, "remover", ".txt");
+		Path mapped = Files.createTempFile(dir, "remover", ".out");
+		Path decoded = Files.createTempFile(dir, "remover", ".out");
+		Path string = Files.createTempFile(dir, "remover", ".out");
+		Path pieces = Files.createTempFile(dir, "remover", ".out");
+		boolean same = true;
+		boolean fits = true; // flags that the String path had the heap to run
+		boolean piecesFit = true; // likewise for the pieces path
+		try {
+			write(in, corpus, size, charset);
+			System.out.println(
+				pad("path", 10) + pad("bytes", 14) + pad("MB/s", 10) 
+					+ "peak heap MB");
+			for (int i = 0; i < REPEATS; i++) {
+				resetPeaks();
+				long start = System.nanoTime();
+				remover.remove(in, mapped, charset);
+				report("mapped", Files.size(in), System.nanoTime() - start);
+				
+				resetPeaks();
+				start = System.nanoTime();
+				try (Reader reader = Files.newBufferedReader(in, charset);
+					Writer writer = Files.newBufferedWriter(decoded, charset)) {
+					remover.remove(reader, writer);
+				}
+				report("decoded", Files.size(in), System.nanoTime() - start);
+				
+				resetPeaks();
+				start = System.nanoTime();
+				try {
+					String s = new String(Files.readAllBytes(in), charset);
+					try (Writer writer = Files.newBufferedWriter(pieces, charset)) {
+						remover.removeAsPieces(s, 0, s.length()).writeTo(writer);
+					}
+					s = null;
+					report("pieces", Files.size(in), System.nanoTime() - start);
+				} catch (OutOfMemoryError e) {
+					System.out.println(pad("pieces", 10) + "out of memory");
+					piecesFit = false;
+				}
+				
+				resetPeaks();
+				start = System.nanoTime();
+				try {
+					String s = new String(Files.readAllBytes(in), charset);
+					s = remover.remove(s).getText();
+					Files.write(string, s.getBytes(charset));
+					report("string", Files.size(in), System.nanoTime() - start);
+				} catch (OutOfMemoryError e) {
+					System.out.println(pad("string", 10) + "out of memory");
+					fits = false;
+					break;
+				}
+			}
+			same = sameContents(mapped, decoded) 
+				&& (!piecesFit || sameContents(mapped, pieces))
+				&& (!fits || sameContents(mapped, string));
+			System.out.println(same ? "Outputs match" : "FAILED: outputs differ");
+		} finally {
+			Files.deleteIfExists(in);
+			Files.deleteIfExists(mapped);
+			Files.deleteIfExists(decoded);
+			Files.deleteIfExists(string);
+			Files.deleteIfExists(pieces);
+		}
+		System.exit(same ? 0 : 1);
+	}
+	
+	/**Writes a file of a corpus, with chunks of the corpus separated by
+	 * blank lines.
+	 * @param file the file to write
+	 * @param corpus the name of the corpus
+	 * @param size the least size of the file, in bytes
+	 * @param charset the encoding of the file
+	*/
+	private static void write(Path file, String corpus, long size, Charset charset) 
+		throws IOException {
+		String chunk = RemoverCorpus.generate(corpus, CHUNK_SIZE) + "\n\n";
+		byte[] bytes = chunk.getBytes(charset);
+		try (OutputStream out = Files.newOutputStream(file)) {
+			for (long written = 0; written < size; written += bytes.length) {
+				out.write(bytes);
+			}
+		}
+	}
+	
+	/**Checks whether two files have the same contents.
+	 * @param a a file
+	 * @param b the other file
+	 * @return true if the files have the same bytes
+	*/
+	private static boolean sameContents(Path a, Path b) throws IOException {
+		if (Files.size(a) != Files.size(b)) return false;
+		try (InputStream inA = new BufferedInputStream(Files.newInputStream(a));
+			InputStream inB = new BufferedInputStream(Files.newInputStream(b))) {
+			byte[] bufA = new byte[1 << 16];
+			byte[] bufB = new byte[1 << 16];
+			int n = 0;
+			while ((n = inA.read(bufA)) > 0) {
+				int read = 0;
+				while (read < n) {
+					int m = inB.read(bufB, read, n - read);
+					if (m < 0) return false;
+					read += m;
+				}
+				if (!Arrays.equals(bufA, bufB)) return false;
+			}
+		}
+		return true;
+	}
+	
+	/**Prints the results of a run.
+	 * @param path the name of the path
+	 * @param bytes the size of the input file
+	 * @param nanos the time the run took
+	*/
+	private static void report(String path, long bytes, long nanos) {
+		System.out.println(
+			pad(path, 10) + pad("" + bytes, 14) 
+				+ pad(String.format("%.1f", bytes / (nanos / 1e9) / 1e6), 10)
+				+ peakHeap() / (1024 * 1024));
+	}
+	
+	/**Collects garbage and resets the peak usage of the heap pools.
+	*/
+	private static void resetPeaks() {
+		System.gc();
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) pool.resetPeakUsage();
+		}
+	}
+	
+	/**Gets the peak heap usage since the last reset, summed across 
+	 * the heap pools.
+	 * @return the number of bytes
+	*/
+	private static long peakHeap() {
+		long peak = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				peak += pool.getPeakUsage().getUsed();
+			}
+		}
+		return peak;
+	}
+	
+	/**Pads a string to fill a column.
+	 * @param s the string
+	 * @param width the width of the column
+	 * @return the padded string
+	*/
+	private static String pad(String s, int width) {
+		StringBuffer padded = new StringBuffer(s);
+		while (padded.length() < width) padded.append(' ');
+		return padded.append(' ').toString();
+	}
+}
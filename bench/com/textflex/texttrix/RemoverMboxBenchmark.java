@@ -0,0 +1,163 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is the Text Trix code.
+ *
+ * The Initial Developer of the Original Code is
+ * Text Flex.
+ * Portions created by the Initial Developer are Copyright (C) 2003-4
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s): David Young <dvd@textflex.com>
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+
+package com.textflex.texttrix;
+
+import java.io.*;
+import java.nio.charset.*;
+import java.util.*;
+
+/**Throughput benchmark for cleaning mbox archives.
+ * Builds an archive in memory from messages whose bodies come from the
+ * synthetic corpora of {@link RemoverCorpus}, then cleans it with
+ * {@link MboxRemover} with from one worker thread up to twice the 
+ * number of processors, reporting messages and megabytes per second
+ * for each.  Throughput should grow with the number of workers up to
+ * the number of processors.
+ * <p>Usage:
+ * <pre>
+ * java com.textflex.texttrix.RemoverMboxBenchmark [-messages &#060;n&#062;] 
+ *     [-size &#060;chars&#062;] [-time &#060;secs&#062;]
+ * </pre>
+*/
+public class RemoverMboxBenchmark {
+	
+	/**Runs the benchmark.
+	 * @param args <code>-messages</code> for the number of messages in
+	 * the archive, 100,000 by default; <code>-size</code> for the 
+	 * average size of each body in chars, 2000 by default; 
+	 * <code>-time</code> for the seconds to measure each number of 
+	 * workers, 3 by default
+	*/
+	public static void main(String[] args) throws IOException {
+		int count = 100000;
+		int size = 2000;
+		double time = 3;
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-messages")) {
+				count = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-size")) {
+				size = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-time")) {
+				time = Double.parseDouble(args[++i]);
+			} else {
+				System.err.println("Unknown option: " + args[i]);
+				System.exit(2);
+			}
+		}
+		
+		byte[] mbox = archive(count, size);
+		ExtraReturnsRemover remover = 
+			new ExtraReturnsRemover(
+				new RemoverOptions("-,[outline].,[outline]),*", 0, true, false));
+		int processors = Runtime.getRuntime().availableProcessors();
+		System.out.println(
+			"archive of " + count + " messages, " + mbox.length + " bytes, on "
+				+ processors + " processors");
+		System.out.println(pad("threads", 10) + pad("messages/s", 14) + "MB/s");
+		for (int threads = 1; threads <= processors * 2; threads *= 2) {
+			// warms up and then measures whole passes over the archive
+			for (int pass = 0; pass < 2; pass++) {
+				long start = System.nanoTime();
+				long elapsed = 0;
+				int runs = 0;
+				do {
+					MboxRemover mboxRemover = new MboxRemover(remover);
+					mboxRemover.clean(
+						new ByteArrayInputStream(mbox),
+						new NullOutputStream(),
+						threads,
+						threads * 64);
+					runs++;
+				} while ((elapsed = System.nanoTime() - start) < time * 1e9);
+				if (pass == 0) continue;
+				double secs = elapsed / 1e9;
+				System.out.println(
+					pad("" + threads, 10)
+						+ pad(String.format("%.0f", (double) runs * count / secs), 14)
+						+ String.format("%.1f", (double) runs * mbox.length / secs / 1e6));
+			}
+		}
+	}
+	
+	/**Builds an archive, cycling through the corpora for the bodies.
+	 * @param count the number of messages
+	 * @param size the average size of each body in chars
+	 * @return the archive in UTF-8
+	*/
+	private static byte[] archive(int count, int size) {
+		Random random = new Random(1);
+		String[] bodies = new String[64];
+		for (int i = 0; i < bodies.length; i++) {
+			bodies[i] = 
+				RemoverCorpus.generate(
+					RemoverCorpus.ALL[i % RemoverCorpus.ALL.length],
+					size / 2 + random.nextInt(size + 1));
+		}
+		StringBuilder mbox = new StringBuilder();
+		for (int i = 0; i < count; i++) {
+			mbox.append("From sender").append(i % 100)
+				.append("@example.com Mon Jan  1 00:00:00 2024\n")
+				.append("From: sender").append(i % 100).append("@example.com\n")
+				.append("Subject: message ").append(i).append("\n\n")
+				.append(bodies[i % bodies.length].replace("\nFrom ", "\n>From "))
+				.append("\n\n");
+		}
+		return mbox.toString().getBytes(StandardCharsets.UTF_8);
+	}
+	
+	/**Output that discards everything written to it.
+	*/
+	private static class NullOutputStream extends OutputStream {
+		public void write(int b) {
+		}
+		
+		public void write(byte[] b, int off, int len) {
+		}
+	}
+	
+	/**Pads a string to fill a column.
+	 * @param s the string
+	 * @param width the width of the column
+	 * @return the padded string
+	*/
+	private static String pad(String s, int width) {
+		StringBuffer padded = new StringBuffer(s);
+		while (padded.length() < width) padded.append(' ');
+		return padded.append(' ').toString();
+	}
+}
@@ -0,0 +1,255 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is the Text Trix code.
+ *
+ * The Initial Developer of the Original Code is
+ * Text Flex.
+ * Portions created by the Initial Developer are Copyright (C) 2003-4
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s): David Young <dvd@textflex.com>
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+
+package com.textflex.texttrix;
+
+import java.io.*;
+import java.util.*;
+
+/**Differential check of the extra returns remover across styles of 
+ * hard return.
+ * Generates short random texts of the shapes that the remover treats 
+ * specially, such as blank lines, inline replies, list items, 
+ * format=flowed lines, and <code>&#060;pre&#062;</code> areas, with 
+ * line feeds for returns.  Each text gets cleaned as it is, then with
+ * carriage returns alone for returns, and then with a random mix of 
+ * all three styles.  Turning every return back into a line feed must
+ * give the same output as cleaning the line feed text, with the same
+ * number of lines, whether the text gets cleaned as a string, 
+ * streamed, or in a selected region.
+ * <p>Usage:
+ * <pre>
+ * java com.textflex.texttrix.RemoverReturnsCheck [-texts &#060;n&#062;] 
+ *     [-seed &#060;n&#062;]
+ * </pre>
+ * The process exits with status 1 if any output differs.
+*/
+public class RemoverReturnsCheck {
+	
+	private static final String[] LINES = {
+		"", "", "words on a line", "a longer line of words that goes on",
+		"ends with a space ", "> ", ">", "> a reply", "> > a deeper reply",
+		">> close quoted", "- a list item", "* another item", "1. first",
+		"<pre>", "</pre>", "    code", "soft break="
+	};
+	private static final String[] LISTS = { "", "-,*", "-,[outline].,*" };
+	
+	/**Runs the check.
+	 * @param args <code>-texts</code> for the number of texts to check,
+	 * 100000 by default; <code>-seed</code> for the random seed, 1 by 
+	 * default
+	*/
+	public static void main(String[] args) throws IOException {
+		int texts = 100000;
+		long seed = 1;
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-texts")) {
+				texts = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-seed")) {
+				seed = Long.parseLong(args[++i]);
+			} else {
+				System.err.println("Unknown option: " + args[i]);
+				System.exit(2);
+			}
+		}
+		
+		Random random = new Random(seed);
+		int failures = 0;
+		for (int i = 0; i < texts && failures < 10; i++) {
+			String lf = text(random);
+			ExtraReturnsRemover remover = 
+				new ExtraReturnsRemover(
+					new RemoverOptions(
+						LISTS[random.nextInt(LISTS.length)],
+						0,
+						random.nextBoolean(),
+						false,
+						random.nextBoolean(),
+						random.nextBoolean()));
+			String expected = remover.remove(lf).getText();
+			String[] variants = { lf.replace('\n', '\r'), mixed(lf, random) };
+			for (int j = 0; j < variants.length; j++) {
+				if (!check(remover, lf, expected, variants[j])) failures++;
+			}
+		}
+		System.out.println(
+			(failures == 0) ? "Returns check passed" 
+				: "FAILED: " + failures + " outputs differ");
+		System.exit((failures == 0) ? 0 : 1);
+	}
+	
+	/**Generates a random text with line feeds for returns.
+	 * @param random the source of randomness
+	 * @return the text
+	*/
+	private static String text(Random random) {
+		StringBuffer text = new StringBuffer();
+		int lines = 1 + random.nextInt(10);
+		for (int i = 0; i < lines; i++) {
+			if (i > 0) text.append('\n');
+			text.append(LINES[random.nextInt(LINES.length)]);
+		}
+		if (random.nextBoolean()) text.append('\n');
+		return text.toString();
+	}
+	
+	/**Gives a text a random mix of the styles of return.
+	 * A carriage return never goes right before the line feed of an 
+	 * empty line, where the two would read as a single return.
+	 * @param lf the text, with line feeds for returns
+	 * @param random the source of randomness
+	 * @return the text with each return in a random style
+	*/
+	private static String mixed(String lf, Random random) {
+		StringBuffer text = new StringBuffer();
+		for (int i = 0; i < lf.length(); i++) {
+			char c = lf.charAt(i);
+			if (c != '\n') {
+				text.append(c);
+				continue;
+			}
+			int style = random.nextInt(3);
+			if (style == 0 && text.length() > 0 
+				&& text.charAt(text.length() - 1) == '\r') {
+				style = 1;
+			}
+			text.append((style == 0) ? "\n" : (style == 1) ? "\r\n" : "\r");
+		}
+		return text.toString();
+	}
+	
+	/**Checks the outputs of cleaning a text with other styles of 
+	 * return against the output for line feeds.
+	 * @param remover the remover
+	 * @param lf the text, with line feeds for returns
+	 * @param expected the output of cleaning the line feed text
+	 * @param s the text with other styles of return
+	 * @return true if every output matches
+	*/
+	private static boolean check(
+		ExtraReturnsRemover remover,
+		String lf,
+		String expected,
+		String s) throws IOException {
+		StringWriter streamed = new StringWriter();
+		remover.remove(new StringReader(s), streamed);
+		// a region from the middle of the text, put back in its place
+		int x = boundary(s, s.length() / 3);
+		int y = boundary(s, s.length() - x);
+		RemoverResult region = remover.removeRegion(s, x, y);
+		String[] outputs = {
+			remover.remove(s).getText(),
+			streamed.toString(),
+			s.substring(0, region.getStart()) + region.getText() 
+				+ s.substring(region.getEnd())
+		};
+		String[] paths = { "string", "streamed", "region" };
+		for (int i = 0; i < outputs.length; i++) {
+			String got = outputs[i];
+			if (i == 2) {
+				// the region's expected output comes from the same region
+				// of the line feed text
+				RemoverResult lfRegion = 
+					remover.removeRegion(lf, toLf(s, x), toLf(s, y));
+				expected = 
+					lf.substring(0, lfRegion.getStart()) + lfRegion.getText()
+						+ lf.substring(lfRegion.getEnd());
+			}
+			String normalized = toLf(got);
+			if (!normalized.equals(expected)) {
+				System.out.println(
+					"FAILED: " + paths[i] + " output has " + lines(normalized)
+						+ " lines rather than " + lines(expected) 
+						+ "\n  text:     " + escape(s)
+						+ "\n  output:   " + escape(got)
+						+ "\n  expected: " + escape(expected));
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**Turns every return in a text into a line feed.
+	 * @param s the text
+	 * @return the text with line feeds for returns
+	*/
+	private static String toLf(String s) {
+		return s.replace("\r\n", "\n").replace('\r', '\n');
+	}
+	
+	/**Finds the index in the line feed text that matches an index in a
+	 * text with other styles of return.
+	 * @param s the text
+	 * @param i the index in the text, outside of any return
+	 * @return the index once every return is a line feed
+	*/
+	private static int toLf(String s, int i) {
+		return toLf(s.substring(0, i)).length();
+	}
+	
+	/**Moves an index off the middle of a carriage return and line 
+	 * feed.
+	 * @param s the text
+	 * @param i the index
+	 * @return the index, or the one after it if it falls between the
+	 * two chars of a return
+	*/
+	private static int boundary(String s, int i) {
+		return (i > 0 && i < s.length() && s.charAt(i - 1) == '\r' 
+			&& s.charAt(i) == '\n') ? i + 1 : i;
+	}
+	
+	/**Counts the returns in a text with line feeds for returns.
+	 * @param s the text
+	 * @return the number of line feeds
+	*/
+	private static int lines(String s) {
+		int count = 0;
+		for (int i = s.indexOf('\n'); i != -1; i = s.indexOf('\n', i + 1)) {
+			count++;
+		}
+		return count;
+	}
+	
+	/**Shows the returns in a text.
+	 * @param s the text
+	 * @return the text with its returns escaped
+	*/
+	private static String escape(String s) {
+		return s.replace("\r", "\\r").replace("\n", "\\n");
+	}
+}
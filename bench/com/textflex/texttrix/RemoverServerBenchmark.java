@@ -0,0 +1,259 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is the Text Trix code.
+ *
+ * The Initial Developer of the Original Code is
+ * Text Flex.
+ * Portions created by the Initial Developer are Copyright (C) 2003-4
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s): David Young <dvd@textflex.com>
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+
+
+package com.textflex.texttrix;
+
+import java.io.*;
+import java.net.*;
+import java.nio.charset.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**Load benchmark for the HTTP service of the extra returns remover.
+ * Starts a {@link RemoverServer} on a loopback port and fires small 
+ * messages from the synthetic corpora of {@link RemoverCorpus} at it
+ * from thousands of concurrent clients, each sending its next message
+ * as soon as the last one comes back.  Reports the requests cleaned 
+ * and turned away per second along with percentiles of the latency 
+ * that the clients saw, then the service's own statistics.  Every 
+ * cleaned message gets checked against cleaning it directly.
+ * <p>Usage:
+ * <pre>
+ * java com.textflex.texttrix.RemoverServerBenchmark [-clients &#060;n&#062;] 
+ *     [-inFlight &#060;n&#062;] [-size &#060;chars&#062;] [-time &#060;secs&#062;]
+ * </pre>
+ * The process exits with status 1 if any cleaned message differs or
+ * any request fails other than by being turned away.
+*/
+public class RemoverServerBenchmark {
+	
+	/**Runs the benchmark.
+	 * @param args <code>-clients</code> for the number of concurrent 
+	 * clients, 2000 by default; <code>-inFlight</code> for the service's
+	 * limit on requests in flight, 256 by default; <code>-size</code> 
+	 * for the average size of each message in chars, 500 by default;
+	 * <code>-time</code> for the seconds to measure, 10 by default
+	*/
+	public static void main(String[] args) throws Exception {
+		int clients = 2000;
+		int inFlight = 256;
+		int size = 500;
+		double time = 10;
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-clients")) {
+				clients = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-inFlight")) {
+				inFlight = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-size")) {
+				size = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-time")) {
+				time = Double.parseDouble(args[++i]);
+			} else {
+				System.err.println("Unknown option: " + args[i]);
+				System.exit(2);
+			}
+		}
+		
+		RemoverOptions options = 
+			new RemoverOptions("-,[outline].,[outline]),*", 0, true, false);
+		final RemoverServer service = 
+			new RemoverServer(
+				new InetSocketAddress(InetAddress.getLoopbackAddress(), 0),
+				options,
+				inFlight);
+		service.start();
+		final URL url = 
+			new URL(
+				"http", 
+				service.getAddress().getHostString(), 
+				service.getAddress().getPort(),
+				RemoverServer.REMOVE_PATH + "?emailMarkers=true");
+		
+		// messages to send and their expected cleaned text
+		ExtraReturnsRemover remover = new ExtraReturnsRemover(options);
+		Random random = new Random(1);
+		final byte[][] messages = new byte[256][];
+		final String[] expected = new String[messages.length];
+		for (int i = 0; i < messages.length; i++) {
+			String text = 
+				RemoverCorpus.generate(
+					RemoverCorpus.ALL[i % RemoverCorpus.ALL.length],
+					size / 2 + random.nextInt(size + 1));
+			messages[i] = text.getBytes(StandardCharsets.UTF_8);
+			expected[i] = remover.remove(text).getText();
+		}
+		
+		System.out.println(
+			clients + " clients, limit of " + inFlight + " in flight, "
+				+ (service.isVirtual() ? "virtual" : "pooled") + " threads");
+		final AtomicBoolean running = new AtomicBoolean(true);
+		final AtomicLong cleaned = new AtomicLong();
+		final AtomicLong turnedAway = new AtomicLong();
+		final AtomicLong failed = new AtomicLong();
+		final AtomicLong wrong = new AtomicLong();
+		final ConcurrentLinkedQueue<long[]> latencies = 
+			new ConcurrentLinkedQueue<long[]>();
+		ExecutorService pool = Executors.newFixedThreadPool(clients);
+		final long deadline = System.nanoTime() + (long) (time * 1e9);
+		for (int c = 0; c < clients; c++) {
+			final int client = c;
+			pool.execute(new Runnable() {
+				public void run() {
+					long[] times = new long[1 << 12];
+					int count = 0;
+					for (int i = client; System.nanoTime() < deadline; i += 7) {
+						int m = i % messages.length;
+						long start = System.nanoTime();
+						try {
+							String got = post(url, messages[m]);
+							if (got == null) {
+								turnedAway.incrementAndGet();
+								// backs off as a client heeding Retry-After 
+								// would, if more briefly
+								Thread.sleep(10);
+								continue;
+							}
+							if (!got.equals(expected[m])) wrong.incrementAndGet();
+							cleaned.incrementAndGet();
+							if (count == times.length) {
+								times = Arrays.copyOf(times, count * 2);
+							}
+							times[count++] = System.nanoTime() - start;
+						} catch (IOException e) {
+							// shows the first failure for want of room for all
+							if (failed.incrementAndGet() == 1) System.err.println(e);
+						} catch (InterruptedException e) {
+							break;
+						}
+					}
+					latencies.add(Arrays.copyOf(times, count));
+				}
+			});
+		}
+		pool.shutdown();
+		pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		
+		int total = 0;
+		for (long[] times : latencies) total += times.length;
+		long[] all = new long[total];
+		int k = 0;
+		for (long[] times : latencies) {
+			System.arraycopy(times, 0, all, k, times.length);
+			k += times.length;
+		}
+		Arrays.sort(all);
+		System.out.println(
+			"cleaned " + String.format("%.0f", cleaned.get() / time) + "/s, "
+				+ "turned away " + String.format("%.0f", turnedAway.get() / time) + "/s, "
+				+ failed.get() + " failed");
+		System.out.println(
+			"latency ms: p50 " + millis(all, 0.5) + ", p90 " + millis(all, 0.9)
+				+ ", p99 " + millis(all, 0.99) + ", max " + millis(all, 1));
+		System.out.println(stats(service));
+		service.stop(0);
+		if (wrong.get() > 0) System.out.println("FAILED: " + wrong.get() + " outputs differ");
+		System.exit(wrong.get() > 0 || failed.get() > 0 ? 1 : 0);
+	}
+	
+	/**Posts a message to the service.
+	 * @param url the service's cleaning URL
+	 * @param message the message in UTF-8
+	 * @return the cleaned message, or <code>null</code> if the service
+	 * turned the request away
+	 * @throws IOException if the request fails
+	*/
+	private static String post(URL url, byte[] message) throws IOException {
+		HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+		conn.setRequestMethod("POST");
+		conn.setDoOutput(true);
+		conn.setFixedLengthStreamingMode(message.length);
+		conn.setRequestProperty("Content-Type", "text/plain; charset=UTF-8");
+		try (OutputStream out = conn.getOutputStream()) {
+			out.write(message);
+		}
+		int status = conn.getResponseCode();
+		InputStream in = (status == 200) ? conn.getInputStream() : conn.getErrorStream();
+		String body = read(in);
+		if (status == 503) return null;
+		if (status != 200) throw new IOException("HTTP " + status + ": " + body);
+		return body;
+	}
+	
+	/**Gets the service's statistics.
+	 * @param service the service
+	 * @return the statistics
+	*/
+	private static String stats(RemoverServer service) throws IOException {
+		URL url = 
+			new URL(
+				"http", 
+				service.getAddress().getHostString(), 
+				service.getAddress().getPort(),
+				RemoverServer.STATS_PATH);
+		return read(url.openStream());
+	}
+	
+	/**Reads a UTF-8 stream to its end and closes it.
+	 * @param in the stream, or <code>null</code> for none
+	 * @return the text
+	*/
+	private static String read(InputStream in) throws IOException {
+		if (in == null) return "";
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try {
+			byte[] buf = new byte[1 << 12];
+			int n = 0;
+			while ((n = in.read(buf)) > 0) bytes.write(buf, 0, n);
+		} finally {
+			in.close();
+		}
+		return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+	}
+	
+	/**Gets a percentile of sorted latencies.
+	 * @param sorted the latencies in nanoseconds, in order
+	 * @param fraction the percentile as a fraction
+	 * @return the latency in milliseconds
+	*/
+	private static String millis(long[] sorted, double fraction) {
+		if (sorted.length == 0) return "-";
+		int i = Math.min(sorted.length - 1, (int) (fraction * sorted.length));
+		return String.format("%.2f", sorted[i] / 1e6);
+	}
+}
@@ -0,0 +1,196 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is the Text Trix code.
+ *
+ * The Initial Developer of the Original Code is
+ * Text Flex.
+ * Portions created by the Initial Developer are Copyright (C) 2003-4
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s): David Young <dvd@textflex.com>
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+
+
+package com.textflex.texttrix;
+
+import java.io.*;
+import java.lang.management.*;
+import java.util.*;
+
+/**Startup benchmark for the extra returns remover.
+ * Starts a fresh virtual machine for each run, so that class loading
+ * and initialization count, and times three ways of getting to the
+ * first cleaned message: with the engine alone, as a headless host 
+ * would use it; through the plug-in, whose dialog waits until it's 
+ * first displayed; and through the plug-in with its dialog built 
+ * straight away, as the plug-in used to build it on loading.  Reports
+ * the median time in the virtual machine and for the whole process, 
+ * along with the number of classes loaded and how many of them were 
+ * Swing or AWT classes, which should be none for the engine alone.
+ * Runs headless, which the engine and the plug-in both allow.
+ * <p>Usage:
+ * <pre>
+ * java com.textflex.texttrix.RemoverStartupBenchmark [-runs &#060;n&#062;]
+ * </pre>
+*/
+public class RemoverStartupBenchmark {
+	
+	private static final String[] MODES = {"engine", "plug", "eager"};
+	private static final String MESSAGE = 
+		"Some wrapped text\nthat goes on\n> and a reply\n> to it\n\n- a list\n- of items\n";
+	
+	/**Runs the benchmark.
+	 * @param args <code>-runs</code> for the number of virtual machines
+	 * to start for each way, 5 by default
+	*/
+	public static void main(String[] args) throws Exception {
+		if (args.length == 2 && args[0].equals("-child")) {
+			child(args[1]);
+			return;
+		}
+		int runs = 5;
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-runs")) {
+				runs = Integer.parseInt(args[++i]);
+			} else {
+				System.err.println("Unknown option: " + args[i]);
+				System.exit(2);
+			}
+		}
+		
+		String java = 
+			System.getProperty("java.home") + File.separator + "bin" 
+				+ File.separator + "java";
+		System.out.println(
+			pad("way", 10) + pad("in VM ms", 10) + pad("process ms", 12) 
+				+ pad("classes", 10) + "Swing/AWT classes");
+		for (int m = 0; m < MODES.length; m++) {
+			long[] inVm = new long[runs];
+			long[] process = new long[runs];
+			long classes = 0;
+			long ui = 0;
+			for (int r = 0; r < runs; r++) {
+				long start = System.nanoTime();
+				Process child = 
+					new ProcessBuilder(
+						java, 
+						"-Djava.awt.headless=true", 
+						"-verbose:class",
+						"-cp", 
+						System.getProperty("java.class.path"),
+						RemoverStartupBenchmark.class.getName(),
+						"-child",
+						MODES[m])
+						.redirectErrorStream(true)
+						.start();
+				BufferedReader in = 
+					new BufferedReader(new InputStreamReader(child.getInputStream()));
+				String line = null;
+				ui = 0;
+				while ((line = in.readLine()) != null) {
+					if (line.startsWith("result ")) {
+						String[] fields = line.split(" ");
+						inVm[r] = Long.parseLong(fields[1]);
+						classes = Long.parseLong(fields[2]);
+					} else if (line.contains("javax.swing.") || line.contains("java.awt.")) {
+						ui++;
+					}
+				}
+				if (child.waitFor() != 0) {
+					System.err.println(MODES[m] + " run failed");
+					System.exit(1);
+				}
+				process[r] = (System.nanoTime() - start) / 1000000;
+			}
+			System.out.println(
+				pad(MODES[m], 10) + pad("" + median(inVm), 10) 
+					+ pad("" + median(process), 12) + pad("" + classes, 10) + ui);
+		}
+	}
+	
+	/**Gets to the first cleaned message in one of the ways, reporting
+	 * the time from the start of the virtual machine and the number of
+	 * classes loaded.
+	 * @param mode the way
+	*/
+	private static void child(String mode) {
+		String cleaned = null;
+		if (mode.equals("engine")) {
+			ExtraReturnsRemover remover = 
+				new ExtraReturnsRemover(
+					new RemoverOptions("-,[outline].,[outline]),*", 0, false, false));
+			cleaned = remover.remove(MESSAGE).getText();
+		} else {
+			Plug plug = new Plug();
+			if (mode.equals("eager")) Eager.buildDialog(plug);
+			plug.applyUserOptions();
+			cleaned = plug.run(MESSAGE).getText();
+		}
+		long inVm = 
+			System.currentTimeMillis() 
+				- ManagementFactory.getRuntimeMXBean().getStartTime();
+		System.out.println(
+			"result " + inVm + " " 
+				+ ManagementFactory.getClassLoadingMXBean().getTotalLoadedClassCount()
+				+ " " + cleaned.length());
+	}
+	
+	/**Builds the plug-in's dialog straight away.
+	 * Kept in a class of its own so that the Swing classes it uses 
+	 * only get loaded in the runs that build the dialog.
+	*/
+	private static class Eager {
+		/**Builds the plug-in's dialog as its first display would, by 
+		 * sizing it.
+		 * @param plug the plug-in
+		*/
+		public static void buildDialog(Plug plug) {
+			plug.getOptionsPanel().getPreferredSize();
+		}
+	}
+	
+	/**Gets the median of some values.
+	 * @param values the values, which get sorted
+	 * @return the median
+	*/
+	private static long median(long[] values) {
+		Arrays.sort(values);
+		return values[values.length / 2];
+	}
+	
+	/**Pads a string to fill a column.
+	 * @param s the string
+	 * @param width the width of the column
+	 * @return the padded string
+	*/
+	private static String pad(String s, int width) {
+		StringBuffer padded = new StringBuffer(s);
+		while (padded.length() < width) padded.append(' ');
+		return padded.append(' ').toString();
+	}
+}
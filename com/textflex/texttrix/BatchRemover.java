@@ -0,0 +1,370 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is the Text Trix code.
+ *
+ * The Initial Developer of the Original Code is
+ * Text Flex.
+ * Portions created by the Initial Developer are Copyright (C) 2003-4
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s): David Young <dvd@textflex.com>
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+
+package com.textflex.texttrix;
+
+import java.io.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.nio.file.attribute.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**Command-line batch mode for the extra returns remover.
+ * Cleans files and whole directory trees without the Text Trix editor,
+ * so that it can run on headless machines.  Files are streamed through
+ * the remover on a bounded pool of worker threads, either in place or
+ * into a separate output directory that mirrors the input paths.
+ * No Swing or AWT classes get loaded.
+ * <p>Usage:
+ * <pre>
+ * java com.textflex.texttrix.BatchRemover [options] path...
+ * </pre>
+ * Run without arguments for the list of options.
+*/
+public class BatchRemover {
+
+	private static final String USAGE = 
+		"Usage: java com.textflex.texttrix.BatchRemover [options] path...\n"
+		+ "Removes extra hard returns from files, or from every file in\n"
+		+ "directory trees.\n"
+		+ "Options:\n"
+		+ "  -lists <markers>     comma-separated list markers\n"
+		+ "                       (default: -,[outline].,[outline]),*)\n"
+		+ "  -threshold <n>       minimum length of line (default: 0)\n"
+		+ "  -emailMarkers        mark email reply region boundaries\n"
+		+ "  -selectedRegion <x>:<y>  only work on chars x to y of each file\n"
+		+ "  -threads <n>         number of worker threads\n"
+		+ "                       (default: number of processors)\n"
+		+ "  -out <dir>           write into a directory instead of in place\n"
+		+ "  -charset <name>      file encoding (default: UTF-8)";
+
+	// prefix for the temporary files holding cleaned text, which the
+	// walk skips in case it comes across them in the trees being cleaned
+	private static final String TMP_PREFIX = ".extra-returns-";
+
+	private ExtraReturnsRemover remover = null;
+	private int x = 0; // start of the selected region
+	private int y = 0; // end of the selected region
+	private Path outDir = null; // null to clean in place
+	private Charset charset = null;
+	
+	/* Totals for all the files */
+	private AtomicLong files = new AtomicLong();
+	private AtomicLong bytes = new AtomicLong();
+	private AtomicLong returnsRemoved = new AtomicLong();
+	private AtomicLong failures = new AtomicLong();
+
+	/**Creates a batch remover.
+	 * @param aRemover the remover engine
+	 * @param aOutDir the directory to write into, or <code>null</code>
+	 * to clean files in place
+	 * @param aCharset the file encoding
+	*/
+	public BatchRemover(
+		ExtraReturnsRemover aRemover,
+		Path aOutDir,
+		Charset aCharset) {
+		remover = aRemover;
+		outDir = aOutDir;
+		charset = aCharset;
+	}
+
+	/**Sets the region of each file to clean if the remover's 
+	 * "selectedRegion" option is set.
+	 * @param aX the starting index of the region
+	 * @param aY the final index of the region, noninclusive
+	*/
+	public void setSelectedRegion(int aX, int aY) {
+		x = aX;
+		y = aY;
+	}
+
+	/**Runs the batch remover from the command line.
+	 * @param args the options followed by the files and directories to
+	 * clean
+	*/
+	public static void main(String[] args) {
+		String lists = "-,[outline].,[outline]),*";
+		int threshold = 0;
+		boolean emailMarkers = false;
+		String region = null;
+		int x = 0; // start of the selected region
+		int y = 0; // end of the selected region
+		int threads = Runtime.getRuntime().availableProcessors();
+		Path outDir = null;
+		Charset charset = StandardCharsets.UTF_8;
+		int i = 0;
+		try {
+			for (; i < args.length && args[i].startsWith("-"); i++) {
+				String opt = args[i];
+				if (opt.equals("-lists")) {
+					lists = args[++i];
+				} else if (opt.equals("-threshold")) {
+					threshold = Integer.parseInt(args[++i]);
+				} else if (opt.equals("-emailMarkers")) {
+					emailMarkers = true;
+				} else if (opt.equals("-selectedRegion")) {
+					region = args[++i];
+				} else if (opt.equals("-threads")) {
+					threads = Math.max(1, Integer.parseInt(args[++i]));
+				} else if (opt.equals("-out")) {
+					outDir = Paths.get(args[++i]);
+				} else if (opt.equals("-charset")) {
+					charset = Charset.forName(args[++i]);
+				} else {
+					throw new IllegalArgumentException("Unknown option: " + opt);
+				}
+			}
+			if (i == args.length) throw new IllegalArgumentException("No paths");
+			if (region != null) {
+				int colon = region.indexOf(':');
+				x = Integer.parseInt(region.substring(0, colon));
+				y = Integer.parseInt(region.substring(colon + 1));
+			}
+		} catch (RuntimeException e) {
+			// covers missing option values and malformed numbers as well
+			System.err.println(e.getMessage() == null ? e.toString() : e.getMessage());
+			System.err.println(USAGE);
+			System.exit(2);
+		}
+		
+		BatchRemover batch = 
+			new BatchRemover(
+				new ExtraReturnsRemover(
+					new RemoverOptions(
+						lists,
+						threshold,
+						emailMarkers,
+						region != null)),
+				outDir,
+				charset);
+		if (region != null) batch.setSelectedRegion(x, y);
+		Path[] paths = new Path[args.length - i];
+		for (int j = 0; j < paths.length; j++) {
+			paths[j] = Paths.get(args[i + j]);
+		}
+		
+		long start = System.nanoTime();
+		batch.clean(paths, threads);
+		double secs = Math.max((System.nanoTime() - start) / 1e9, 1e-9);
+		double mb = batch.getBytes() / (1024.0 * 1024.0);
+		System.out.println(
+			batch.getFiles() + " files, "
+				+ String.format("%.1f", mb) + " MB in "
+				+ String.format("%.2f", secs) + " s ("
+				+ String.format("%.1f", batch.getFiles() / secs) + " files/s, "
+				+ String.format("%.1f", mb / secs) + " MB/s); "
+				+ batch.getReturnsRemoved() + " hard returns removed");
+		if (batch.getFailures() > 0) {
+			System.err.println(batch.getFailures() + " files failed");
+			System.exit(1);
+		}
+	}
+
+	/**Cleans files and directory trees.
+	 * The files are queued for a fixed number of worker threads as the
+	 * trees are walked; once the queue fills up, the walking thread 
+	 * cleans files itself until the workers catch up, so the number of 
+	 * files in flight stays bounded.
+	 * @param paths the files and directories to clean
+	 * @param threads the number of worker threads
+	*/
+	public void clean(Path[] paths, int threads) {
+		final ThreadPoolExecutor pool = 
+			new ThreadPoolExecutor(
+				threads,
+				threads,
+				0,
+				TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(threads * 4),
+				new ThreadPoolExecutor.CallerRunsPolicy());
+		try {
+			for (int i = 0; i < paths.length; i++) {
+				final Path root = paths[i];
+				Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+					public FileVisitResult visitFile(
+						final Path file,
+						BasicFileAttributes attrs) {
+						if (!attrs.isRegularFile() 
+							|| file.getFileName().toString().startsWith(TMP_PREFIX)) {
+							return FileVisitResult.CONTINUE;
+						}
+						pool.execute(new Runnable() {
+							public void run() {
+								clean(root, file);
+							}
+						});
+						return FileVisitResult.CONTINUE;
+					}
+					
+					public FileVisitResult visitFileFailed(
+						Path file,
+						IOException e) {
+						fail(file, e);
+						return FileVisitResult.CONTINUE;
+					}
+				});
+			}
+		} catch (IOException e) {
+			System.err.println(e.toString());
+			failures.incrementAndGet();
+		} finally {
+			pool.shutdown();
+			try {
+				pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**Gives a cleaned file the permissions of the file that it was 
+	 * cleaned from, along with its owner and group where the user may
+	 * hand files over.
+	 * Temporary files start out readable only by their owner, so 
+	 * without this, each cleaned file would lose its permissions.
+	 * File systems without POSIX permissions are left alone.
+	 * @param from the original file
+	 * @param to the cleaned file
+	 * @throws IOException if the permissions can't be read or set
+	*/
+	private static void copyAttributes(Path from, Path to) throws IOException {
+		PosixFileAttributeView view = 
+			Files.getFileAttributeView(from, PosixFileAttributeView.class);
+		PosixFileAttributeView toView = 
+			Files.getFileAttributeView(to, PosixFileAttributeView.class);
+		if (view == null || toView == null) return;
+		PosixFileAttributes attrs = view.readAttributes();
+		toView.setPermissions(attrs.permissions());
+		try {
+			toView.setGroup(attrs.group());
+			toView.setOwner(attrs.owner());
+		} catch (IOException | SecurityException e) {
+			// only privileged users may give files away
+		}
+	}
+
+	/**Cleans a single file.
+	 * The cleaned text goes to a temporary file that then replaces the
+	 * original or lands in the output directory, so that a failure 
+	 * never leaves a partly cleaned file behind.  The cleaned file 
+	 * keeps the original's permissions.
+	 * @param root the file or directory given on the command line
+	 * @param file the file to clean
+	*/
+	private void clean(Path root, Path file) {
+		Path target = file;
+		if (outDir != null) {
+			Path rel = root.equals(file) ? file.getFileName() : root.relativize(file);
+			target = outDir.resolve(rel.toString());
+		}
+		Path tmp = null;
+		try {
+			Path dir = target.toAbsolutePath().getParent();
+			Files.createDirectories(dir);
+			tmp = Files.createTempFile(dir, TMP_PREFIX, ".tmp");
+			long size = Files.size(file);
+			int removed = 0;
+			if (remover.getOptions().getSelectedRegion()) {
+				try (Writer out = Files.newBufferedWriter(tmp, charset)) {
+					removed = cleanRegion(file, out);
+				}
+			} else {
+				// maps the file rather than reading it onto the heap
+				removed = remover.remove(file, tmp, charset).getReturnsRemoved();
+			}
+			copyAttributes(file, tmp);
+			Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+			tmp = null;
+			files.incrementAndGet();
+			bytes.addAndGet(size);
+			returnsRemoved.addAndGet(removed);
+		} catch (IOException | RuntimeException e) {
+			fail(file, e);
+		} finally {
+			if (tmp != null) {
+				try {
+					Files.deleteIfExists(tmp);
+				} catch (IOException e) {
+					// leaves the stray temporary file
+				}
+			}
+		}
+	}
+	
+	/**Cleans the selected region of a file.
+	 * Regions need random access to the whole text, so the file gets 
+	 * read into memory rather than streamed.
+	 * @param file the file to clean
+	 * @param out the writer for the cleaned text
+	 * @return the number of returns removed
+	*/
+	private int cleanRegion(Path file, Writer out) throws IOException {
+		String s = new String(Files.readAllBytes(file), charset);
+		RemoverResult result = 
+			remover.remove(s, Math.min(x, s.length()), Math.min(y, s.length()));
+		out.write(result.getText());
+		return result.getStats().getReturnsRemoved();
+	}
+	
+	/**Reports a file that couldn't be cleaned.
+	 * @param file the file
+	 * @param e the cause
+	*/
+	private void fail(Path file, Exception e) {
+		failures.incrementAndGet();
+		System.err.println(file + ": " + e);
+	}
+
+	/**Gets the number of files cleaned.
+	 * @return the number of files
+	*/
+	public long getFiles() { return files.get(); }
+	/**Gets the total size of the files cleaned.
+	 * @return the number of bytes read
+	*/
+	public long getBytes() { return bytes.get(); }
+	/**Gets the total number of returns removed.
+	 * @return the number of returns removed from all the files
+	*/
+	public long getReturnsRemoved() { return returnsRemoved.get(); }
+	/**Gets the number of files that couldn't be cleaned.
+	 * @return the number of failures
+	*/
+	public long getFailures() { return failures.get(); }
+}
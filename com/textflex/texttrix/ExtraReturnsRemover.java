@@ -0,0 +1,2032 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is the Text Trix code.
+ *
+ * The Initial Developer of the Original Code is
+ * Text Flex.
+ * Portions created by the Initial Developer are Copyright (C) 2003-4
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s): David Young <dvd@textflex.com>
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+
+package com.textflex.texttrix;
+
+import java.io.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**The extra returns remover's engine.
+ * Works through text a line at a time, deciding for each hard return
+ * whether to keep it or to join the lines around it, while stripping
+ * inline message reply symbols and leaving 
+ * <code>&#060;pre&#062;</code>-delimited areas untouched.
+ * The engine reads from a {@link RemoverSource} and writes to a
+ * {@link RemoverSink}, so the same state machine cleans strings held
+ * in memory as well as text streamed from a reader to a writer.
+ * Hard returns can be line feeds, carriage returns and line feeds
+ * together, or carriage returns on their own, in any mix, and the
+ * returns that the remover keeps or inserts follow the style of the
+ * return in the text at that point.
+ * The options are fixed when the engine is created, and each run 
+ * keeps its state to itself, so any number of threads can share an 
+ * engine.
+*/
+public class ExtraReturnsRemover {
+
+	static final String SEARCH_CHARS = " >"; // inline message reply chars
+	static final String INLINE_REPLY_SIGNS = ">"; // inline message indicators
+	// default number of chars that streamed cleaning holds at a time
+	private static final int WINDOW_SIZE = 8192;
+	/** Length of text from which whole-text runs clean in parallel. */
+	public static final int PARALLEL_LENGTH = 1 << 20;
+	// smallest stretch of text worth cleaning as a separate task
+	private static final int MIN_CHUNK = 1 << 16;
+	// number of stretches to aim for per thread, to even out the load
+	private static final int CHUNKS_PER_THREAD = 4;
+	// minimum length of the blocks cached by incremental runs
+	private static final int BLOCK_LENGTH = 256;
+	// chars compared at a time when finding where a text changed
+	private static final int COMPARE_CHUNK = 4096;
+	// number of chars to work through between check-ins with a monitor
+	private static final int CHECK_IN_LENGTH = 1 << 16;
+	// fewest documents of a batch worth cleaning as a separate task
+	private static final int MIN_BATCH_SLICE = 64;
+
+	// output arrays kept by each thread for reuse from run to run
+	private static final ThreadLocal<RemoverSink.CharArraySink> outputs =
+		new ThreadLocal<RemoverSink.CharArraySink>();
+	// largest output array worth keeping between runs
+	private static final int MAX_KEPT_OUTPUT = 1 << 20;
+	// room to leave in new output arrays for email markers and the like
+	private static final int OUTPUT_SLACK = 256;
+
+	// styles of hard return: line feeds, carriage returns and line feeds
+	// together, and carriage returns on their own
+	private static final String[] RETURNS = {"\n", "\r\n", "\r"};
+
+	private RemoverOptions options = null;
+	private ListMarkers listMarkers = null;
+	private int threshold = 0;
+	private boolean flowed = false; // join format=flowed lines
+	private boolean quotedPrintable = false; // remove soft line breaks
+
+	/* Text to insert, in each style of hard return */
+	// marks the start of a reply region at the start of the text
+	private String[] emailMarkerStart = inEachStyle("");
+	// closes a line and marks the start of a reply region
+	private String[] replyStart = inEachStyle("\n\n");
+	// closes a line and marks the end of a reply region
+	private String[] replyEnd = inEachStyle("\n\n");
+	// closes a line and keeps a blank line after it
+	private String[] doubleReturn = inEachStyle("\n\n");
+
+	/**Creates an engine with the given options.
+	 * @param aOptions the options
+	*/
+	public ExtraReturnsRemover(RemoverOptions aOptions) {
+		options = aOptions;
+		listMarkers = options.getListMarkers();
+		threshold = options.getThreshold();
+		flowed = options.getFlowed();
+		quotedPrintable = options.getQuotedPrintable();
+		if (options.getEmailMarkers()) {
+			emailMarkerStart = inEachStyle("----Original Message----\n\n");
+			replyStart = inEachStyle("\n\n----Original Message----\n\n");
+			replyEnd = inEachStyle("\n-----------------------" + "\n\n");
+		}
+	}
+
+	/**Gets text in each style of hard return.
+	 * @param s the text, with line feeds for returns
+	 * @return the text with each of the styles of return in
+	 * {@link #RETURNS}, in the same order
+	*/
+	private static String[] inEachStyle(String s) {
+		String[] styles = new String[RETURNS.length];
+		for (int i = 0; i < RETURNS.length; i++) {
+			styles[i] = s.replace("\n", RETURNS[i]);
+		}
+		return styles;
+	}
+
+	/**Gets the style of a hard return.
+	 * @param s the text
+	 * @param i the index of the return's first char, or -1 for text
+	 * without any returns, which takes line feeds
+	 * @return the index in {@link #RETURNS} of the return's style
+	*/
+	private static int returnStyle(RemoverSource s, long i) {
+		if (i == -1 || s.charAt(i) == '\n') return 0;
+		return (s.returnLength(i) == 2) ? 1 : 2;
+	}
+
+	/**Gets the options.
+	 * @return the options fixed when the engine was created
+	*/
+	public RemoverOptions getOptions() { return options; }
+
+	/**Removes extra returns from the entire text of a string.
+	 * @param s the string to remove extraneous returns from
+	 * @return the text, clean, washed, and ready, along with the 
+	 * statistics from the run
+	*/
+	public RemoverResult remove(String s) {
+		RemoverMetrics.Timing start = RemoverMetrics.start();
+		return record(start, removeWhole(s));
+	}
+
+	/**Removes extra returns from the entire text of a string on the 
+	 * current thread, without recording the run.
+	 * @param s the string to remove extraneous returns from
+	 * @return the text, clean, washed, and ready, along with the 
+	 * statistics from the run
+	*/
+	private RemoverResult removeWhole(String s) {
+		RemoverSource.StringSource src = new RemoverSource.StringSource(s);
+		RemoverSink.CharArraySink stripped = takeOutput(src);
+		RemoverStats stats = new RemoverStats();
+		remove(src, 0, s.length(), stripped, stats);
+		return new RemoverResult(keepOutput(stripped), stats, 0, s.length());
+	}
+
+	/**Removes extra returns from the entire text of a string that has
+	 * already been indexed, taking each line's end, reply symbols, and 
+	 * list marker from the index rather than scanning for them again.
+	 * The index only gets used if it was built with the same list 
+	 * markers as this engine's options.
+	 * @param index the index of the string to remove extraneous returns
+	 * from
+	 * @return the text, clean, washed, and ready, along with the 
+	 * statistics from the run
+	*/
+	public RemoverResult remove(RemoverLineIndex index) {
+		RemoverMetrics.Timing start = RemoverMetrics.start();
+		String s = index.getText();
+		RemoverSource.StringSource src = (usesIndex(index))
+			? new RemoverSource.StringSource(index)
+			: new RemoverSource.StringSource(s);
+		RemoverSink.CharArraySink stripped = takeOutput(src);
+		RemoverStats stats = new RemoverStats();
+		remove(src, 0, s.length(), stripped, stats);
+		return record(
+			start,
+			new RemoverResult(keepOutput(stripped), stats, 0, s.length()));
+	}
+
+	/**Checks whether a line index can stand in for the remover's own 
+	 * scanning of the lines.
+	 * @param index the index
+	 * @return <code>true</code> if the index's list flags match the 
+	 * list markers in this engine's options
+	*/
+	private boolean usesIndex(RemoverLineIndex index) {
+		return index.getOptions().getLists().equals(options.getLists());
+	}
+
+	/**Removes extra returns from a string, or from only a region of it 
+	 * if the "selectedRegion" option is set.
+	 * Large texts get cleaned in parallel when working on the entire 
+	 * text.
+	 * @param s the string to remove extraneous returns from
+	 * @param x the starting index of any selected region, ignored
+	 * if the "selectedRegion" option is unset
+	 * @param y the final index of any selected region, noninclusive, 
+	 * ignored if the "selectedRegion" option is unset
+	 * @return the text, clean, washed, and ready, along with the 
+	 * statistics from the run
+	*/
+	public RemoverResult remove(String s, int x, int y) {
+		RemoverMetrics.Timing start = RemoverMetrics.start();
+		if (!options.getSelectedRegion()) {
+			if (s.length() >= PARALLEL_LENGTH
+				&& ForkJoinPool.getCommonPoolParallelism() > 1) {
+				// splits up large texts to clean on all processors at once
+				return record(
+					start,
+					removeParallelWhole(s, ForkJoinPool.commonPool()));
+			}
+			return record(start, removeWhole(s));
+		}
+		RemoverSource.StringSource src = new RemoverSource.StringSource(s);
+		RemoverSink.CharArraySink stripped = takeOutput(src);
+		RemoverStats stats = new RemoverStats();
+		remove(src, x, y, stripped, stats);
+		return record(
+			start,
+			new RemoverResult(keepOutput(stripped), stats, 0, s.length()));
+	}
+
+	/**Removes extra returns from a string, or from only a region of it 
+	 * if the "selectedRegion" option is set, checking in with a monitor
+	 * along the way.
+	 * The text gets cleaned on the current thread alone, so that the 
+	 * run's progress can be followed from start to end.
+	 * @param s the string to remove extraneous returns from
+	 * @param x the starting index of any selected region, ignored
+	 * if the "selectedRegion" option is unset
+	 * @param y the final index of any selected region, noninclusive, 
+	 * ignored if the "selectedRegion" option is unset
+	 * @param monitor the monitor to report progress to, which can stop
+	 * the run
+	 * @return the text, clean, washed, and ready, along with the 
+	 * statistics from the run
+	 * @throws CancellationException if the monitor stops the run
+	*/
+	public RemoverResult remove(
+		String s,
+		int x,
+		int y,
+		RemoverMonitor monitor) {
+		RemoverMetrics.Timing start = RemoverMetrics.start();
+		if (!options.getSelectedRegion()) {
+			x = 0;
+			y = s.length();
+		}
+		RemoverSource.StringSource src = new RemoverSource.StringSource(s);
+		RemoverSink.CharArraySink stripped = takeOutput(src);
+		RemoverStats stats = new RemoverStats();
+		remove(src, x, y, stripped, stats, monitor);
+		return record(
+			start,
+			new RemoverResult(keepOutput(stripped), stats, 0, s.length()));
+	}
+
+	/**Removes extra returns from only a region of a string, giving the
+	 * cleaned region rather than a whole new copy of the text.
+	 * The work, and the output, depend only on the size of the region 
+	 * and the few lines around it that the remover needs to look at, 
+	 * regardless of the "selectedRegion" option.
+	 * Work continues to the end of the line in which the region ends,
+	 * and through to the closing tags of any 
+	 * <code>&#060;pre&#062;</code> areas that start within the region,
+	 * so the range that the cleaned region replaces may extend past 
+	 * the region's end.
+	 * @param s the string to remove extraneous returns from
+	 * @param x the starting index of the region
+	 * @param y the final index of the region, noninclusive
+	 * @return the cleaned region, along with the range that it replaces
+	 * and the statistics from the run
+	*/
+	public RemoverResult removeRegion(String s, int x, int y) {
+		RemoverMetrics.Timing start = RemoverMetrics.start();
+		RemoverSource.StringSource src = new RemoverSource.StringSource(s);
+		RemoverSink.CharArraySink stripped = takeOutput(src, y - x);
+		RemoverStats stats = new RemoverStats();
+		long end = removeRegion(src, x, y, stripped, stats, null);
+		return record(
+			start,
+			new RemoverResult(
+				keepOutput(stripped),
+				stats,
+				x,
+				(int) Math.min(end, s.length())));
+	}
+
+	/**Removes extra returns from a string, or from only a region of it
+	 * if the "selectedRegion" option is set, giving the changes as edits
+	 * rather than as a whole new copy of the text.
+	 * @param s the string to remove extraneous returns from
+	 * @param x the starting index of any selected region, ignored
+	 * if the "selectedRegion" option is unset
+	 * @param y the final index of any selected region, noninclusive, 
+	 * ignored if the "selectedRegion" option is unset
+	 * @return the edits that clean the text, along with the statistics
+	 * from the run
+	*/
+	public RemoverEdits removeAsEdits(String s, int x, int y) {
+		RemoverMetrics.Timing start = RemoverMetrics.start();
+		if (!options.getSelectedRegion()) {
+			x = 0;
+			y = s.length();
+		}
+		RemoverSource.StringSource src = new RemoverSource.StringSource(s);
+		// guesses at about one edit per line
+		RemoverSink.EditSink stripped = 
+			new RemoverSink.EditSink(src, (y - x) / 64);
+		RemoverStats stats = new RemoverStats();
+		remove(src, x, y, stripped, stats);
+		RemoverEdits edits = stripped.finish();
+		edits.setStats(stats);
+		RemoverMetrics.record(
+			start,
+			s.length(),
+			s.length() + edits.getLengthChange(),
+			stats);
+		return edits;
+	}
+
+	/**Removes extra returns from a string, or from only a region of it
+	 * if the "selectedRegion" option is set, giving the cleaned text as
+	 * pieces that point into the string rather than as a whole new copy
+	 * of the text.
+	 * Suits huge texts, most of which stays as it was: the pieces take
+	 * memory in proportion to the number of lines rather than to the 
+	 * length of the text, and the text can be written out from them 
+	 * without ever being copied into a single string.
+	 * @param s the string to remove extraneous returns from
+	 * @param x the starting index of any selected region, ignored
+	 * if the "selectedRegion" option is unset
+	 * @param y the final index of any selected region, noninclusive, 
+	 * ignored if the "selectedRegion" option is unset
+	 * @return the whole cleaned text, along with the statistics from the
+	 * run
+	*/
+	public RemoverPieces removeAsPieces(String s, int x, int y) {
+		RemoverMetrics.Timing start = RemoverMetrics.start();
+		if (!options.getSelectedRegion()) {
+			x = 0;
+			y = s.length();
+		}
+		RemoverSource.StringSource src = new RemoverSource.StringSource(s);
+		// guesses at about a stretch and a space per line
+		RemoverSink.PieceSink stripped = 
+			new RemoverSink.PieceSink(src, (y - x) / 32);
+		RemoverStats stats = new RemoverStats();
+		remove(src, x, y, stripped, stats);
+		RemoverPieces pieces = stripped.getPieces();
+		pieces.setStats(stats);
+		RemoverMetrics.record(
+			start,
+			s.length(),
+			pieces.length(),
+			stats);
+		return pieces;
+	}
+
+	/**Records a finished run in the remover's metrics.
+	 * @param start the run's timing, from {@link RemoverMetrics#start()}
+	 * @param result the result of the run
+	 * @return the result
+	*/
+	private static RemoverResult record(
+		RemoverMetrics.Timing start,
+		RemoverResult result) {
+		RemoverMetrics.record(
+			start,
+			result.getEnd() - result.getStart(),
+			result.getText().length(),
+			result.getStats());
+		return result;
+	}
+
+	/**Gets an output array for a run on the current thread, reusing
+	 * the array from the thread's last run if there is one.
+	 * @param src the source for the run
+	 * @return the output
+	*/
+	private static RemoverSink.CharArraySink takeOutput(
+		RemoverSource.StringSource src) {
+		return takeOutput(src, (int) src.length());
+	}
+
+	/**Gets an output array for a run on the current thread, reusing
+	 * the array from the thread's last run if there is one.
+	 * @param src the source for the run
+	 * @param length the expected length of the output
+	 * @return the output
+	*/
+	private static RemoverSink.CharArraySink takeOutput(
+		RemoverSource.StringSource src,
+		int length) {
+		RemoverSink.CharArraySink out = outputs.get();
+		// taken from the thread until the run finishes
+		outputs.set(null);
+		if (out == null || out.capacity() < length + OUTPUT_SLACK) {
+			// rather than growing the array a step at a time
+			return new RemoverSink.CharArraySink(src, length + OUTPUT_SLACK);
+		}
+		out.reset(src);
+		return out;
+	}
+
+	/**Creates the cleaned string from an output array and keeps the
+	 * array for the current thread's next run, unless the array has 
+	 * grown too large to be worth keeping.
+	 * @param out the output
+	 * @return the cleaned string
+	*/
+	private static String keepOutput(RemoverSink.CharArraySink out) {
+		String stripped = out.toString();
+		if (out.capacity() <= MAX_KEPT_OUTPUT) {
+			out.clear();
+			outputs.set(out);
+		}
+		return stripped;
+	}
+
+	/**Removes extra returns from text streamed from a reader, writing
+	 * the cleaned text to a writer.
+	 * The text passes through in bounded chunks, with the remover's 
+	 * state carried from one chunk to the next, so that memory use 
+	 * depends on the length of the longest line rather than the length
+	 * of the text.  The output is identical to that from cleaning the 
+	 * whole text at once.
+	 * Neither the reader nor the writer gets closed.
+	 * @param in the reader
+	 * @param out the writer
+	 * @return the statistics from the run
+	 * @throws IOException if the reader or the writer fails
+	*/
+	public RemoverStats remove(Reader in, Writer out) throws IOException {
+		RemoverMetrics.Timing start = RemoverMetrics.start();
+		RemoverSource.ReaderSource src =
+			new RemoverSource.ReaderSource(in, WINDOW_SIZE);
+		RemoverSink.WriterSink stripped = new RemoverSink.WriterSink(src, out);
+		RemoverStats stats = new RemoverStats();
+		try {
+			remove(src, 0, Long.MAX_VALUE, stripped, stats);
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		RemoverMetrics.record(
+			start,
+			src.length(),
+			stripped.getLength(),
+			stats);
+		return stats;
+	}
+
+	/**Removes extra returns from a file, writing the cleaned text to 
+	 * another file.
+	 * @param in the file to clean
+	 * @param out the file for the cleaned text, which gets created or
+	 * replaced
+	 * @param charset the encoding of both files
+	 * @return the statistics from the run
+	 * @throws IOException if either file fails or the text can't be 
+	 * decoded or encoded
+	 * @see #remove(FileChannel, FileChannel, Charset)
+	*/
+	public RemoverStats remove(Path in, Path out, Charset charset) 
+		throws IOException {
+		try (FileChannel inChannel = FileChannel.open(in, StandardOpenOption.READ);
+			FileChannel outChannel = 
+				FileChannel.open(
+					out,
+					StandardOpenOption.CREATE,
+					StandardOpenOption.WRITE,
+					StandardOpenOption.TRUNCATE_EXISTING)) {
+			return remove(inChannel, outChannel, charset);
+		}
+	}
+
+	/**Removes extra returns from a file channel, writing the cleaned 
+	 * text to another channel.
+	 * The file gets mapped into memory and decoded a window at a time,
+	 * and the cleaned text gets encoded straight into direct buffers 
+	 * for the output channel, so neither the text nor the cleaned text 
+	 * ever sits on the heap as a whole.  The output is identical to 
+	 * that from cleaning the whole text at once.
+	 * Neither channel gets closed.
+	 * @param in the channel to clean, read from its current position
+	 * @param out the channel for the cleaned text, written from its 
+	 * current position
+	 * <p>UTF-8 files skip decoding and encoding altogether, with the 
+	 * remover working straight on the mapped bytes, and malformed bytes
+	 * passing through to the output as they are rather than failing 
+	 * the run.
+	 * @param charset the encoding of both channels
+	 * @return the statistics from the run
+	 * @throws IOException if either channel fails or the text can't be 
+	 * decoded or encoded
+	*/
+	public RemoverStats remove(FileChannel in, FileChannel out, Charset charset)
+		throws IOException {
+		if (charset.equals(StandardCharsets.UTF_8)) return removeUtf8(in, out);
+		RemoverMetrics.Timing start = RemoverMetrics.start();
+		RemoverSource.ChannelSource src =
+			new RemoverSource.ChannelSource(in, charset, WINDOW_SIZE);
+		RemoverSink.ChannelSink stripped = 
+			new RemoverSink.ChannelSink(src, out, charset);
+		RemoverStats stats = new RemoverStats();
+		try {
+			remove(src, 0, Long.MAX_VALUE, stripped, stats);
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		stripped.finish();
+		RemoverMetrics.record(
+			start,
+			src.length(),
+			stripped.getLength(),
+			stats);
+		return stats;
+	}
+
+	/**Removes extra returns from a UTF-8 file channel, working on its
+	 * bytes as they are, and writing the cleaned bytes to another 
+	 * channel.
+	 * @param in the channel to clean, read from its current position
+	 * @param out the channel for the cleaned text, written from its 
+	 * current position
+	 * @return the statistics from the run
+	 * @throws IOException if either channel fails
+	*/
+	private RemoverStats removeUtf8(FileChannel in, FileChannel out)
+		throws IOException {
+		RemoverMetrics.Timing start = RemoverMetrics.start();
+		RemoverSource.MappedSource src = new RemoverSource.MappedSource(in);
+		RemoverSink.MappedSink stripped = new RemoverSink.MappedSink(src, out);
+		RemoverStats stats = new RemoverStats();
+		try {
+			remove(src, 0, Long.MAX_VALUE, stripped, stats);
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		stripped.finish();
+		RemoverMetrics.record(
+			start,
+			src.length(),
+			stripped.getLength(),
+			stats);
+		return stats;
+	}
+
+	/**Removes extra returns from UTF-8 text held in a byte array, 
+	 * writing the cleaned text to a stream.
+	 * The remover works on the bytes as they are, without decoding 
+	 * them into chars or encoding the cleaned text back into bytes,
+	 * since every char that it looks for or inserts is ASCII.  The 
+	 * output is the UTF-8 encoding of the output from cleaning the 
+	 * decoded text, with thresholds still counted in chars, while 
+	 * malformed bytes pass through as they are.
+	 * The stream doesn't get closed.
+	 * @param in the array holding the text
+	 * @param off the index in the array of the text's start
+	 * @param len the number of bytes in the text
+	 * @param out the stream
+	 * @return the statistics from the run
+	 * @throws IOException if the stream fails
+	*/
+	public RemoverStats removeUtf8(byte[] in, int off, int len, OutputStream out)
+		throws IOException {
+		RemoverMetrics.Timing start = RemoverMetrics.start();
+		RemoverSource.ByteArraySource src = 
+			new RemoverSource.ByteArraySource(in, off, len);
+		RemoverSink.OutputStreamSink stripped = 
+			new RemoverSink.OutputStreamSink(src, out);
+		RemoverStats stats = new RemoverStats();
+		try {
+			remove(src, 0, len, stripped, stats);
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		RemoverMetrics.record(start, len, stripped.getLength(), stats);
+		return stats;
+	}
+
+	/**Removes extra returns from the entire text of a string, cleaning
+	 * stretches of it in parallel in the common fork/join pool.
+	 * @param s the string to remove extraneous returns from
+	 * @return the text, clean, washed, and ready, along with the 
+	 * statistics from the run
+	 * @see #removeParallel(String, ForkJoinPool)
+	*/
+	public RemoverResult removeParallel(String s) {
+		return removeParallel(s, ForkJoinPool.commonPool());
+	}
+
+	/**Removes extra returns from the entire text of a string, cleaning
+	 * stretches of it in parallel.
+	 * The text gets cut at paragraph breaks where the remover would
+	 * start afresh anyway, so the output is identical to that from
+	 * cleaning the whole text at once.
+	 * @param s the string to remove extraneous returns from
+	 * @param pool the pool in which to clean the stretches
+	 * @return the text, clean, washed, and ready, along with the 
+	 * statistics from the run
+	*/
+	public RemoverResult removeParallel(String s, ForkJoinPool pool) {
+		RemoverMetrics.Timing start = RemoverMetrics.start();
+		return record(start, removeParallelWhole(s, pool));
+	}
+
+	/**Removes extra returns from the entire text of a string, cleaning
+	 * stretches of it in parallel, without recording the run.
+	 * @param s the string to remove extraneous returns from
+	 * @param pool the pool in which to clean the stretches
+	 * @return the text, clean, washed, and ready, along with the 
+	 * statistics from the run
+	*/
+	private RemoverResult removeParallelWhole(String s, ForkJoinPool pool) {
+		RemoverSink.CharArraySink stripped =
+			takeOutput(new RemoverSource.StringSource(s));
+		RemoverStats stats = removeParallel(s, pool, MIN_CHUNK, stripped);
+		return new RemoverResult(keepOutput(stripped), stats, 0, s.length());
+	}
+
+	/**Removes extra returns from each of a batch of documents.
+	 * Meant for many small documents, such as email messages, where 
+	 * the cost of setting up a run would otherwise outweigh the 
+	 * cleaning itself: the documents all share the engine's compiled 
+	 * options, a single output array kept by the thread, and a single
+	 * set of statistics, and the batch gets recorded in the metrics as
+	 * one run.  Each document gets cleaned as a whole text of its own.
+	 * @param docs the documents, which only get iterated once, so that
+	 * they can come from a stream
+	 * @return the cleaned text of each document, along with the 
+	 * statistics totaled across the batch
+	*/
+	public RemoverBatch removeAll(Iterable<String> docs) {
+		RemoverMetrics.Timing start = RemoverMetrics.start();
+		ArrayList<String> texts = new ArrayList<String>();
+		Iterator<String> it = docs.iterator();
+		RemoverSource.StringSource src = null;
+		RemoverSink.CharArraySink stripped = null;
+		RemoverStats stats = new RemoverStats();
+		long charsIn = 0;
+		long charsOut = 0;
+		while (it.hasNext()) {
+			String s = it.next();
+			if (src == null) {
+				src = new RemoverSource.StringSource(s);
+				stripped = takeOutput(src);
+			} else {
+				src.reset(s);
+				stripped.reset(src);
+			}
+			remove(src, 0, s.length(), stripped, stats);
+			String text = stripped.toString();
+			texts.add(text);
+			charsIn += s.length();
+			charsOut += text.length();
+		}
+		if (stripped != null) keepOutput(stripped);
+		return record(
+			start, 
+			new RemoverBatch(
+				texts.toArray(new String[texts.size()]), 
+				stats, 
+				charsIn, 
+				charsOut));
+	}
+
+	/**Removes extra returns from each of a batch of documents, 
+	 * cleaning slices of the batch in parallel.
+	 * Each slice runs as for {@link #removeAll(Iterable)}, with the 
+	 * output array kept by the worker thread that cleans it.
+	 * @param docs the documents
+	 * @param pool the pool in which to clean the slices
+	 * @return the cleaned text of each document, in the order of the 
+	 * documents, along with the statistics totaled across the batch
+	*/
+	public RemoverBatch removeAll(List<String> docs, ForkJoinPool pool) {
+		RemoverMetrics.Timing start = RemoverMetrics.start();
+		// copies the documents for quick access from any thread
+		String[] in = docs.toArray(new String[docs.size()]);
+		String[] texts = new String[in.length];
+		int slice = 
+			Math.max(
+				in.length / (pool.getParallelism() * CHUNKS_PER_THREAD), 
+				MIN_BATCH_SLICE);
+		RemoverStats stats = 
+			pool.invoke(new BatchTask(in, 0, in.length, slice, texts));
+		long charsIn = 0;
+		long charsOut = 0;
+		for (int i = 0; i < in.length; i++) {
+			charsIn += in[i].length();
+			charsOut += texts[i].length();
+		}
+		return record(start, new RemoverBatch(texts, stats, charsIn, charsOut));
+	}
+
+	/**Removes extra returns from a slice of a batch of documents.
+	 * @param docs the documents
+	 * @param lo the first document to clean
+	 * @param hi the document after the last one to clean
+	 * @param texts the array to which the cleaned documents go, at the
+	 * same indices as the documents
+	 * @return the statistics totaled across the slice
+	*/
+	private RemoverStats removeSlice(String[] docs, int lo, int hi, String[] texts) {
+		RemoverStats stats = new RemoverStats();
+		if (lo == hi) return stats;
+		RemoverSource.StringSource src = new RemoverSource.StringSource(docs[lo]);
+		RemoverSink.CharArraySink stripped = takeOutput(src);
+		for (int i = lo; i < hi; i++) {
+			if (i > lo) {
+				src.reset(docs[i]);
+				stripped.reset(src);
+			}
+			remove(src, 0, docs[i].length(), stripped, stats);
+			texts[i] = stripped.toString();
+		}
+		keepOutput(stripped);
+		return stats;
+	}
+
+	/**Records a finished batch run in the remover's metrics.
+	 * @param start the run's timing, from {@link RemoverMetrics#start()}
+	 * @param batch the result of the run
+	 * @return the result
+	*/
+	private static RemoverBatch record(
+		RemoverMetrics.Timing start,
+		RemoverBatch batch) {
+		RemoverMetrics.record(
+			start,
+			batch.getCharsIn(),
+			batch.getCharsOut(),
+			batch.getStats());
+		return batch;
+	}
+
+	/**Removes extra returns from the entire text of a string, reusing 
+	 * the cleaned blocks of paragraphs that earlier runs have left in
+	 * a cache.
+	 * The text gets split into blocks at the same paragraph breaks as
+	 * for parallel cleaning, so each block cleans the same way on its
+	 * own as it would within the whole text, and only the blocks that 
+	 * the cache doesn't already hold get cleaned.
+	 * If the cache holds the last run on an entire text with the same 
+	 * options, only the stretch where this text differs from that one 
+	 * gets split into blocks and looked up again, with the blocks and
+	 * cleaned text on either side of it taken straight from that run.
+	 * Otherwise, large texts get their blocks cleaned in parallel, as
+	 * for {@link #remove(String, int, int)}.
+	 * @param s the string to remove extraneous returns from
+	 * @param cache the cache of cleaned blocks, which gets the blocks
+	 * cleaned by this run
+	 * @return the text, clean, washed, and ready, along with the 
+	 * statistics from the run
+	 * @see #findParagraphCuts(String, int, int)
+	*/
+	public RemoverResult removeIncremental(String s, RemoverCache cache) {
+		return removeIncremental(s, cache, null);
+	}
+
+	/**Removes extra returns from the entire text of a string, reusing 
+	 * the cleaned blocks of paragraphs that earlier runs have left in
+	 * a cache, and checking in with a monitor along the way.
+	 * @param s the string to remove extraneous returns from
+	 * @param cache the cache of cleaned blocks, which gets the blocks
+	 * cleaned by this run
+	 * @param monitor the monitor to report progress to, which can stop
+	 * the run; <code>null</code> for none
+	 * @return the text, clean, washed, and ready, along with the 
+	 * statistics from the run
+	 * @throws CancellationException if the monitor stops the run
+	 * @see #removeIncremental(String, RemoverCache)
+	*/
+	public RemoverResult removeIncremental(
+		String s,
+		RemoverCache cache,
+		RemoverMonitor monitor) {
+		RemoverMetrics.Timing start = RemoverMetrics.start();
+		RemoverSink.CharArraySink stripped =
+			takeOutput(new RemoverSource.StringSource(s));
+		RemoverCache.Run last = cache.getRun(options);
+		RemoverCache.Run run = 
+			(last != null) ? update(last, s, cache, stripped, monitor) : null;
+		if (run == null) {
+			int[] cuts = findParagraphCuts(s, Integer.MAX_VALUE, BLOCK_LENGTH);
+			int[] cleanedCuts = new int[cuts.length];
+			RemoverStats[] blockStats = new RemoverStats[cuts.length - 1];
+			stripped.reset(new RemoverSource.StringSource(s));
+			if (s.length() >= PARALLEL_LENGTH
+				&& ForkJoinPool.getCommonPoolParallelism() > 1) {
+				// with no earlier run to take blocks from, large texts 
+				// get their blocks cleaned on all processors at once
+				cleanBlocks(
+					s,
+					cuts,
+					cache,
+					stripped,
+					cleanedCuts,
+					blockStats,
+					monitor,
+					ForkJoinPool.commonPool());
+			} else {
+				cleanBlocks(s, cuts, cache, stripped, cleanedCuts, blockStats, monitor);
+			}
+			run = 
+				new RemoverCache.Run(
+					options,
+					s,
+					cuts,
+					keepOutput(stripped),
+					cleanedCuts,
+					blockStats);
+		}
+		cache.setRun(run);
+		RemoverStats stats = new RemoverStats();
+		RemoverStats[] blockStats = run.getStats();
+		for (int i = 0; i < blockStats.length; i++) {
+			stats.add(blockStats[i]);
+		}
+		return record(
+			start,
+			new RemoverResult(run.getCleaned(), stats, 0, s.length()));
+	}
+
+	/**Cleans a text anew only where it differs from the text of an 
+	 * earlier run, taking the blocks on either side of the change from
+	 * that run.
+	 * The change reaches from the first to the last char that differs
+	 * between the two texts, and gets widened to the earlier run's 
+	 * cuts around it, as long as the cut after it still falls at a 
+	 * paragraph break in the new text.  The widened stretch gets split
+	 * into blocks afresh.
+	 * @param last the earlier run
+	 * @param s the string to remove extraneous returns from
+	 * @param cache the cache of cleaned blocks
+	 * @param stripped the output for the cleaned text
+	 * @param monitor the monitor to report progress to, which can stop
+	 * the run; <code>null</code> for none
+	 * @return the run, or <code>null</code> if a 
+	 * <code>&#060;pre&#062;</code> area in the changed stretch reaches
+	 * past it, so that the earlier cuts after it can't be trusted
+	*/
+	private RemoverCache.Run update(
+		RemoverCache.Run last,
+		String s,
+		RemoverCache cache,
+		RemoverSink.CharArraySink stripped,
+		RemoverMonitor monitor) {
+		String old = last.getText();
+		int[] oldCuts = last.getCuts();
+		int[] oldCleanedCuts = last.getCleanedCuts();
+		RemoverStats[] oldStats = last.getStats();
+		int blocks = oldCuts.length - 1;
+		int oldLen = old.length();
+		int len = s.length();
+		
+		// finds the stretch that differs between the texts
+		int prefix = sameLength(old, 0, s, 0, Math.min(oldLen, len), false);
+		int suffix = 
+			sameLength(old, oldLen, s, len, Math.min(oldLen, len) - prefix, true);
+		int shift = len - oldLen;
+		
+		// the last cut before the change, with the text up to and 
+		// including its first char the same as before
+		int a = Arrays.binarySearch(oldCuts, 0, blocks, prefix);
+		a = (a >= 0) ? a - 1 : -2 - a;
+		if (a < 0) a = 0;
+		// the first cut after the change that still starts a paragraph
+		int b = Arrays.binarySearch(oldCuts, a + 1, blocks + 1, oldLen - suffix);
+		if (b < 0) b = -1 - b;
+		while (b < blocks && !isParagraphCut(s, oldCuts[b] + shift)) b++;
+		int from = oldCuts[a];
+		int to = (b == blocks) ? len : oldCuts[b] + shift;
+		String changed = s.substring(from, to);
+		if (!closesPre(changed)) return null;
+		
+		int[] changedCuts = 
+			findParagraphCuts(changed, Integer.MAX_VALUE, BLOCK_LENGTH);
+		int count = changedCuts.length - 1;
+		for (int i = 0; i < changedCuts.length; i++) {
+			changedCuts[i] += from;
+		}
+		int[] cuts = new int[a + count + blocks - b + 1];
+		int[] cleanedCuts = new int[cuts.length];
+		RemoverStats[] blockStats = new RemoverStats[cuts.length - 1];
+		
+		// the blocks before the change
+		System.arraycopy(oldCuts, 0, cuts, 0, a);
+		System.arraycopy(oldCleanedCuts, 0, cleanedCuts, 0, a);
+		System.arraycopy(oldStats, 0, blockStats, 0, a);
+		RemoverSource.StringSource oldCleaned = 
+			new RemoverSource.StringSource(last.getCleaned());
+		stripped.setSource(oldCleaned);
+		stripped.copy(0, oldCleanedCuts[a]);
+		
+		// the blocks through the change
+		int[] changedCleanedCuts = new int[changedCuts.length];
+		RemoverStats[] changedStats = new RemoverStats[count];
+		cleanBlocks(
+			s,
+			changedCuts,
+			cache,
+			stripped,
+			changedCleanedCuts,
+			changedStats,
+			monitor);
+		System.arraycopy(changedCuts, 0, cuts, a, count);
+		System.arraycopy(changedCleanedCuts, 0, cleanedCuts, a, count);
+		System.arraycopy(changedStats, 0, blockStats, a, count);
+		
+		// the blocks after the change
+		int cleanedShift = stripped.length() - oldCleanedCuts[b];
+		stripped.setSource(oldCleaned);
+		stripped.copy(oldCleanedCuts[b], oldCleanedCuts[blocks]);
+		for (int i = b; i <= blocks; i++) {
+			cuts[a + count + i - b] = oldCuts[i] + shift;
+			cleanedCuts[a + count + i - b] = oldCleanedCuts[i] + cleanedShift;
+		}
+		System.arraycopy(oldStats, b, blockStats, a + count, blocks - b);
+		cache.reused(a + blocks - b);
+		return new RemoverCache.Run(
+			options,
+			s,
+			cuts,
+			keepOutput(stripped),
+			cleanedCuts,
+			blockStats);
+	}
+
+	/**Counts the chars that two strings have in common from a given 
+	 * index in each, working through the strings a chunk at a time.
+	 * @param a a string
+	 * @param aFrom the index in <code>a</code> at which to start
+	 * @param b the other string
+	 * @param bFrom the index in <code>b</code> at which to start
+	 * @param max the most chars to count
+	 * @param backward <code>true</code> to count back from the chars 
+	 * before the indices rather than forward from them
+	 * @return the number of chars in common
+	*/
+	private static int sameLength(
+		String a,
+		int aFrom,
+		String b,
+		int bFrom,
+		int max,
+		boolean backward) {
+		char[] aChunk = new char[Math.min(max, COMPARE_CHUNK)];
+		char[] bChunk = new char[aChunk.length];
+		int same = 0;
+		while (same < max) {
+			int n = Math.min(max - same, aChunk.length);
+			int aStart = (backward) ? aFrom - same - n : aFrom + same;
+			int bStart = (backward) ? bFrom - same - n : bFrom + same;
+			a.getChars(aStart, aStart + n, aChunk, 0);
+			b.getChars(bStart, bStart + n, bChunk, 0);
+			if (n == aChunk.length && Arrays.equals(aChunk, bChunk)) {
+				same += n;
+				continue;
+			}
+			// finds where in the chunk the strings part ways
+			for (int i = 0; i < n; i++) {
+				int j = (backward) ? n - 1 - i : i;
+				if (aChunk[j] != bChunk[j]) return same + i;
+			}
+			same += n;
+		}
+		return same;
+	}
+
+	/**Cleans blocks of a text one after another, taking any that the 
+	 * cache holds from it and giving the cache the rest.
+	 * @param s the text
+	 * @param cuts the index of the start of each block, followed by 
+	 * the index of the last block's end
+	 * @param cache the cache of cleaned blocks
+	 * @param stripped the output for the cleaned blocks
+	 * @param cleanedCuts gets the index in the output of the start of 
+	 * each cleaned block, followed by the length of the output
+	 * @param blockStats gets the statistics from cleaning each block
+	 * @param monitor the monitor to report progress through the blocks
+	 * to, which can stop the run; <code>null</code> for none
+	 * @throws CancellationException if the monitor stops the run
+	*/
+	private void cleanBlocks(
+		String s,
+		int[] cuts,
+		RemoverCache cache,
+		RemoverSink.CharArraySink stripped,
+		int[] cleanedCuts,
+		RemoverStats[] blockStats,
+		RemoverMonitor monitor) {
+		int count = cuts.length - 1;
+		long total = cuts[count] - cuts[0];
+		long nextCheckIn = CHECK_IN_LENGTH;
+		for (int i = 0; i < count; i++) {
+			long done = cuts[i] - cuts[0];
+			if (monitor != null && done >= nextCheckIn) {
+				checkIn(monitor, done, total);
+				nextCheckIn = done + CHECK_IN_LENGTH;
+			}
+			cleanedCuts[i] = stripped.length();
+			RemoverCache.Block block = 
+				RemoverCache.block(options, s, cuts[i], cuts[i + 1]);
+			RemoverCache.Entry cached = cache.get(block);
+			if (cached != null) {
+				stripped.insert(cached.getText());
+				blockStats[i] = cached.getStats();
+			} else {
+				RemoverSource.StringSource src = 
+					new RemoverSource.StringSource(
+						s,
+						cuts[i],
+						cuts[i + 1] - cuts[i]);
+				RemoverStats stats = new RemoverStats();
+				stripped.setSource(src);
+				remove(
+					src,
+					0,
+					src.length(),
+					stripped,
+					stats,
+					(monitor == null) 
+						? null 
+						: new BlockMonitor(monitor, done, total));
+				cache.put(block, stripped.substring(cleanedCuts[i]), stats);
+				blockStats[i] = stats;
+			}
+		}
+		cleanedCuts[count] = stripped.length();
+	}
+
+	/**Cleans blocks of a text in parallel, taking any that the cache 
+	 * holds from it and giving the cache the rest.
+	 * The blocks get grouped into stretches of about the same length,
+	 * each cleaned one block after another as for 
+	 * {@link #cleanBlocks(String, int[], RemoverCache, 
+	 * RemoverSink.CharArraySink, int[], RemoverStats[], RemoverMonitor)}.
+	 * @param s the text
+	 * @param cuts the index of the start of each block, followed by 
+	 * the index of the last block's end
+	 * @param cache the cache of cleaned blocks
+	 * @param stripped the output for the cleaned blocks
+	 * @param cleanedCuts gets the index in the output of the start of 
+	 * each cleaned block, followed by the length of the output
+	 * @param blockStats gets the statistics from cleaning each block
+	 * @param monitor the monitor to report progress through the blocks
+	 * to, which can stop the run; <code>null</code> for none
+	 * @param pool the pool in which to clean the stretches
+	 * @throws CancellationException if the monitor stops the run
+	*/
+	private void cleanBlocks(
+		String s,
+		int[] cuts,
+		RemoverCache cache,
+		RemoverSink.CharArraySink stripped,
+		int[] cleanedCuts,
+		RemoverStats[] blockStats,
+		RemoverMonitor monitor,
+		ForkJoinPool pool) {
+		int count = cuts.length - 1;
+		long total = cuts[count] - cuts[0];
+		// the first block of each stretch, followed by the block count
+		int[] firsts = 
+			new int[Math.min(count, pool.getParallelism() * CHUNKS_PER_THREAD) + 1];
+		int stretches = 0;
+		long chunk = total / (firsts.length - 1) + 1; // chars per stretch
+		for (int i = 0; i < count; i++) {
+			if (cuts[i] - cuts[0] >= stretches * chunk) firsts[stretches++] = i;
+		}
+		firsts[stretches] = count;
+		RemoverSink.CharArraySink[] chunks =
+			new RemoverSink.CharArraySink[stretches];
+		pool.invoke(
+			new BlocksTask(
+				s,
+				cuts,
+				firsts,
+				0,
+				stretches,
+				cache,
+				chunks,
+				cleanedCuts,
+				blockStats,
+				(monitor == null) ? null : new SharedMonitor(monitor, total)));
+		for (int j = 0; j < stretches; j++) {
+			int offset = stripped.length();
+			for (int i = firsts[j]; i < firsts[j + 1]; i++) {
+				cleanedCuts[i] += offset;
+			}
+			stripped.append(chunks[j]);
+		}
+		cleanedCuts[count] = stripped.length();
+	}
+
+	/**Monitor for stretches of a text cleaned in parallel, which totals
+	 * the progress through all the stretches as progress through the
+	 * whole text.
+	 * Check-ins from the stretches reach the text's monitor one at a 
+	 * time.
+	*/
+	private static class SharedMonitor {
+		private RemoverMonitor monitor = null; // monitor for the text
+		private long total = 0; // length of the text
+		private long done = 0; // chars worked through in all the stretches
+
+		/**Creates a monitor for stretches of a text.
+		 * @param aMonitor the monitor for the whole text
+		 * @param aTotal the length of the text
+		*/
+		public SharedMonitor(RemoverMonitor aMonitor, long aTotal) {
+			monitor = aMonitor;
+			total = aTotal;
+		}
+
+		/**Creates the monitor for one of the stretches.
+		 * @return the monitor, which reports progress through the 
+		 * stretch as progress through the whole text
+		*/
+		RemoverMonitor stretch() {
+			return new RemoverMonitor() {
+				private long last = 0; // progress through the stretch
+				
+				public void progress(long stretchDone, long stretchTotal) {
+					synchronized (SharedMonitor.this) {
+						done += stretchDone - last;
+						last = stretchDone;
+						monitor.progress(done, total);
+					}
+				}
+
+				public boolean isCanceled() {
+					synchronized (SharedMonitor.this) {
+						return monitor.isCanceled();
+					}
+				}
+			};
+		}
+	}
+
+	/**Monitor for a block of a text, which reports the progress through
+	 * the block as progress through the whole text.
+	*/
+	private static class BlockMonitor implements RemoverMonitor {
+		private RemoverMonitor monitor = null; // monitor for the text
+		private long start = 0; // index of the block's start in the text
+		private long total = 0; // length of the text
+
+		/**Creates a monitor for a block.
+		 * @param aMonitor the monitor for the whole text
+		 * @param aStart the index in the text of the block's start
+		 * @param aTotal the length of the text
+		*/
+		public BlockMonitor(RemoverMonitor aMonitor, long aStart, long aTotal) {
+			monitor = aMonitor;
+			start = aStart;
+			total = aTotal;
+		}
+
+		public void progress(long done, long blockTotal) {
+			monitor.progress(start + done, total);
+		}
+
+		public boolean isCanceled() {
+			return monitor.isCanceled();
+		}
+	}
+
+	/**Removes extra returns from the entire text of a string, cleaning
+	 * stretches of it in parallel.
+	 * @param s the string to remove extraneous returns from
+	 * @param pool the pool in which to clean the stretches
+	 * @param minChunk the minimum length of each stretch
+	 * @param stripped the output for the cleaned text
+	 * @return the statistics from the run
+	*/
+	RemoverStats removeParallel(
+		String s,
+		ForkJoinPool pool,
+		int minChunk,
+		RemoverSink.CharArraySink stripped) {
+		int[] cuts = 
+			findParagraphCuts(
+				s, 
+				pool.getParallelism() * CHUNKS_PER_THREAD,
+				minChunk);
+		RemoverSink.CharArraySink[] chunks =
+			new RemoverSink.CharArraySink[cuts.length - 1];
+		RemoverStats stats = 
+			pool.invoke(new ChunkTask(s, cuts, 0, chunks.length, chunks));
+		// the stretches never split a reply region, so each one already
+		// carries whatever email markers its regions need
+		for (int i = 0; i < chunks.length; i++) {
+			stripped.append(chunks[i]);
+		}
+		return stats;
+	}
+
+	/**Finds the places to cut a text into stretches that can be cleaned
+	 * independently of one another.
+	 * The remover starts afresh after a double return that ends an 
+	 * ordinary line outside of any <code>&#060;pre&#062;</code> area 
+	 * when the next line isn't part of an inline message reply, so
+	 * cleaning the text on either side separately gives the same result.
+	 * Any stretch from a <code>&#060;pre&#062;</code> tag through its 
+	 * closing tag is avoided, whether or not the remover would have 
+	 * treated it as a <code>&#060;pre&#062;</code> area.
+	 * @param s the text
+	 * @param count the number of stretches to aim for
+	 * @param minChunk the minimum length of each stretch
+	 * @return the index of the start of each stretch, followed by the
+	 * length of the text
+	*/
+	static int[] findParagraphCuts(String s, int count, int minChunk) {
+		int len = s.length();
+		int chunk = Math.max(len / Math.max(count, 1), Math.max(minChunk, 1));
+		int[] cuts = new int[len / chunk + 2];
+		int cutCount = 0;
+		cuts[cutCount++] = 0;
+		int startPre = s.indexOf("<pre>"); // next opening pre tag
+		int endPre = 0; // next closing pre tag, or -1 if none remain
+		// end of the last pre area starting before the cut candidate
+		long preEnd = 0;
+		int b = chunk; // cut candidate
+		while (b < len && cutCount < cuts.length - 1) {
+			int dbl = indexOfDoubleReturn(s, b - 4);
+			if (dbl == -1) break;
+			int second = dbl + returnLength(s, dbl);
+			b = second + returnLength(s, second);
+			// accounts for all pre areas starting before the candidate
+			while (startPre != -1 && startPre < b) {
+				if (endPre != -1 && endPre < startPre + 5) {
+					endPre = s.indexOf("</pre>", startPre + 5);
+				}
+				if (endPre == -1) {
+					preEnd = Long.MAX_VALUE; // unclosed to the end
+				} else {
+					preEnd = 
+						Math.max(
+							preEnd,
+							endPre + (s.startsWith("\r\n", endPre + 6) ? 8 : 7));
+				}
+				startPre = s.indexOf("<pre>", startPre + 5);
+			}
+			if (preEnd == Long.MAX_VALUE) break;
+			if (preEnd <= dbl - 1 && endsParagraph(s, dbl, b)) {
+				cuts[cutCount++] = b;
+				b += chunk;
+			} else {
+				b = dbl + 5;
+			}
+		}
+		cuts[cutCount++] = len;
+		int[] trimmed = new int[cutCount];
+		System.arraycopy(cuts, 0, trimmed, 0, cutCount);
+		return trimmed;
+	}
+
+	/**Checks whether a double return ends a paragraph after which the
+	 * remover starts afresh, leaving aside any 
+	 * <code>&#060;pre&#062;</code> areas.
+	 * A double return with a lone carriage return in it doesn't count,
+	 * since the remover may give the output there a carriage return at
+	 * its end and keep a line feed after it from running into it.
+	 * @param s the text
+	 * @param dbl the index of the first char of the first return
+	 * @param b the index after the second return
+	 * @return <code>true</code> if the text can be cut at 
+	 * <code>b</code>
+	*/
+	private static boolean endsParagraph(String s, int dbl, int b) {
+		if (b >= s.length() || dbl < 1 
+			|| s.charAt(b - 1) == '\r'
+			|| (s.charAt(dbl) == '\r' && s.charAt(dbl + 1) != '\n')
+			|| !isParagraphChar(s.charAt(dbl - 1))
+			|| !isParagraphChar(s.charAt(b))) {
+			return false;
+		}
+		// a "=" before the returns, even with padding after it, may 
+		// be a quoted-printable soft break, after which the first 
+		// return doesn't end the line
+		int last = dbl - 1;
+		while (last >= 0 && (s.charAt(last) == ' ' || s.charAt(last) == '\t')) {
+			last--;
+		}
+		return last < 0 || s.charAt(last) != '=';
+	}
+
+	/**Checks whether a text can be cut at a given index, where a double
+	 * return that ends a paragraph ends, leaving aside any 
+	 * <code>&#060;pre&#062;</code> areas.
+	 * @param s the text
+	 * @param b the index
+	 * @return <code>true</code> if the text can be cut there
+	*/
+	private static boolean isParagraphCut(String s, int b) {
+		if (b < 2 || b >= s.length()) return false;
+		int second = (s.startsWith("\r\n", b - 2)) ? b - 2 : b - 1;
+		if (second < 1 || !isReturn(s.charAt(second))) return false;
+		int dbl = 
+			(second >= 2 && s.startsWith("\r\n", second - 2)) 
+				? second - 2 : second - 1;
+		return isReturn(s.charAt(dbl)) && endsParagraph(s, dbl, b);
+	}
+
+	/**Checks whether every <code>&#060;pre&#062;</code> area that 
+	 * starts in a text also ends in it, along with the return after its
+	 * closing tag.
+	 * @param s the text
+	 * @return <code>true</code> if no area reaches past the end
+	*/
+	private static boolean closesPre(String s) {
+		int startPre = s.indexOf("<pre>");
+		while (startPre != -1) {
+			int endPre = s.indexOf("</pre>", startPre + 5);
+			if (endPre == -1 || endPre + 8 > s.length()) return false;
+			startPre = s.indexOf("<pre>", startPre + 5);
+		}
+		return true;
+	}
+
+	/**Finds the next double return in a string, in any mix of styles of
+	 * hard return.
+	 * @param s the string
+	 * @param from the index at which to start searching
+	 * @return the index of the first char of the first of the two 
+	 * returns, or -1 if none is found
+	*/
+	private static int indexOfDoubleReturn(String s, int from) {
+		int len = s.length();
+		for (int i = Math.max(from, 0); i < len; i++) {
+			char c = s.charAt(i);
+			if (c <= '\r' && isReturn(c)) {
+				int next = i + returnLength(s, i);
+				if (next < len && isReturn(s.charAt(next))) return i;
+				i = next - 1;
+			}
+		}
+		return -1;
+	}
+
+	/**Gets the length of a hard return in a string.
+	 * @param s the string
+	 * @param i the index of the return's first char
+	 * @return 2 for a carriage return and line feed together, or 1 for
+	 * any other return
+	*/
+	private static int returnLength(String s, int i) {
+		return s.startsWith("\r\n", i) ? 2 : 1;
+	}
+
+	/**Checks whether a char is a hard return, or starts one.
+	 * @param c the char
+	 * @return <code>true</code> if the char is a line feed or a carriage
+	 * return
+	*/
+	private static boolean isReturn(char c) {
+		return c == '\n' || c == '\r';
+	}
+
+	/**Checks whether a char next to a paragraph cut rules out the 
+	 * surrounding lines being blank or part of an inline message reply.
+	 * @param c the char
+	 * @return <code>true</code> if the char is neither a return nor
+	 * an inline message reply char
+	*/
+	private static boolean isParagraphChar(char c) {
+		return !isReturn(c) && SEARCH_CHARS.indexOf(c) == -1;
+	}
+
+	/**Task to clean a range of the stretches of a text, splitting the
+	 * range in half until each task has a single stretch.
+	*/
+	private class ChunkTask extends RecursiveTask<RemoverStats> {
+		private static final long serialVersionUID = 1L;
+		private String s = null;
+		private int[] cuts = null; // start of each stretch
+		private int lo = 0; // first stretch to clean
+		private int hi = 0; // stretch after the last one to clean
+		private RemoverSink.CharArraySink[] chunks = null; // the cleaned stretches
+		
+		/**Creates a task for a range of stretches.
+		 * @param aS the text
+		 * @param aCuts the index of the start of each stretch, followed
+		 * by the length of the text
+		 * @param aLo the first stretch to clean
+		 * @param aHi the stretch after the last one to clean
+		 * @param aChunks the array to which the cleaned stretches go
+		*/
+		public ChunkTask(
+			String aS,
+			int[] aCuts,
+			int aLo,
+			int aHi,
+			RemoverSink.CharArraySink[] aChunks) {
+			s = aS;
+			cuts = aCuts;
+			lo = aLo;
+			hi = aHi;
+			chunks = aChunks;
+		}
+		
+		protected RemoverStats compute() {
+			if (hi - lo == 1) {
+				RemoverSource.StringSource src =
+					new RemoverSource.StringSource(
+						s,
+						cuts[lo],
+						cuts[hi] - cuts[lo]);
+				RemoverSink.CharArraySink stripped =
+					new RemoverSink.CharArraySink(src, cuts[hi] - cuts[lo]);
+				RemoverStats stats = new RemoverStats();
+				remove(src, 0, src.length(), stripped, stats);
+				chunks[lo] = stripped;
+				return stats;
+			}
+			int mid = (lo + hi) >>> 1;
+			ChunkTask left = new ChunkTask(s, cuts, lo, mid, chunks);
+			left.fork();
+			RemoverStats stats = new ChunkTask(s, cuts, mid, hi, chunks).compute();
+			stats.add(left.join());
+			return stats;
+		}
+	}
+
+	/**Task to clean a range of the stretches of blocks of a text, 
+	 * splitting the range in half until each task has a single stretch.
+	*/
+	private class BlocksTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private String s = null;
+		private int[] cuts = null; // start of each block
+		private int[] firsts = null; // first block of each stretch
+		private int lo = 0; // first stretch to clean
+		private int hi = 0; // stretch after the last one to clean
+		private RemoverCache cache = null;
+		private RemoverSink.CharArraySink[] chunks = null; // the cleaned stretches
+		// start of each cleaned block within its cleaned stretch
+		private int[] cleanedCuts = null;
+		private RemoverStats[] blockStats = null;
+		private SharedMonitor monitor = null;
+		
+		/**Creates a task for a range of stretches.
+		 * @param aS the text
+		 * @param aCuts the index of the start of each block, followed 
+		 * by the index of the last block's end
+		 * @param aFirsts the first block of each stretch, followed by
+		 * the number of blocks
+		 * @param aLo the first stretch to clean
+		 * @param aHi the stretch after the last one to clean
+		 * @param aCache the cache of cleaned blocks
+		 * @param aChunks the array to which the cleaned stretches go
+		 * @param aCleanedCuts gets the index of the start of each 
+		 * cleaned block within its cleaned stretch
+		 * @param aBlockStats gets the statistics from cleaning each 
+		 * block
+		 * @param aMonitor the monitor for all the stretches, or 
+		 * <code>null</code> for none
+		*/
+		public BlocksTask(
+			String aS,
+			int[] aCuts,
+			int[] aFirsts,
+			int aLo,
+			int aHi,
+			RemoverCache aCache,
+			RemoverSink.CharArraySink[] aChunks,
+			int[] aCleanedCuts,
+			RemoverStats[] aBlockStats,
+			SharedMonitor aMonitor) {
+			s = aS;
+			cuts = aCuts;
+			firsts = aFirsts;
+			lo = aLo;
+			hi = aHi;
+			cache = aCache;
+			chunks = aChunks;
+			cleanedCuts = aCleanedCuts;
+			blockStats = aBlockStats;
+			monitor = aMonitor;
+		}
+		
+		protected void compute() {
+			if (hi - lo == 1) {
+				int first = firsts[lo];
+				int count = firsts[hi] - first;
+				int[] stretchCuts = 
+					Arrays.copyOfRange(cuts, first, first + count + 1);
+				int[] stretchCleanedCuts = new int[count + 1];
+				RemoverStats[] stretchStats = new RemoverStats[count];
+				int length = stretchCuts[count] - stretchCuts[0];
+				RemoverSink.CharArraySink stripped =
+					new RemoverSink.CharArraySink(
+						new RemoverSource.StringSource(s, stretchCuts[0], length),
+						length);
+				cleanBlocks(
+					s,
+					stretchCuts,
+					cache,
+					stripped,
+					stretchCleanedCuts,
+					stretchStats,
+					(monitor == null) ? null : monitor.stretch());
+				System.arraycopy(stretchCleanedCuts, 0, cleanedCuts, first, count);
+				System.arraycopy(stretchStats, 0, blockStats, first, count);
+				chunks[lo] = stripped;
+				return;
+			}
+			int mid = (lo + hi) >>> 1;
+			invokeAll(
+				new BlocksTask(
+					s, cuts, firsts, lo, mid, cache, 
+					chunks, cleanedCuts, blockStats, monitor),
+				new BlocksTask(
+					s, cuts, firsts, mid, hi, cache, 
+					chunks, cleanedCuts, blockStats, monitor));
+		}
+	}
+
+	/**Task to clean a slice of a batch of documents, splitting the 
+	 * slice in half until each task has few enough documents.
+	*/
+	private class BatchTask extends RecursiveTask<RemoverStats> {
+		private static final long serialVersionUID = 1L;
+		private String[] docs = null;
+		private int lo = 0; // first document to clean
+		private int hi = 0; // document after the last one to clean
+		private int slice = 0; // most documents to clean without splitting
+		private String[] texts = null; // the cleaned documents
+		
+		/**Creates a task for a slice of documents.
+		 * @param aDocs the documents
+		 * @param aLo the first document to clean
+		 * @param aHi the document after the last one to clean
+		 * @param aSlice the most documents to clean without splitting
+		 * @param aTexts the array to which the cleaned documents go
+		*/
+		public BatchTask(
+			String[] aDocs,
+			int aLo,
+			int aHi,
+			int aSlice,
+			String[] aTexts) {
+			docs = aDocs;
+			lo = aLo;
+			hi = aHi;
+			slice = aSlice;
+			texts = aTexts;
+		}
+		
+		protected RemoverStats compute() {
+			if (hi - lo <= slice) return removeSlice(docs, lo, hi, texts);
+			int mid = (lo + hi) >>> 1;
+			BatchTask left = new BatchTask(docs, lo, mid, slice, texts);
+			left.fork();
+			RemoverStats stats = new BatchTask(docs, mid, hi, slice, texts).compute();
+			stats.add(left.join());
+			return stats;
+		}
+	}
+
+	/**Runs the remover on the text.
+	 * Text outside the region to work on gets copied unchanged, except
+	 * that work continues to the end of the line in which the region
+	 * ends, and <code>&#060;pre&#062;</code> areas that start within the
+	 * region are copied through to their closing tags.
+	 * @param s the text to remove extraneous returns from
+	 * @param x the starting index of the region to work on
+	 * @param y the final index of the region, noninclusive
+	 * @param stripped the output for the cleaned text
+	 * @param stats the statistics to add to
+	*/
+	void remove(
+		RemoverSource s,
+		long x,
+		long y,
+		RemoverSink stripped,
+		RemoverStats stats) {
+		remove(s, x, y, stripped, stats, null);
+	}
+
+	/**Runs the remover on the text, checking in with a monitor along
+	 * the way.
+	 * @param s the text to remove extraneous returns from
+	 * @param x the starting index of the region to work on
+	 * @param y the final index of the region, noninclusive
+	 * @param stripped the output for the cleaned text
+	 * @param stats the statistics to add to
+	 * @param monitor the monitor to report progress to, which can stop
+	 * the run; <code>null</code> for none
+	 * @throws CancellationException if the monitor stops the run
+	 * @see #remove(RemoverSource, long, long, RemoverSink, RemoverStats)
+	*/
+	void remove(
+		RemoverSource s,
+		long x,
+		long y,
+		RemoverSink stripped,
+		RemoverStats stats,
+		RemoverMonitor monitor) {
+		// append text preceding the selection
+		if (x > 0) stripped.copy(0, x);
+		long n = removeRegion(s, x, y, stripped, stats, monitor);
+		// add the text following the selection
+		long len = s.length();
+		if (n < len) stripped.copy(n, len);
+	}
+
+	/**Runs the remover on a region of the text, outputting only the 
+	 * cleaned region.
+	 * Work continues past the end of the region to the end of the line
+	 * in which the region ends, and through to the closing tags of any
+	 * <code>&#060;pre&#062;</code> areas that start within the region.
+	 * Only the line in which the region starts gets read before it.
+	 * @param s the text to remove extraneous returns from
+	 * @param x the starting index of the region to work on
+	 * @param y the final index of the region, noninclusive
+	 * @param out the output for the cleaned region
+	 * @param stats the statistics to add to
+	 * @param monitor the monitor to report progress to, which can stop
+	 * the run; <code>null</code> for none
+	 * @return the index at which work stopped, which may be past the 
+	 * end of the text if the region extends that far
+	 * @throws CancellationException if the monitor stops the run
+	*/
+	long removeRegion(
+		RemoverSource s,
+		long x,
+		long y,
+		RemoverSink out,
+		RemoverStats stats,
+		RemoverMonitor monitor) {
+		/* This function works by generally checking the characters afer
+		 * a hard return to determine whether to keep it or not.
+		 * To strip inline message reply characters, the function must also
+		 * check the beginning of the string separately.  Additionally, the
+		 * function completely excludes "<pre>"-tag-delimited areas from hard
+		 * return removal.
+		 */
+		
+		/* Indices */
+		long n = x; // string index
+		long end = y;
+		// keeps returns inserted in the style of a lone carriage return,
+		// or such returns kept ahead of skipped reply symbols, from 
+		// running into a line feed after them
+		RemoverSink.ReturnSink stripped = new RemoverSink.ReturnSink(s, out, x);
+		
+		/* Flags and storage */
+		boolean isCurrentLineReply = false; // current line part of msg reply
+		boolean isNextLineReply = false; // next line part of message reply
+		boolean ignorePre = false; // ignore <pre>'s within inline replies
+		boolean isPre = false; // current line starts a <pre> area
+		// inline reply symbols (eg "<" or ">") in next line, right after singleReturn
+		int inlineReply = 0;
+		// inline replies on next next line, important for double returns embedded
+		// in otherwise continuous reply symbols
+		int nextInlineReply = 0;
+		long singleReturn = 0; // next hard return
+		int style = 0; // style of the next hard return, from RETURNS
+		int returnLength = 1; // length of the next hard return
+		boolean isDoubleReturn = false; // double hard return flag
+		long secondReturn = 0; // index of a double return's second return
+		int secondLength = 0; // length of a double return's second return
+		long lineStart = s.lastLineEnd(n - 1) + 1;
+		// chars that returns of more than one char add to the line from
+		// lineStart, which can take in a double return's second return
+		int lineReturnChars = 0;
+		int lineDepth = 0; // number of reply symbols before the current line
+		long softBreak = -1; // "=" ending a quoted-printable line
+		long carriedTo = -1; // where a soft break last carried a line on
+		int carriedChar = -1; // last char kept on the line before then
+		long nextCheckIn = n + CHECK_IN_LENGTH; // where to next check in
+		// lines already scanned into an index, if any, and the line
+		// holding n in it
+		RemoverLineIndex index = s.getLineIndex();
+		int line = 0;
+		
+		/* Initiate the remover */
+		// Lines in the main loop are assumed to have already been stripped
+		// of any email reply symbols and flagged about whether the previous
+		// line had any of the symbols.  Prior to this loop, the first line must
+		// be checked and flagged for these symbols.
+		
+		// check for inline reply symbols at start of string
+		inlineReply = containingSeq(s, n, SEARCH_CHARS, INLINE_REPLY_SIGNS);
+		if (inlineReply != 0 && !s.startsWith("<pre>", n)) {
+			isCurrentLineReply = true;
+			stats.replyRegion();
+			// mark reply region as "Original Message", but only if at start
+			// of message to prevent splitting reply region if text highlighted
+			// in middle of such a region
+			if (n == 0) {
+				stripped.insert(emailMarkerStart[returnStyle(s, s.lineEnd(n))]);
+			}
+			lineDepth = quoteDepth(s, n, inlineReply);
+			n += inlineReply;
+		}
+		
+		/* Cycle through the lines from the first to the last */
+		// assuming that the first line has already been appropriately
+		// flagged
+		
+		while (n < end && s.has(n)) {
+			// nothing before the current line is needed anymore
+			s.release(n);
+			if (monitor != null && n >= nextCheckIn) {
+				checkIn(monitor, n - x, end - x);
+				nextCheckIn = n + CHECK_IN_LENGTH;
+			}
+			stats.lineScanned();
+			inlineReply = 0;
+			nextInlineReply = 0;
+			if (index != null) line = index.getLine(n, line);
+			// next hard return
+			singleReturn = (index != null) ? index.getLineEnd(line) : s.lineEnd(n);
+			style = 0;
+			returnLength = 1;
+			isDoubleReturn = false;
+			secondLength = 0;
+			isPre = false;
+
+			// Check the character after a hard return
+			if (singleReturn != -1) {
+				// keeps to the return's style in any returns inserted for it
+				style = returnStyle(s, singleReturn);
+				returnLength = RETURNS[style].length();
+				long afterSingRet = singleReturn + returnLength;
+				// get the length of email reply chars after the return
+				inlineReply =
+					(index != null) ? index.getReplyLength(line + 1)
+						: containingSeq(
+							s,
+							afterSingRet,
+							SEARCH_CHARS,
+							INLINE_REPLY_SIGNS);
+				// if the reply chars continue after another hard return, 
+				// find the length of reply chars after it; necessary to 
+				// identify reply symbols surrounding a double return
+				if (s.has(afterSingRet += inlineReply)
+					&& isReturn(s.charAt(afterSingRet))) {
+					isDoubleReturn = true;
+					secondReturn = afterSingRet;
+					secondLength = s.returnLength(secondReturn);
+					nextInlineReply =
+						(index != null) ? index.getReplyLength(line + 2)
+							: containingSeq(
+								s,
+								afterSingRet + secondLength,
+								SEARCH_CHARS,
+								INLINE_REPLY_SIGNS);
+				}
+			}
+			isNextLineReply = inlineReply != 0 || nextInlineReply != 0;
+
+			/* Append the chars to keep while removing single returns
+			 * and their inline msg reply chars appropriately.
+			 */
+			if (!ignorePre && s.startsWith("<pre>", n)) {
+				// Skip <pre>-delimited sections, removing only the <pre> tags
+				// The <pre> tags should each be at the start of its own line.
+				// go to the end of the "pre" section;
+				// if user forgets closing "pre" tag, goes to end
+				long endPre = 
+					s.copyUntil("</pre>", n + 5, s.next(n + 5), end, stripped);
+				stats.preBlock();
+				isPre = true;
+				n = (endPre != -1) ? s.next(endPre + 6) : end;
+				
+			} else if (singleReturn == -1) {
+				// Add the rest of the text if no more single returns exist.
+				// Also catches null strings and skips final "--------" for inline 
+				// replies w/ no later singleReturn
+				stripped.copy(n, Math.min(end, s.length()));
+				n = end;
+				
+			} else if (quotedPrintable 
+				&& (softBreak = softBreak(s, n, singleReturn)) != -1) {
+				// Removes quoted-printable soft line breaks along with their
+				// "=", joining the lines without a space.  The next line
+				// carries on the current one rather than starting a line of 
+				// its own, so the current line's flags stay as they are.
+				stripped.copy(n, softBreak);
+				stats.returnRemoved();
+				// remembers the last char kept on the line in case a join
+				// right after the soft break needs a space
+				if (softBreak > n) {
+					carriedChar = s.charAt(softBreak - 1);
+				} else if (n != carriedTo) {
+					carriedChar = -1;
+				}
+				carriedTo = n = singleReturn + returnLength;
+				continue;
+				
+			} else if (flowed && !isDoubleReturn && isFlowed(s, n, singleReturn)
+				&& isCurrentLineReply == isNextLineReply
+				&& quoteDepth(s, singleReturn + returnLength, inlineReply) == lineDepth) {
+				// Joins format=flowed lines, which end with a space, to the 
+				// next line at the same quote depth, regardless of any list
+				// markers or the threshold; the space stays between them
+				stripped.copy(n, singleReturn);
+				stats.returnRemoved();
+				n = singleReturn + returnLength + inlineReply;
+				
+			} else if ((threshold > 0 || singleReturn < lineStart)
+				&& s.charCount(lineStart, singleReturn) - lineReturnChars < threshold) {
+				// Preserves lines that have below the threshold level of characters.
+				// Eg if a line has 4 characters, including reply markers, with the 
+				// threshold set to 5, the line will stay the same.  If the line has reply
+				// markers, however, they will be removed, under the assumption that
+				// wants to preserve the formatting while still deleting extraneous chars.
+				stripped.copy(n, singleReturn + returnLength);
+				stats.thresholdLine();
+				n = singleReturn + returnLength + inlineReply;
+				
+			} else if (!isCurrentLineReply && isNextLineReply) {
+				// Check for marks that at the start of an inline message reply
+				stripped.copy(n, singleReturn);
+				stripped.insert(replyStart[style]);
+				// Skip the 2nd return in double returns, including any surrounding
+				// email reply symbols
+				n =
+					singleReturn + returnLength + inlineReply 
+						+ secondLength + nextInlineReply;
+						
+			} else if (isCurrentLineReply && !isNextLineReply) {
+				// Check for marks that at the end of an inline message reply
+				stripped.copy(n, singleReturn);
+				stripped.insert(replyEnd[style]);
+				// Skip the 2nd return in double returns, including any surrounding
+				// email reply symbols
+				n =
+					singleReturn + returnLength + inlineReply 
+						+ secondLength + nextInlineReply;
+						
+			} else if (isDoubleReturn) {
+				// Preserve double returns
+				stripped.copy(n, singleReturn);
+				stripped.insert(doubleReturn[style]);
+				// skip over processed rets
+				n = 
+					singleReturn + returnLength + inlineReply 
+						+ secondLength + nextInlineReply;
+				
+			} else if ((index != null) ? index.isList(line + 1)
+				: isList(s, singleReturn + returnLength + inlineReply)) {
+				// Preserve separate lines for lines starting w/
+				// list markers
+				stripped.copy(n, singleReturn + returnLength);
+				stats.listLine();
+				n = singleReturn + returnLength + inlineReply;
+				
+			} else {
+				// Join the tail-end of the text.
+				stripped.copy(n, singleReturn);
+				// don't add space if single return is at beginning of line
+				// or a space exists right before the single return;
+				// add space if none exists right before the single return,
+				// or before any soft break that carried the line on to it
+				int before = 
+					(singleReturn != n) ? s.charAt(singleReturn - 1)
+						: (n == carriedTo) ? carriedChar : -1;
+				if (before != -1 && before != ' ') {
+					stripped.insert(" ");
+				}
+				stats.returnRemoved();
+				n = singleReturn + returnLength + inlineReply;
+			}
+			// flag whether the current line is part of a msg reply
+			if (isNextLineReply && !isCurrentLineReply) stats.replyRegion();
+			isCurrentLineReply = isNextLineReply;
+			// marks the start of the next line, including any reply symbols;
+			// checks for double return b/c, if so, the next line is skipped;
+			// lineStart then has to refer to the next next line, one char on,
+			// where the char is the whole second return unless reply
+			// symbols come before it
+			lineStart = singleReturn + returnLength;
+			if (isDoubleReturn) lineStart += (inlineReply == 0) ? secondLength : 1;
+			lineReturnChars = 
+				(isDoubleReturn && lineStart <= secondReturn && secondReturn < n)
+					? secondLength - 1 : 0;
+			// flag to ignore <pre> tags if in inline message reply
+			ignorePre = isNextLineReply;
+			if (flowed && isPre) {
+				// the lines after the return went out with the <pre> area
+				// and may have been released along with it, so the depth 
+				// comes from the line that carries on after the area
+				lineDepth = 
+					(n < end && s.has(n))
+						? quoteDepth(
+							s,
+							n,
+							containingSeq(s, n, SEARCH_CHARS, INLINE_REPLY_SIGNS))
+						: 0;
+			} else if (flowed && singleReturn != -1) {
+				lineDepth = 
+					(isDoubleReturn)
+						? quoteDepth(s, secondReturn + secondLength, nextInlineReply)
+						: quoteDepth(s, singleReturn + returnLength, inlineReply);
+			}
+		}
+		stripped.finish(n);
+		return n;
+	}
+	
+	/**Reports progress to a monitor and stops the run if the monitor 
+	 * asks.
+	 * @param monitor the monitor
+	 * @param done the number of chars worked through so far
+	 * @param total the number of chars to work through
+	 * @throws CancellationException if the monitor stops the run
+	*/
+	private static void checkIn(RemoverMonitor monitor, long done, long total) {
+		if (monitor.isCanceled()) {
+			throw new CancellationException("Extra returns removal canceled");
+		}
+		monitor.progress(done, total);
+	}
+
+	/**Finds the <code>=</code> that ends a line of quoted-printable 
+	 * text with a soft line break.
+	 * Any spaces or tabs after the <code>=</code> are padding that the
+	 * soft break also takes in.
+	 * @param s the text
+	 * @param start the index of the start of the line
+	 * @param end the index of the return that ends the line
+	 * @return the index of the <code>=</code>, or -1 if the line ends 
+	 * with a hard line break
+	*/
+	private static long softBreak(RemoverSource s, long start, long end) {
+		long i = end - 1;
+		while (i >= start && (s.charAt(i) == ' ' || s.charAt(i) == '\t')) i--;
+		return (i >= start && s.charAt(i) == '=') ? i : -1;
+	}
+
+	/**Checks whether a line of format=flowed text is flowed, or ends 
+	 * with a space that marks it as continuing on the next line.
+	 * The signature separator, <code>--&#032;</code>, never counts.
+	 * @param s the text
+	 * @param start the index of the start of the line, after any inline
+	 * reply symbols
+	 * @param end the index of the return that ends the line
+	 * @return <code>true</code> if the line is flowed
+	*/
+	private static boolean isFlowed(RemoverSource s, long start, long end) {
+		return end > start && s.charAt(end - 1) == ' '
+			&& !(end - start == 3 && s.startsWith("-- ", start));
+	}
+
+	/**Counts the inline message reply signs in a sequence of reply 
+	 * symbols, which gives the quote depth of the line after it.
+	 * @param s the text
+	 * @param start the index of the start of the sequence
+	 * @param length the length of the sequence, as found by 
+	 * {@link #containingSeq(RemoverSource, long, String, String)}
+	 * @return the number of reply signs
+	*/
+	static int quoteDepth(RemoverSource s, long start, int length) {
+		int depth = 0;
+		for (long i = start; i < start + length; i++) {
+			if (INLINE_REPLY_SIGNS.indexOf(s.charAt(i)) != -1) depth++;
+		}
+		return depth;
+	}
+
+	/**Checks whether a line starts with a tab, dash, asterisk, outline 
+	 * symbol (eg "a)" or "ii."), or other user-defined list marker.
+	 * Only gets checked once all the other reasons for keeping the 
+	 * return before the line have been ruled out.
+	 * @param s the text
+	 * @param start the index of the start of the line, after any inline
+	 * reply symbols
+	 * @return <code>true</code> if the line starts with a list marker
+	*/
+	private boolean isList(RemoverSource s, long start) {
+		return s.has(start) && listMarkers.matches(s, start);
+	}
+
+	/** Finds the first continuous string consisting of any of a given
+	set of chars and returns the sequence's length if it contains any of 
+	another given set of chars.
+	@param seq text to search
+	@param start <code>seq</code>'s index at which to start searching
+	@param chars chars for which to search in <code>seq</code>
+	@param innerChars required chars to return the length of the first
+	continuous string of chars from <code>chars</code>; if no
+	<code>innerChars</code> are found, returns 0
+	 */
+	static int containingSeq(
+		RemoverSource seq,
+		long start,
+		String chars,
+		String innerChars) {
+		char nextChar;
+		boolean inSeq = false;
+		long i = start;
+		while (seq.has(i)
+			&& chars.indexOf(nextChar = seq.charAt(i)) != -1) {
+			i++;
+			if (innerChars.indexOf(nextChar) != -1) {
+				inSeq = true; // set flag that found a char from innerChar
+			}
+		}
+		return (inSeq) ? (int) (i - start) : 0;
+	}
+}
@@ -0,0 +1,234 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is the Text Trix code.
+ *
+ * The Initial Developer of the Original Code is
+ * Text Flex.
+ * Portions created by the Initial Developer are Copyright (C) 2003-4
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s): David Young <dvd@textflex.com>
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+
+package com.textflex.texttrix;
+
+import java.nio.charset.*;
+import java.util.*;
+
+/**Compiled set of list markers.
+ * The user's comma-separated list of list markers gets compiled once
+ * into a pair of tries, so that checking whether a line starts a list
+ * takes a single walk along the start of the line no matter how many
+ * markers the user has defined.
+ * Plain markers, such as "-" or "*", must appear right at the start
+ * of the line.  Markers starting with "[outline]" are outline markers,
+ * where the rest of the marker, eg the ")" in "[outline])", is the 
+ * outline closer.  The closer must be preceded by an outline 
+ * incrementor, such as "IV", "ix", "a", or "3".
+*/
+class ListMarkers {
+	// user generic symbol for outline incrementors, eg 
+	// "IV","A", or "3"
+	private static final String OUTLINE_STR = "[outline]";
+	// typical outline symbols, eg the numeral and roman numeral chars
+	private static final String OUTLINE_CHARS = "1234567890ivxlcdm";
+	
+	private String lists = ""; // the uncompiled list of markers
+	private Node plain = new Node(); // trie of plain markers
+	private Node closers = null; // trie of outline closers, if any
+	// the same tries with the markers encoded in UTF-8, for sources
+	// that give bytes
+	private Node utf8Plain = null;
+	private Node utf8Closers = null;
+	
+	/**Compiles a list of list markers.
+	 * @param aLists the comma-separated list of markers
+	*/
+	public ListMarkers(String aLists) {
+		this(aLists, true);
+	}
+	
+	/**Compiles a list of list markers, along with the UTF-8 encoding 
+	 * of the list if asked.
+	 * @param aLists the comma-separated list of markers
+	 * @param withUtf8 <code>true</code> to also compile the markers
+	 * as UTF-8 bytes
+	*/
+	private ListMarkers(String aLists, boolean withUtf8) {
+		lists = aLists;
+		// breaks user's comma-separated list of list markers
+		StringTokenizer listTok = new StringTokenizer(lists, ",");
+		while (listTok.hasMoreTokens()) {
+			String marker = listTok.nextToken();
+			// pares down and files outline markers in their own trie
+			if (marker.toLowerCase().startsWith(OUTLINE_STR)) {
+				if (closers == null) closers = new Node();
+				closers.add(marker, OUTLINE_STR.length());
+			} else {
+				plain.add(marker, 0);
+			}
+		}
+		utf8Plain = plain;
+		utf8Closers = closers;
+		if (withUtf8 && !RemoverSink.isAscii(lists)) {
+			// stores each UTF-8 byte of the markers as a char of its own
+			// to match the bytes as sources give them
+			ListMarkers utf8 = 
+				new ListMarkers(
+					new String(
+						lists.getBytes(StandardCharsets.UTF_8),
+						StandardCharsets.ISO_8859_1),
+					false);
+			utf8Plain = utf8.plain;
+			utf8Closers = utf8.closers;
+		}
+	}
+	
+	/**Gets the uncompiled list of markers.
+	 * @return the comma-separated list of markers from which this set
+	 * was compiled
+	*/
+	public String getLists() { return lists; }
+	
+	/**Checks whether a line starts with any of the list markers.
+	 * The plain markers are checked in a single walk down their trie
+	 * from the start of the line.
+	 * For outline markers, the line is walked up to the first occurrence
+	 * of any of the closers, checking whether each of the chars preceding
+	 * the closer, ie the incrementor, is a typical outline symbol or 
+	 * whether they are all the same letter, eg "bb".  The walk never 
+	 * extends past the end of the line and stops as soon as the 
+	 * incrementor can no longer qualify.
+	 * <p>In sources that give UTF-8 bytes, the incrementor gets walked
+	 * a whole char at a time, and a char outside the Basic Multilingual
+	 * Plane never counts as the same letter as another, since the 
+	 * surrogate chars that would encode it differ from one another.
+	 * @param s the text to check
+	 * @param start the index of the start of the line, after any
+	 * inline reply symbols
+	 * @return <code>true</code> if the line starts with a list marker
+	*/
+	public boolean matches(RemoverSource s, long start) {
+		boolean utf8 = s.isUtf8();
+		if ((utf8 ? utf8Plain : plain).matches(s, start)) return true;
+		Node closers = utf8 ? utf8Closers : this.closers;
+		if (closers == null) return false;
+		
+		// flags for whether the incrementor so far consists entirely
+		// of outline symbols or entirely of the same letter
+		boolean allOutline = true;
+		boolean allSame = true;
+		int first = 0;
+		for (long i = start; allOutline || allSame; i = s.next(i)) {
+			// the first occurrence of a closer ends the incrementor
+			if (closers.matches(s, i)) return true;
+			// outline markers can't extend beyond the line
+			if (!s.has(i) || s.charAt(i) == '\n' || s.charAt(i) == '\r') {
+				return false;
+			}
+			int c = Character.toLowerCase(s.codePointAt(i));
+			if (OUTLINE_CHARS.indexOf(c) == -1) allOutline = false;
+			if (Character.isSupplementaryCodePoint(c)) {
+				allSame = false;
+			} else if (i == start) {
+				first = c;
+			} else if (c != first) {
+				allSame = false;
+			}
+		}
+		// once the incrementor fails both checks, no later occurrence
+		// of a closer can qualify
+		return false;
+	}
+	
+	/**Trie node.
+	 * Each node branches on the next char of the markers that share
+	 * the path to the node.  Branches are stored in parallel arrays
+	 * and searched linearly, since few markers share a prefix.
+	*/
+	private static class Node {
+		private char[] chars = new char[0]; // branch chars
+		private Node[] nexts = new Node[0]; // nodes for each branch char
+		private boolean terminal = false; // a marker ends at this node
+		
+		/**Adds a marker below this node.
+		 * @param marker the marker to add
+		 * @param start the index in <code>marker</code> of the first
+		 * char to add
+		*/
+		public void add(String marker, int start) {
+			Node node = this;
+			for (int i = start; i < marker.length(); i++) {
+				char c = marker.charAt(i);
+				Node next = node.next(c);
+				if (next == null) {
+					next = new Node();
+					int len = node.chars.length;
+					char[] chars = new char[len + 1];
+					Node[] nexts = new Node[len + 1];
+					System.arraycopy(node.chars, 0, chars, 0, len);
+					System.arraycopy(node.nexts, 0, nexts, 0, len);
+					chars[len] = c;
+					nexts[len] = next;
+					node.chars = chars;
+					node.nexts = nexts;
+				}
+				node = next;
+			}
+			node.terminal = true;
+		}
+		
+		/**Gets the node along a given branch.
+		 * @param c the branch char
+		 * @return the node, or <code>null</code> if no marker continues
+		 * with <code>c</code>
+		*/
+		public Node next(char c) {
+			for (int i = 0; i < chars.length; i++) {
+				if (chars[i] == c) return nexts[i];
+			}
+			return null;
+		}
+		
+		/**Checks whether any marker below this node starts at the given
+		 * position.
+		 * @param s the text to check
+		 * @param start the index at which to start walking the trie
+		 * @return <code>true</code> if a marker ends along the walk
+		*/
+		public boolean matches(RemoverSource s, long start) {
+			Node node = this;
+			for (long i = start; !node.terminal; i++) {
+				if (!s.has(i) || (node = node.next(s.charAt(i))) == null) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+}
@@ -0,0 +1,571 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is the Text Trix code.
+ *
+ * The Initial Developer of the Original Code is
+ * Text Flex.
+ * Portions created by the Initial Developer are Copyright (C) 2003-4
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s): David Young <dvd@textflex.com>
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+
+
+package com.textflex.texttrix;
+
+import java.io.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**Command-line mbox mode for the extra returns remover.
+ * Streams an mbox archive, splitting it into messages at the 
+ * <code>From </code> lines that follow blank lines, and cleans the 
+ * body of each message on a pool of worker threads while leaving its
+ * headers and separator line untouched.  The messages get written out
+ * in their original order, and only a bounded number of them are in 
+ * memory at any time, so archives of any size clean in constant 
+ * memory at a rate that grows with the number of workers.
+ * <p>Bodies get cleaned as bytes, which suits UTF-8 as well as any 
+ * other encoding that leaves ASCII as it is.  Only plain text bodies
+ * get cleaned; multipart messages and bodies in a transfer encoding
+ * such as base64 pass through untouched, as do the trailing blank 
+ * lines that separate one message from the next.  Quoted-printable 
+ * bodies get their soft line breaks removed in the same pass, though
+ * their escaped chars stay escaped, and format=flowed bodies get 
+ * their flowed lines joined, unless they delete the space that ends
+ * each flowed line.  Any 
+ * line of a cleaned body that ends up starting with 
+ * <code>From </code>, such as a quoted <code>&#062;From </code> line
+ * whose reply symbol got stripped, gets escaped again with a 
+ * <code>&#062;</code>.
+ * No Swing or AWT classes get loaded.
+ * <p>Usage:
+ * <pre>
+ * java com.textflex.texttrix.MboxRemover [options] in.mbox out.mbox
+ * </pre>
+ * Run without arguments for the list of options.
+*/
+public class MboxRemover {
+
+	private static final String USAGE = 
+		"Usage: java com.textflex.texttrix.MboxRemover [options] in.mbox out.mbox\n"
+		+ "Removes extra hard returns from the bodies of the messages in an\n"
+		+ "mbox archive.  Use - for standard input or output.\n"
+		+ "Options:\n"
+		+ "  -lists <markers>     comma-separated list markers\n"
+		+ "                       (default: -,[outline].,[outline]),*)\n"
+		+ "  -threshold <n>       minimum length of line (default: 0)\n"
+		+ "  -emailMarkers        mark email reply region boundaries\n"
+		+ "  -threads <n>         number of worker threads\n"
+		+ "                       (default: number of processors)\n"
+		+ "  -inFlight <n>        most messages to hold in memory at once\n"
+		+ "                       (default: 64 per thread)";
+
+	// number of bytes to read or write at a time
+	private static final int BUFFER_SIZE = 1 << 16;
+	// default number of messages to hold in memory for each worker
+	private static final int IN_FLIGHT_PER_THREAD = 64;
+	// room to leave in cleaned messages for email markers and the like
+	private static final int OUTPUT_SLACK = 256;
+	// separator line prefix, which also needs escaping within bodies
+	private static final byte[] FROM = 
+		"From ".getBytes(StandardCharsets.US_ASCII);
+	// body mode flags for format=flowed and quoted-printable bodies
+	private static final int FLOWED = 1;
+	private static final int QUOTED_PRINTABLE = 2;
+
+	// engines for plain, flowed, quoted-printable, and flowed 
+	// quoted-printable bodies, in the order of their body modes
+	private ExtraReturnsRemover[] removers = new ExtraReturnsRemover[4];
+
+	/* Totals for the archive */
+	private AtomicLong messages = new AtomicLong();
+	private AtomicLong cleaned = new AtomicLong();
+	private AtomicLong bytes = new AtomicLong();
+	private AtomicLong returnsRemoved = new AtomicLong();
+	private AtomicLong failures = new AtomicLong();
+
+	/**Creates an mbox remover.
+	 * @param aRemover the remover engine, whose options also serve for
+	 * the engines for format=flowed and quoted-printable bodies
+	*/
+	public MboxRemover(ExtraReturnsRemover aRemover) {
+		RemoverOptions options = aRemover.getOptions();
+		removers[0] = aRemover;
+		for (int mode = 1; mode < removers.length; mode++) {
+			removers[mode] = 
+				new ExtraReturnsRemover(
+					new RemoverOptions(
+						options.getListMarkers(),
+						options.getThreshold(),
+						options.getEmailMarkers(),
+						options.getSelectedRegion(),
+						options.getFlowed() || (mode & FLOWED) != 0,
+						options.getQuotedPrintable() || (mode & QUOTED_PRINTABLE) != 0));
+		}
+	}
+
+	/**Runs the mbox remover from the command line.
+	 * @param args the options followed by the archive to clean and the
+	 * file for the cleaned archive
+	*/
+	public static void main(String[] args) {
+		String lists = "-,[outline].,[outline]),*";
+		int threshold = 0;
+		boolean emailMarkers = false;
+		int threads = Runtime.getRuntime().availableProcessors();
+		int inFlight = 0;
+		int i = 0;
+		try {
+			for (; i < args.length && args[i].startsWith("-") 
+				&& !args[i].equals("-"); i++) {
+				String opt = args[i];
+				if (opt.equals("-lists")) {
+					lists = args[++i];
+				} else if (opt.equals("-threshold")) {
+					threshold = Integer.parseInt(args[++i]);
+				} else if (opt.equals("-emailMarkers")) {
+					emailMarkers = true;
+				} else if (opt.equals("-threads")) {
+					threads = Math.max(1, Integer.parseInt(args[++i]));
+				} else if (opt.equals("-inFlight")) {
+					inFlight = Math.max(1, Integer.parseInt(args[++i]));
+				} else {
+					throw new IllegalArgumentException("Unknown option: " + opt);
+				}
+			}
+			if (args.length - i != 2) {
+				throw new IllegalArgumentException("Need an input and an output");
+			}
+		} catch (RuntimeException e) {
+			// covers missing option values and malformed numbers as well
+			System.err.println(e.getMessage() == null ? e.toString() : e.getMessage());
+			System.err.println(USAGE);
+			System.exit(2);
+		}
+		if (inFlight == 0) inFlight = threads * IN_FLIGHT_PER_THREAD;
+		
+		MboxRemover mbox = 
+			new MboxRemover(
+				new ExtraReturnsRemover(
+					new RemoverOptions(lists, threshold, emailMarkers, false)));
+		long start = System.nanoTime();
+		try (InputStream in = 
+				args[i].equals("-") 
+					? System.in 
+					: Files.newInputStream(Paths.get(args[i]));
+			OutputStream out = 
+				new BufferedOutputStream(
+					args[i + 1].equals("-") 
+						? System.out 
+						: Files.newOutputStream(Paths.get(args[i + 1])),
+					BUFFER_SIZE)) {
+			mbox.clean(in, out, threads, inFlight);
+		} catch (IOException e) {
+			System.err.println(e.toString());
+			System.exit(1);
+		}
+		double secs = Math.max((System.nanoTime() - start) / 1e9, 1e-9);
+		double mb = mbox.getBytes() / (1024.0 * 1024.0);
+		// reports on standard error in case the archive went to standard output
+		System.err.println(
+			mbox.getMessages() + " messages (" + mbox.getCleaned() + " cleaned), "
+				+ String.format("%.1f", mb) + " MB in "
+				+ String.format("%.2f", secs) + " s ("
+				+ String.format("%.1f", mbox.getMessages() / secs) + " messages/s, "
+				+ String.format("%.1f", mb / secs) + " MB/s); "
+				+ mbox.getReturnsRemoved() + " hard returns removed");
+		if (mbox.getFailures() > 0) {
+			System.err.println(mbox.getFailures() + " messages failed and were left as they were");
+			System.exit(1);
+		}
+	}
+
+	/**Cleans an mbox archive.
+	 * The calling thread reads the messages and hands each one to a 
+	 * worker, writing out the cleaned messages in order as they finish.
+	 * Once the given number of messages are in flight, it waits for 
+	 * the oldest one to finish before reading any more.
+	 * Neither stream gets closed.
+	 * @param in the archive
+	 * @param out the stream for the cleaned archive
+	 * @param threads the number of worker threads
+	 * @param maxInFlight the most messages to hold in memory at once
+	 * @throws IOException if either stream fails
+	*/
+	public void clean(
+		InputStream in,
+		OutputStream out,
+		int threads,
+		int maxInFlight) throws IOException {
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		ArrayDeque<Future<MessageBuffer>> pending = 
+			new ArrayDeque<Future<MessageBuffer>>();
+		try {
+			MessageReader reader = new MessageReader(in);
+			byte[] m = null;
+			while ((m = reader.next()) != null) {
+				final byte[] msg = m;
+				messages.incrementAndGet();
+				bytes.addAndGet(msg.length);
+				pending.add(pool.submit(new Callable<MessageBuffer>() {
+					public MessageBuffer call() {
+						return clean(msg);
+					}
+				}));
+				// writes out whatever has finished in order, only waiting
+				// once too many messages are in flight
+				while (!pending.isEmpty() 
+					&& (pending.size() >= maxInFlight || pending.peek().isDone())) {
+					write(pending.remove(), out);
+				}
+			}
+			while (!pending.isEmpty()) {
+				write(pending.remove(), out);
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	/**Writes out a message once it has been cleaned.
+	 * @param cleaned the message being cleaned
+	 * @param out the stream for the cleaned archive
+	 * @throws IOException if the stream fails or the wait gets 
+	 * interrupted
+	*/
+	private static void write(Future<MessageBuffer> cleaned, OutputStream out)
+		throws IOException {
+		try {
+			cleaned.get().writeTo(out);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while cleaning");
+		} catch (ExecutionException e) {
+			throw new IOException(e.getCause());
+		}
+	}
+
+	/**Cleans the body of a message.
+	 * @param msg the message, starting with its <code>From </code> line
+	 * @return the cleaned message, or the message as it was if its
+	 * body can't or shouldn't be cleaned
+	*/
+	private MessageBuffer clean(byte[] msg) {
+		int bodyStart = findBody(msg);
+		int mode = (bodyStart == -1) ? -1 : bodyMode(msg, bodyStart);
+		if (mode == -1) return new MessageBuffer(msg);
+		// leaves the blank lines that end the message as they are
+		int bodyEnd = msg.length;
+		while (bodyEnd > bodyStart 
+			&& (msg[bodyEnd - 1] == '\n' || msg[bodyEnd - 1] == '\r')) {
+			bodyEnd--;
+		}
+		try {
+			MessageBuffer body = new MessageBuffer(bodyEnd - bodyStart + OUTPUT_SLACK);
+			RemoverStats stats = 
+				removers[mode].removeUtf8(msg, bodyStart, bodyEnd - bodyStart, body);
+			MessageBuffer out = new MessageBuffer(msg.length + OUTPUT_SLACK);
+			out.write(msg, 0, bodyStart);
+			body.writeEscaped(out);
+			out.write(msg, bodyEnd, msg.length - bodyEnd);
+			cleaned.incrementAndGet();
+			returnsRemoved.addAndGet(stats.getReturnsRemoved());
+			return out;
+		} catch (IOException | RuntimeException e) {
+			failures.incrementAndGet();
+			String from = 
+				new String(msg, 0, lineEnd(msg, 0), StandardCharsets.ISO_8859_1);
+			System.err.println(from.trim() + ": " + e);
+			return new MessageBuffer(msg);
+		}
+	}
+
+	/**Finds the start of a message's body.
+	 * @param msg the message
+	 * @return the index after the blank line that ends the headers, or
+	 * -1 if the message doesn't start with a <code>From </code> line or
+	 * has no body
+	*/
+	private static int findBody(byte[] msg) {
+		if (!startsWith(msg, 0, FROM)) return -1;
+		for (int i = lineEnd(msg, 0); i < msg.length; i = lineEnd(msg, i)) {
+			if (msg[i] == '\n') return i + 1;
+			if (msg[i] == '\r' && i + 1 < msg.length && msg[i + 1] == '\n') {
+				return i + 2;
+			}
+		}
+		return -1;
+	}
+
+	/**Checks whether a message's body is plain text that the remover 
+	 * can clean, according to its MIME headers, and how to clean it.
+	 * Messages without MIME headers count as plain text.
+	 * @param msg the message
+	 * @param bodyStart the index of the start of the body
+	 * @return -1 if the body isn't plain text in 7- or 8-bit or 
+	 * quoted-printable encoding; otherwise the body mode, with the
+	 * {@link #FLOWED} flag set for format=flowed text that keeps the
+	 * spaces ending its flowed lines and the {@link #QUOTED_PRINTABLE}
+	 * flag set for quoted-printable text
+	*/
+	private static int bodyMode(byte[] msg, int bodyStart) {
+		int mode = 0;
+		String type = header(msg, bodyStart, "Content-Type");
+		if (type != null) {
+			type = type.toLowerCase();
+			if (!type.startsWith("text/plain")) return -1;
+			// drops the quotes and spaces that parameters may take
+			type = type.replace("\"", "").replace(" ", "").replace("\t", "");
+			if (type.contains(";format=flowed") && !type.contains(";delsp=yes")) {
+				mode |= FLOWED;
+			}
+		}
+		String encoding = header(msg, bodyStart, "Content-Transfer-Encoding");
+		if (encoding == null) return mode;
+		encoding = encoding.toLowerCase();
+		if (encoding.equals("quoted-printable")) return mode | QUOTED_PRINTABLE;
+		return (encoding.equals("7bit") || encoding.equals("8bit")) ? mode : -1;
+	}
+
+	/**Gets the value of a header field, unfolding any continuation 
+	 * lines.
+	 * @param msg the message
+	 * @param bodyStart the index of the start of the body, which ends
+	 * the headers
+	 * @param name the name of the field, matched regardless of case
+	 * @return the trimmed value of the first field with the name, or
+	 * <code>null</code> if there is none
+	*/
+	static String header(byte[] msg, int bodyStart, String name) {
+		byte[] field = (name + ":").toLowerCase().getBytes(StandardCharsets.US_ASCII);
+		for (int i = lineEnd(msg, 0); i < bodyStart; i = lineEnd(msg, i)) {
+			if (!startsWithIgnoreCase(msg, i, field)) continue;
+			StringBuilder value = new StringBuilder();
+			int start = i + field.length;
+			do {
+				int end = lineEnd(msg, start);
+				value.append(new String(msg, start, end - start, StandardCharsets.ISO_8859_1));
+				start = end;
+			} while (start < bodyStart && (msg[start] == ' ' || msg[start] == '\t'));
+			return value.toString().trim();
+		}
+		return null;
+	}
+
+	/**Gets the index after the end of a line.
+	 * @param b the bytes
+	 * @param i an index within the line
+	 * @return the index after the line's return, or the length of the
+	 * bytes if the line has no return
+	*/
+	private static int lineEnd(byte[] b, int i) {
+		while (i < b.length && b[i++] != '\n');
+		return i;
+	}
+
+	/**Checks whether bytes start with others at a given index.
+	 * @param b the bytes
+	 * @param i the index
+	 * @param prefix the bytes to check for
+	 * @return <code>true</code> if <code>b</code> has <code>prefix</code>
+	 * at <code>i</code>
+	*/
+	private static boolean startsWith(byte[] b, int i, byte[] prefix) {
+		if (i + prefix.length > b.length) return false;
+		for (int j = 0; j < prefix.length; j++) {
+			if (b[i + j] != prefix[j]) return false;
+		}
+		return true;
+	}
+
+	/**Checks whether bytes start with others at a given index, 
+	 * regardless of the case of ASCII letters.
+	 * @param b the bytes
+	 * @param i the index
+	 * @param prefix the lowercase bytes to check for
+	 * @return <code>true</code> if <code>b</code> has <code>prefix</code>
+	 * at <code>i</code>
+	*/
+	private static boolean startsWithIgnoreCase(byte[] b, int i, byte[] prefix) {
+		if (i + prefix.length > b.length) return false;
+		for (int j = 0; j < prefix.length; j++) {
+			int c = b[i + j];
+			if (c >= 'A' && c <= 'Z') c += 'a' - 'A';
+			if (c != prefix[j]) return false;
+		}
+		return true;
+	}
+
+	/**Reader that splits an mbox archive into messages.
+	 * A message starts at each <code>From </code> line that opens the 
+	 * archive or follows a blank line.
+	*/
+	private static class MessageReader {
+		private InputStream in = null;
+		private byte[] buf = new byte[BUFFER_SIZE];
+		private int pos = 0; // next byte to take from the buffer
+		private int len = 0; // number of bytes in the buffer
+		private boolean eof = false; // flags that the stream is spent
+		private MessageBuffer msg = new MessageBuffer(BUFFER_SIZE);
+		private boolean blank = true; // flags that the last line was blank
+
+		/**Creates a reader for an archive.
+		 * @param aIn the archive
+		*/
+		public MessageReader(InputStream aIn) {
+			in = aIn;
+		}
+
+		/**Reads more of the archive into the buffer, keeping the bytes
+		 * not yet taken.
+		 * @param need the number of bytes to have in the buffer
+		 * @throws IOException if the stream fails
+		*/
+		private void fill(int need) throws IOException {
+			if (len - pos >= need || eof) return;
+			System.arraycopy(buf, pos, buf, 0, len - pos);
+			len -= pos;
+			pos = 0;
+			while (len < need && !eof) {
+				int read = in.read(buf, len, buf.length - len);
+				if (read == -1) {
+					eof = true;
+				} else {
+					len += read;
+				}
+			}
+		}
+
+		/**Reads the next message.
+		 * @return the message, or <code>null</code> at the end of the 
+		 * archive
+		 * @throws IOException if the stream fails
+		*/
+		public byte[] next() throws IOException {
+			while (true) {
+				fill(FROM.length);
+				if (pos == len) break;
+				if (blank && msg.size() > 0 && pos + FROM.length <= len
+					&& startsWith(buf, pos, FROM)) {
+					break;
+				}
+				// takes a line, a buffer at a time
+				int lineStart = msg.size();
+				while (true) {
+					int end = pos;
+					while (end < len && buf[end] != '\n') end++;
+					boolean found = end < len;
+					if (found) end++;
+					msg.write(buf, pos, end - pos);
+					pos = end;
+					if (found) break;
+					fill(1);
+					if (pos == len) break;
+				}
+				int lineLen = msg.size() - lineStart;
+				blank = lineLen == 1 || (lineLen == 2 && msg.byteAt(lineStart) == '\r');
+			}
+			if (msg.size() == 0) return null;
+			byte[] m = msg.toByteArray();
+			msg.reset();
+			blank = false;
+			return m;
+		}
+	}
+
+	/**Byte array output that can give its bytes without copying them.
+	*/
+	private static class MessageBuffer extends ByteArrayOutputStream {
+
+		/**Creates an empty buffer.
+		 * @param capacity the initial capacity
+		*/
+		public MessageBuffer(int capacity) {
+			super(capacity);
+		}
+
+		/**Creates a buffer holding a message as it is.
+		 * @param msg the message
+		*/
+		public MessageBuffer(byte[] msg) {
+			super(0);
+			buf = msg;
+			count = msg.length;
+		}
+
+		/**Gets a byte.
+		 * @param i the index of the byte
+		 * @return the byte
+		*/
+		public byte byteAt(int i) {
+			return buf[i];
+		}
+
+		/**Writes the bytes to another buffer, escaping each line that 
+		 * starts with <code>From </code>.
+		 * @param out the other buffer
+		*/
+		public void writeEscaped(MessageBuffer out) {
+			int copied = 0;
+			for (int i = 0; i + FROM.length <= count; i++) {
+				if (buf[i] == 'F' && (i == 0 || buf[i - 1] == '\n') 
+					&& startsWith(buf, i, FROM)) {
+					out.write(buf, copied, i - copied);
+					out.write('>');
+					copied = i;
+				}
+			}
+			out.write(buf, copied, count - copied);
+		}
+	}
+
+	/**Gets the number of messages read.
+	 * @return the number of messages
+	*/
+	public long getMessages() { return messages.get(); }
+	/**Gets the number of messages whose bodies got cleaned.
+	 * @return the number of messages cleaned
+	*/
+	public long getCleaned() { return cleaned.get(); }
+	/**Gets the total size of the archive.
+	 * @return the number of bytes read
+	*/
+	public long getBytes() { return bytes.get(); }
+	/**Gets the total number of returns removed.
+	 * @return the number of returns removed from all the messages
+	*/
+	public long getReturnsRemoved() { return returnsRemoved.get(); }
+	/**Gets the number of messages that couldn't be cleaned.
+	 * @return the number of failures
+	*/
+	public long getFailures() { return failures.get(); }
+}
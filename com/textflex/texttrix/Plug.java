@@ -41,7 +41,9 @@ import java.io.*;
 import javax.swing.event.*;
 import java.awt.*;
 import java.awt.event.*;
+import java.beans.*;
 import java.util.*;
+import java.util.concurrent.*;
 
 /** Removes extra hard returns.
     For example, unformatted email arrives with hard returns inserted after 
@@ -57,11 +59,33 @@ import java.util.*;
 */
 public class Plug extends PlugInWindow { //implements PlugIn {
 
+	// the number of result messages to choose from
+	private static final int RESULT_COUNT = 4;
+	// most cleaned chars to keep from run to run
+	private static final long CACHE_CHARS = 1L << 24;
 	private ExtraReturnsRemoverDialog diag = null;
-	private String lists = "";
-	private int threshold = 0;
-	private boolean emailMarkers = false;
-	private boolean selectedRegion = false;
+	// the remover engine, replaced whenever the options change, so that
+	// runs already underway keep the options with which they started
+	private volatile ExtraReturnsRemover remover = 
+		new ExtraReturnsRemover(new RemoverOptions("", 0, false, false));
+	// cleaned paragraphs kept from earlier runs on the entire text
+	private RemoverCache cache = new RemoverCache(CACHE_CHARS);
+	// time after the last run on the entire text at which the cache 
+	// gets cleared, in milliseconds, since the host never says when
+	// the document closes
+	private static final int CACHE_IDLE = 5 * 60 * 1000;
+	// clears the cache once runs stop, only touched on the event 
+	// dispatch thread
+	private javax.swing.Timer cacheTimer = null;
+	// shortest text to clean in the background when run from the event
+	// dispatch thread
+	private static final int BACKGROUND_LENGTH = 1 << 16;
+	// run underway in the background, only touched on the event 
+	// dispatch thread
+	private SwingWorker<RemoverResult, Void> worker = null;
+	// icons, loaded when the host first shows them
+	private ImageIcon icon = null;
+	private ImageIcon rollIcon = null;
 
 	/** Constructs the extra returns remover with descriptive text and 
 	images.
@@ -79,7 +103,9 @@ public class Plug extends PlugInWindow { //implements PlugIn {
 		// Runs the plug-in if the user hits "Enter" in components with this adapter
 		KeyAdapter removerEnter = new KeyAdapter() {
 			public void keyPressed(KeyEvent evt) {
-				if (evt.getKeyCode() == KeyEvent.VK_ENTER) {
+				// the plug-in window stays live during background runs,
+				// but only one run goes at a time
+				if (evt.getKeyCode() == KeyEvent.VK_ENTER && worker == null) {
 					runPlugIn();
 				}
 			}
@@ -87,49 +113,76 @@ public class Plug extends PlugInWindow { //implements PlugIn {
 
 
 		// Runs the plug-in if the user hits the "Extra Returns Remover"
-		// button;
-		// creates a shortcut key (alt-E) as an alternative way to invoke
-		// the button
+		// button, or its shortcut key (alt-E)
 		Action extraReturnsRemoverAction = 
 			new AbstractAction("Extra Returns Remover", null) {
 			public void actionPerformed(ActionEvent e) {
+				if (worker != null) return;
 				applyUserOptions();
 				runPlugIn();
 			}
 		};
+		// the shortcut key works from the start, before the dialog 
+		// builds the button
 		LibTTx.setAcceleratedAction(
 			extraReturnsRemoverAction,
 			"Extra Returns Remover",
 			'E',
 			KeyStroke.getKeyStroke("alt E"));
 
-		// Creates the options dialog window
+		// Stops the run underway in the background
+		Action cancelAction = new AbstractAction("Cancel", null) {
+			private static final long serialVersionUID = 1L;
+
+			public void actionPerformed(ActionEvent e) {
+				if (worker != null) worker.cancel(false);
+			}
+		};
+
+		// Creates the options dialog window, which only builds its 
+		// components once it's first displayed
 		diag =
 			new ExtraReturnsRemoverDialog(
 				removerEnter,
-				extraReturnsRemoverAction);
+				extraReturnsRemoverAction,
+				cancelAction);
 		setWindow(diag);
 	}
 	
+	/**Records the options set in the dialogue window.
+	 * The list markers only get recompiled when the user changes them.
+	*/
 	public void applyUserOptions() {
-		lists = diag.getLists();
-		threshold = diag.getThreshold();
-		emailMarkers = diag.getEmailMarkers();
-		selectedRegion = diag.getSelectedRegion();
+		String lists = diag.getLists();
+		ListMarkers listMarkers = remover.getOptions().getListMarkers();
+		if (!lists.equals(listMarkers.getLists())) {
+			listMarkers = new ListMarkers(lists);
+		}
+		remover = 
+			new ExtraReturnsRemover(
+				new RemoverOptions(
+					listMarkers,
+					diag.getThreshold(),
+					diag.getEmailMarkers(),
+					diag.getSelectedRegion(),
+					diag.getFlowed(),
+					diag.getQuotedPrintable()));
 	}
 
-	/** Gets the normal icon.
+	/** Gets the normal icon, loading it the first time it's asked for.
 	@return normal icon
 	*/
 	public ImageIcon getIcon() {
-		return getIcon(getIconPath());
+		if (icon == null) icon = getIcon(getIconPath());
+		return icon;
 	}
 
-	/** Gets the rollover icon.
+	/** Gets the rollover icon, loading it the first time it's asked for.
 	@return rollover icon
 	*/
 	public ImageIcon getRollIcon() {
-		return getRollIcon(getRollIconPath());
+		if (rollIcon == null) rollIcon = getRollIcon(getRollIconPath());
+		return rollIcon;
 	}
 
 	/** Gets the detailed, HTML-formatted description.
@@ -144,10 +197,24 @@ public class Plug extends PlugInWindow { //implements PlugIn {
 		return run(s, 0, 0);
 	}
 	
+	/**Runs the extra return remover on text streamed from a reader,
+	 * following the options set in the dialogue window.
+	 * Works on the entire text, a chunk at a time, for files too large
+	 * to hold in memory.
+	 * @param in the reader
+	 * @param out the writer to which the cleaned text goes
+	 * @return the number of returns removed
+	 * @throws IOException if the reader or the writer fails
+	 * @see ExtraReturnsRemover#remove(Reader, Writer)
+	*/
+	public int run(Reader in, Writer out) throws IOException {
+		return remover.remove(in, out).getReturnsRemoved();
+	}
+	
 	/**Runs the extra return remover on the text, following the options
 	 * set in the dialogue window.
-	 * Assumes that these options have been recorded in the class
-	 * fields.
+	 * Assumes that these options have been recorded with 
+	 * {@link #applyUserOptions()}.
 	 * @param s the string to remove extraneous returns from
 	 * @param x the starting index of any selected region, taken as the 
 	 * starting position to work on, but ignored
@@ -158,339 +225,250 @@ public class Plug extends PlugInWindow { //implements PlugIn {
 	 * @return the text, clean, washed, and ready
 	*/
 	public PlugInOutcome run(String s, int x, int y) {
-		/* This function works by generally checking the characters afer
-		 * a hard return to determine whether to keep it or not.
-		 * To strip inline message reply characters, the function must also
-		 * check the beginning of the string separately.  Additionally, the
-		 * function completely excludes "<pre>"-tag-delimited areas from hard
-		 * return removal.
-		 */
-		
-		/* Indices */
-		int n = x; // string index
-		int end = y;//len;
-		// resets the indices to work on the entire text if the selectedegion
-		// option is unchecked
-		if (!selectedRegion) {
-			n = 0;
-			end = s.length();
-		}
-		
-		/* Flags, storage, and symbols */
-		StringBuffer stripped = new StringBuffer(end - n); // new string
-		String searchChars = " >"; // inline message reply chars
-		String inlineReplySigns = ">"; // inline message indicators
-		boolean isCurrentLineReply = false; // current line part of msg reply
-		boolean isNextLineReply = false; // next line part of message reply
-		boolean ignorePre = false; // ignore <pre>'s within inline replies
-		// inline reply symbols (eg "<" or ">") in next line, right after singleReturn
-		int inlineReply = 0;
-		// inline replies on next next line, important for double returns embedded
-		// in otherwise continuous reply symbols
-		int nextInlineReply = 0;
-		int singleReturn = s.indexOf("\n", n); // next hard return
-		boolean isDoubleReturn = false; // double hard return flag
-		boolean isList = false; // current line part of a list flag
-		int startPre = 0; // next opening pre tag
-		int endPre = 0; // next cloisng pre tag
-		int lineStart = LibTTx.reverseIndexOf(s, "\n", n - 1) + 1;
-		int returnsRemoved = 0;
-		
-		// List markers
-		
-		// breaks user's comma-separated list of list markers
-		StringTokenizer listTok = new StringTokenizer(lists, ",");
-		int listCount = listTok.countTokens();
-		// array of list markers
-		ListLookup[] listDelims = new ListLookup[listCount];
-		for (int i = 0; i < listCount; i++) {
-			listDelims[i] = new ListLookup(listTok.nextToken());
-		}
-		String outlineChars = "1234567890ivxlcdm";
-		String emailMarkerStart = "----Original Message----\n\n";
-		String emailMarkerEnd = "\n-----------------------";
-		if (!emailMarkers) {
-			emailMarkerStart = "";
-			emailMarkerEnd = "";
-		}
-		
-		/* Initiate the remover */
-		// Lines in the main loop are assumed to have already been stripped
-		// of any email reply symbols and flagged about whether the previous
-		// line had any of the symbols.  Prior to this loop, the first line must
-		// be checked and flagged for these symbols.
-		
-		// append text preceding the selection
-		stripped.append(s.substring(0, n));
-		// check for inline reply symbols at start of string
-		inlineReply = containingSeq(s, n, searchChars, inlineReplySigns);
-		if (s.indexOf("<pre>", n) != n && inlineReply != 0) {
-			isCurrentLineReply = true;
-			// mark reply region as "Original Message", but only if at start
-			// of message to prevent splitting reply region if text highlighted
-			// in middle of such a region
-			if (n == 0) stripped.append(emailMarkerStart);
-			n += inlineReply;
-		}
-		
-		/* Cycle through the lines from the first to the last */
-		// assuming that the first line has already been appropriately
-		// flagged
-		
-		while (n < end) {
-			inlineReply = 0;
-			nextInlineReply = 0;
-			singleReturn = s.indexOf("\n", n); // next hard return
-			isDoubleReturn = false;
-			isList = false;
-			startPre = s.indexOf("<pre>", n); // next opening pre tag
-			endPre = s.indexOf("</pre>", n); // next cloisng pre tag
-
-			// Check the character after a hard return
-			if (singleReturn != -1) {
-				int afterSingRet = singleReturn + 1;
-				// get the length of email reply chars after the return
-				inlineReply =
-					containingSeq(
-						s,
-						afterSingRet,
-						searchChars,
-						inlineReplySigns);
-				// if the reply chars continue after another hard return, 
-				// find the length of reply chars after it; necessary to 
-				// identify reply symbols surrounding a double return
-				if (s.length() > (afterSingRet += inlineReply)
-					&& s.charAt(afterSingRet) == '\n') {
-					isDoubleReturn = true;
-					nextInlineReply =
-						containingSeq(
-							s,
-							afterSingRet + 1,
-							searchChars,
-							inlineReplySigns);
-				}
-				
-				// Check whether the character after a return is a 
-				// tab, dash, asterisk, outline symbol (eg "a)" or "ii."), or
-				// other user-defined list marker
-				
-				// char right after inline reply marker
-				int afterInlineReply = singleReturn + inlineReply + 1;
-				if (afterInlineReply < s.length()) {
-					int listEndPos = -1;
-					String marker = ""; // the list marker to check
-					// the list symbol that gets incremented, eg the "a" in "a)"
-					String outlineIncrementor = "";
-					
-					// cycles through the user-defined list markers to see if
-					// the start of the line matches any of them;
-					// stops as soon as finds a match
-					for (int i = 0; !isList && i < listDelims.length; i++) {
-						marker = listDelims[i].getMarker();
-						// only checks the first char of the line if the marker isn't
-						// an outline character
-						if (!listDelims[i].getOutline()) {
-							isList = s.startsWith(marker, afterInlineReply);
-							
-						} else if ((listEndPos = s.indexOf(marker, afterInlineReply)) > 0) {
-							// for outline markers, checks whether each of the 
-							// chars preceding the outline closer, eg ")" or ".",
-							// matches one of typical outline symbols
-							isList = true;
-							outlineIncrementor = s.substring(afterInlineReply, listEndPos);
-							
-							// first checks if in string of typical symbols
-							for (int j = 0; isList && j < outlineIncrementor.length(); j++) {
-								isList = 
-									outlineChars.indexOf(outlineIncrementor.substring(j, j + 1)
-										.toLowerCase())
-									!= -1;
-							}
-							
-							// if not, checks if a single letter or multiple of the same letter
-							if (!isList) {
-								isList = true;
-								String firstChar = outlineIncrementor.substring(0, 1)
-									.toLowerCase();
-								for (int j = 1; isList && j < outlineIncrementor.length(); j++) {
-									isList = 
-										outlineIncrementor.substring(j, j + 1).toLowerCase()
-											.equals(firstChar);
-								}
-							}
-						}
-					}
-				}
+		ExtraReturnsRemover remover = this.remover;
+		RemoverResult result = null;
+		if (SwingUtilities.isEventDispatchThread()
+			&& s.length() >= BACKGROUND_LENGTH) {
+			result = cleanInBackground(remover, s, x, y);
+			if (result == null) {
+				// leaves the text as it was
+				diag.setResultsLbl("Canceled");
+				return new PlugInOutcome(s);
 			}
-			isNextLineReply = inlineReply != 0 || nextInlineReply != 0;//
-
-			/* Append the chars to keep while removing single returns
-			 * and their inline msg reply chars appropriately.
-			 */
-			if (startPre == n && !ignorePre) {
-				// Skip <pre>-delimited sections, removing only the <pre> tags
-				// The <pre> tags should each be at the start of its own line.
-				// go to the end of the "pre" section
-				if (endPre != -1) {
-					stripped.append(s.substring(n + 6, endPre));
-					n = endPre + 7;
-					// if user forgets closing "pre" tag, goes to end
-				} else if (n + 6 < end) {
-					stripped.append(s.substring(n + 6, end));
-					n = end;
-				} else {
-					n = end;
-				}
-				
-			} else if (singleReturn == -1) {
-				// Add the rest of the text if no more single returns exist.
-				// Also catches null strings and skips final "--------" for inline 
-				// replies w/ no later singleReturn
-				//System.out.println("n: " + n + ", end: " + end + ", char b4 end: " + s.charAt(end - 1));
-				stripped.append(s.substring(n, end));
-				/* to add final dashed line after reply, even when no final
-				 * return, uncomment these lines
-				 if (isCurrentReply)
-					stripped.append(emailMarkerEnd);
-				*/
-				n = end;
-				
-			} else if (singleReturn - lineStart < threshold) {
-				// Preserves lines that have below the threshold level of characters.
-				// Eg if a line has 4 characters, including reply markers, with the 
-				// threshold set to 5, the line will stay the same.  If the line has reply
-				// markers, however, they will be removed, under the assumption that
-				// wants to preserve the formatting while still deleting extraneous chars.
-				//System.out.println("s: " + s.substring(n, singleReturn + 1) + ", singleReturn: " + singleReturn + ", lineStart: " + lineStart);
-				
-				stripped.append(s.substring(n, singleReturn + 1));
-				n = singleReturn + inlineReply + 1;
-				
-			} else if (!isCurrentLineReply && isNextLineReply) {
-				// Check for marks that at the start of an inline message reply
-				stripped.append(
-					s.substring(n, singleReturn)
-						+ "\n\n" + emailMarkerStart);
-				// Skip the 2nd return in double returns, including any surrounding
-				// email reply symbols
-				n =
-					(isDoubleReturn)
-						? (singleReturn + inlineReply + 2 + nextInlineReply)
-						: (singleReturn + inlineReply + 1);
-						
-			} else if (isCurrentLineReply && !isNextLineReply) {
-				// Check for marks that at the end of an inline message reply
-				stripped.append(
-					s.substring(n, singleReturn)
-						+ emailMarkerEnd + "\n\n");
-				// Skip the 2nd return in double returns, including any surrounding
-				// email reply symbols
-				n =
-					(isDoubleReturn)
-						? (singleReturn + inlineReply + 2 + nextInlineReply)
-						: (singleReturn + inlineReply + 1);
-						
-			} else if (isDoubleReturn) {
-				// Preserve double returns
-				stripped.append(s.substring(n, singleReturn) + "\n\n");
-				// skip over processed rets
-				n = singleReturn + inlineReply + 2 + nextInlineReply;
-				
-			} else if (isList) {
-				// Preserve separate lines for lines starting w/
-				// list markers
-				stripped.append(s.substring(n, singleReturn + 1));
-				n = singleReturn + inlineReply + 1;
-				
-			} else {
-				// Join the tail-end of the text.
-				// don't add space if single return is at beginning of line
-				// or a space exists right before the single return.
-				if (singleReturn == n || s.charAt(singleReturn - 1) == ' ') {
-					stripped.append(s.substring(n, singleReturn));
-					// add space if none exists right before the single return
-				} else {
-					stripped.append(s.substring(n, singleReturn) + " ");
-				}
-				returnsRemoved++;
-				n = singleReturn + inlineReply + 1;
-			}
-			// flag whether the current line is part of a msg reply
-			isCurrentLineReply = isNextLineReply;
-			// marks the start of the next line, including any reply symbols;
-			// checks for double return b/c, if so, the next line is skipped;
-			// lineStart then has to refer to the next next line
-			lineStart = (isDoubleReturn) ? singleReturn + 2 : singleReturn + 1;
-			// flag to ignore <pre> tags if in inline message reply
-			ignorePre = inlineReply != 0 || nextInlineReply != 0;//) ? true : false;
+		} else {
+			result = clean(remover, s, x, y, null);
 		}
+		int returnsRemoved = result.getStats().getReturnsRemoved();
 		
 		// Create the new string and display the results, both in the TextPad
 		// and summarized in the plug-in window
-		String strippedStr = stripped.toString() + s.substring(n); // the final product
+		String strippedStr = result.getText(); // the final product
 		/*
 		int fewerChars = s.length() - strippedStr.length(); // change in length
 		// explanation of smaller, possibly negative changes in length
 		String emailMarkerExp = (emailMarkers) 
 			? " (minus a bunch of mail markers)" : "";
 		*/
-		// the result templates...
-		String[] results = {
-			"Unloaded " + returnsRemoved + " useless hard returns",
-			"Welcome to text lite!  " + returnsRemoved
-				+ " hard returns removed",
-			returnsRemoved + " extraneous hard returns...gone",
-			"Nice and slick with " + returnsRemoved
-				+ " fewer hard returns"
-		};
-		// ...chosen randomly
-		displayResults(results, 4);
-		//	System.out.println(stripped.toString() + s.substring(n));
+		// a result message chosen randomly
+		displayResults(returnsRemoved, 4);
 		return new PlugInOutcome(strippedStr);
 	}
 	
-	/**Storage class for list markers.
-	 * Contains the marker as well as a flag for whether the marker
-	 * is associated with an outline symbol, where "[outline]" flags
-	 * such symbols.  For example, "-" or "*" are not outline
-	 * symbols, whereas "IV" or "ix" or "a" could serve as these
-	 * symbols.  If the user submits the marker, "[outline])", ")' is
-	 * considered the marker, while "[outline]" flags the outline
-	 * field.
+	/**Gets the cache of cleaned paragraphs kept from earlier runs on
+	 * the entire text.
+	 * @return the cache, whose hit and miss counts show how much of
+	 * each text got cleaned anew
 	*/
-	private class ListLookup {
-		private String marker = ""; // list marker
-		private boolean outline = false; // flags outline marker
-		// user generic symbol for outline incrementors, eg 
-		// "IV","A", or "3"
-		private String outlineStr = "[outline]";
-		// length of the generic outline symbol
-		private int outlineStrLen = outlineStr.length();
-		
-		/**Creates a marker storage object.
-		 * Checks for outline symbols.
-		 * @param aMarker the marker to store; pared down
-		 * to the symbols following the generic "[outline]"
-		 * designation if appropriate
-		*/
-		public ListLookup(String aMarker) {
-			marker = aMarker;
-			// pares down and flags outline markers
-			if (aMarker.toLowerCase().startsWith(outlineStr)) {
-				outline = true;
-				marker = aMarker.substring(outlineStrLen);
+	public RemoverCache getCache() { return cache; }
+
+	/**Gets the options dialog window's panel.
+	 * @return the panel, which builds its components the first time 
+	 * it gets displayed or sized
+	*/
+	JComponent getOptionsPanel() { return diag; }
+
+	/**Cleans the text with the given remover.
+	 * @param remover the remover, whose options were fixed when the run
+	 * started
+	 * @param s the string to remove extraneous returns from
+	 * @param x the starting index of any selected region
+	 * @param y the final index of any selected region, noninclusive
+	 * @param monitor the monitor to report progress to, which can stop
+	 * the run; <code>null</code> for none
+	 * @return the text, clean, washed, and ready
+	 * @throws CancellationException if the monitor stops the run
+	*/
+	private RemoverResult clean(
+		ExtraReturnsRemover remover,
+		String s,
+		int x,
+		int y,
+		RemoverMonitor monitor) {
+		if (remover.getOptions().getSelectedRegion()) {
+			return (monitor == null) 
+				? remover.remove(s, x, y) 
+				: remover.remove(s, x, y, monitor);
+		}
+		// texts cleaned as a whole tend to get cleaned again after small
+		// changes, so only the changed paragraphs get cleaned anew, while
+		// the first run on a large text cleans it in parallel
+		RemoverResult result = remover.removeIncremental(s, cache, monitor);
+		clearCacheLater();
+		return result;
+	}
+
+	/**Clears the cache once no run has used it for a while, so that 
+	 * the text of a document that has since closed isn't held for as
+	 * long as the plug-in lives.  Each run puts off the clearing.
+	*/
+	private void clearCacheLater() {
+		if (!SwingUtilities.isEventDispatchThread()) {
+			SwingUtilities.invokeLater(new Runnable() {
+				public void run() {
+					clearCacheLater();
+				}
+			});
+			return;
+		}
+		if (cacheTimer == null) {
+			cacheTimer = new javax.swing.Timer(CACHE_IDLE, new ActionListener() {
+				public void actionPerformed(ActionEvent e) {
+					cache.clear();
+				}
+			});
+			cacheTimer.setRepeats(false);
+		}
+		cacheTimer.restart();
+	}
+
+	/**Cleans the text on a background thread, showing the run's 
+	 * progress in the plug-in window and letting the user cancel it.
+	 * Must be called from the event dispatch thread, which keeps 
+	 * handling events, such as repaints and clicks on the cancel 
+	 * button, until the run finishes.  Every window but the plug-in's
+	 * own gets disabled in the meantime, as a modal dialog would do,
+	 * so that the user can't edit the text while the result that will
+	 * replace it is being worked out.
+	 * @param remover the remover, whose options were fixed when the run
+	 * started
+	 * @param s the string to remove extraneous returns from
+	 * @param x the starting index of any selected region
+	 * @param y the final index of any selected region, noninclusive
+	 * @return the text, clean, washed, and ready, or <code>null</code>
+	 * if the user canceled the run
+	*/
+	private RemoverResult cleanInBackground(
+		final ExtraReturnsRemover remover,
+		final String s,
+		final int x,
+		final int y) {
+		final SecondaryLoop loop = 
+			Toolkit.getDefaultToolkit().getSystemEventQueue()
+				.createSecondaryLoop();
+		worker = new SwingWorker<RemoverResult, Void>() {
+			protected RemoverResult doInBackground() {
+				RemoverMonitor monitor = new RemoverMonitor() {
+					public void progress(long done, long total) {
+						setProgress((int) (100 * done / Math.max(total, 1)));
+					}
+					public boolean isCanceled() {
+						return isCancelled();
+					}
+				};
+				return clean(remover, s, x, y, monitor);
+			}
+
+			protected void done() {
+				loop.exit();
 			}
+		};
+		// progress changes arrive on the event dispatch thread
+		worker.addPropertyChangeListener(new PropertyChangeListener() {
+			public void propertyChange(PropertyChangeEvent evt) {
+				if ("progress".equals(evt.getPropertyName())) {
+					diag.setProgress(((Integer) evt.getNewValue()).intValue());
+				}
+			}
+		});
+		diag.startProgress();
+		java.util.List<Window> blocked = blockInput();
+		worker.execute();
+		try {
+			loop.enter();
+			return (worker.isCancelled()) ? null : worker.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+			if (cause instanceof Error) throw (Error) cause;
+			throw new RuntimeException(cause);
+		} finally {
+			unblockInput(blocked);
+			worker = null;
+			diag.stopProgress();
 		}
-		
-		/**Gets the marker.
-		 * @return the marker
-		*/
-		public String getMarker() { return marker; }
-		/**Gets the outline flag.
-		 * @return outline flag, <code>true</code> if the originally set
-		 * marker started with "[outline]"
-		*/
-		public boolean getOutline() { return outline; }
+	}
+
+	/**Disables every showing window but the one that holds the plug-in
+	 * window, so that neither keys nor clicks reach the text.
+	 * @return the windows disabled, to enable again with 
+	 * {@link #unblockInput(java.util.List)}
+	*/
+	private java.util.List<Window> blockInput() {
+		Window own = SwingUtilities.getWindowAncestor(diag);
+		java.util.List<Window> blocked = new ArrayList<Window>();
+		Window[] windows = Window.getWindows();
+		for (int i = 0; i < windows.length; i++) {
+			Window window = windows[i];
+			if (window != own && window.isShowing() && window.isEnabled()) {
+				window.setEnabled(false);
+				blocked.add(window);
+			}
+		}
+		return blocked;
+	}
+
+	/**Enables windows disabled for a run in the background.
+	 * @param blocked the windows that {@link #blockInput()} disabled
+	*/
+	private void unblockInput(java.util.List<Window> blocked) {
+		for (int i = 0; i < blocked.size(); i++) {
+			blocked.get(i).setEnabled(true);
+		}
+	}
+
+	/**Runs the extra return remover on a selected region of the text,
+	 * giving only the cleaned region, so that the work depends on the
+	 * size of the selection rather than that of the whole text.
+	 * @param s the string to remove extraneous returns from
+	 * @param x the starting index of the selected region
+	 * @param y the final index of the selected region, noninclusive
+	 * @return the cleaned region, along with the range of the text 
+	 * that it replaces
+	 * @see ExtraReturnsRemover#removeRegion(String, int, int)
+	*/
+	public RemoverResult runRegion(String s, int x, int y) {
+		RemoverResult result = remover.removeRegion(s, x, y);
+		displayResults(result.getStats().getReturnsRemoved(), 4);
+		return result;
+	}
+
+	/**Runs the extra return remover on the text, giving only the 
+	 * changes to make, so that large texts can be edited in place.
+	 * Otherwise works like {@link #run(String, int, int)}.
+	 * @param s the string to remove extraneous returns from
+	 * @param x the starting index of any selected region, ignored
+	 * if the "selectedArea" option is unchecked
+	 * @param y the final index of any selected region, noninclusive,
+	 * ignored if the "selectedArea" option is unchecked
+	 * @return the edits that clean the text
+	 * @see ExtraReturnsRemover#removeAsEdits(String, int, int)
+	*/
+	public RemoverEdits runEdits(String s, int x, int y) {
+		RemoverEdits edits = remover.removeAsEdits(s, x, y);
+		displayResults(edits.getStats().getReturnsRemoved(), 4);
+		return edits;
+	}
+
+	/**Runs the extra return remover on the text, giving the cleaned 
+	 * text as pieces that point into the original, so that huge texts
+	 * needn't be copied whole.
+	 * Otherwise works like {@link #run(String, int, int)}.
+	 * @param s the string to remove extraneous returns from
+	 * @param x the starting index of any selected region, ignored
+	 * if the "selectedArea" option is unchecked
+	 * @param y the final index of any selected region, noninclusive,
+	 * ignored if the "selectedArea" option is unchecked
+	 * @return the cleaned text, which only gets flattened into a string
+	 * if asked for one
+	 * @see ExtraReturnsRemover#removeAsPieces(String, int, int)
+	*/
+	public RemoverPieces runPieces(String s, int x, int y) {
+		RemoverPieces pieces = remover.removeAsPieces(s, x, y);
+		displayResults(pieces.getStats().getReturnsRemoved(), 4);
+		return pieces;
 	}
 
 	/** Finds the first continuous string consisting of any of a given
@@ -521,9 +499,47 @@ public class Plug extends PlugInWindow { //implements PlugIn {
 		return (inSeq) ? i - start : 0;
 	}
 
-	private void displayResults(String[] results, int weightFront) {
-		int n = (int) (results.length * Math.pow(Math.random(), weightFront));
-		diag.setResultsLbl(results[n]);
+	/**Builds one of the result messages.
+	 * @param n the message's place in the list, from 0 to 
+	 * {@link #RESULT_COUNT} - 1
+	 * @param returnsRemoved the number of returns removed
+	 * @return the message
+	*/
+	private static String resultMessage(int n, int returnsRemoved) {
+		switch (n) {
+			case 0:
+				return "Unloaded " + returnsRemoved + " useless hard returns";
+			case 1:
+				return "Welcome to text lite!  " + returnsRemoved
+					+ " hard returns removed";
+			case 2:
+				return returnsRemoved + " extraneous hard returns...gone";
+			default:
+				return "Nice and slick with " + returnsRemoved
+					+ " fewer hard returns";
+		}
+	}
+
+	/**Displays one of the result messages in the plug-in window.
+	 * Messages toward the front of the list get chosen more often, 
+	 * and only the chosen message gets built.
+	 * The remover may run off the event dispatch thread, so the 
+	 * message gets handed over to that thread for display.
+	 * @param returnsRemoved the number of returns removed
+	 * @param weightFront the weighting toward the front of the list
+	*/
+	private void displayResults(int returnsRemoved, int weightFront) {
+		int n = (int) (RESULT_COUNT * Math.pow(Math.random(), weightFront));
+		final String result = resultMessage(n, returnsRemoved);
+		if (SwingUtilities.isEventDispatchThread()) {
+			diag.setResultsLbl(result);
+		} else {
+			SwingUtilities.invokeLater(new Runnable() {
+				public void run() {
+					diag.setResultsLbl(result);
+				}
+			});
+		}
 	}
 	
 }
@@ -533,6 +549,15 @@ public class Plug extends PlugInWindow { //implements PlugIn {
     expressions as well as options to tailor the search.
 */
 class ExtraReturnsRemoverDialog extends JPanel {//JFrame {
+	/** List markers that the dialog starts with. */
+	static final String DEFAULT_LISTS = "-,[outline].,[outline]),*";
+	
+	// listeners and actions for the components, held until they're built
+	private KeyAdapter removerEnter = null;
+	private Action extraReturnsRemoverAction = null;
+	private Action cancelAction = null;
+	private boolean built = false; // flags that the components exist
+	
 	JLabel tips = null; // offers tips on using the plug-in 
 	JLabel listsLbl = null; // label for the search field
 	JTextField listsFld = null; // search expression input
@@ -541,19 +566,58 @@ class ExtraReturnsRemoverDialog extends JPanel {//JFrame {
 	JSpinner thresholdSpinner = null; // replacement expression input
 	JCheckBox emailMarkersChk = null; // reply boundaries
 	JCheckBox selectedRegionChk = null; // only work on selected region
+	JCheckBox flowedChk = null; // join format=flowed lines
+	JCheckBox quotedPrintableChk = null; // remove soft line breaks
 	JLabel resultsTitleLbl = null; // intros the results
 	JLabel resultsLbl = null; // shows the results
+	JProgressBar progressBar = null; // shows the progress of long runs
+	JButton cancelBtn = null; // stops long runs
 	JButton removerBtn = null; // label for the search button
 
-	/**Construct a find/replace dialog box
-	 * @param owner frame to which the dialog box will be attached; 
-	 * can be null
+	/**Construct a find/replace dialog box.
+	 * None of the components get built until the dialog is first 
+	 * displayed, so that editors loading many plug-ins, or hosts that
+	 * never show the dialog at all, don't pay for them; until then, 
+	 * the options read as their starting values.
+	 * @param aRemoverEnter listener that runs the remover when the user
+	 * hits "Enter"
+	 * @param aExtraReturnsRemoverAction action that runs the remover
+	 * @param aCancelAction action that stops a run in the background
 	 */
 	public ExtraReturnsRemoverDialog(
-		KeyAdapter removerEnter,
-		Action extraReturnsRemoverAction) {
+		KeyAdapter aRemoverEnter,
+		Action aExtraReturnsRemoverAction,
+		Action aCancelAction) {
 		super(new GridBagLayout());
 		setSize(350, 200);
+		removerEnter = aRemoverEnter;
+		extraReturnsRemoverAction = aExtraReturnsRemoverAction;
+		cancelAction = aCancelAction;
+	}
+	
+	/**Builds the dialog's components as the dialog becomes displayable,
+	 * such as when the window holding it first gets packed or shown.
+	*/
+	public void addNotify() {
+		build();
+		super.addNotify();
+	}
+	
+	/**Gets the dialog's preferred size, building its components first
+	 * in case the host lays out the dialog before displaying it.
+	 * @return the preferred size
+	*/
+	public Dimension getPreferredSize() {
+		build();
+		return super.getPreferredSize();
+	}
+	
+	/**Builds the dialog's components, unless they've already been 
+	 * built.
+	*/
+	private void build() {
+		if (built) return;
+		built = true;
 		GridBagConstraints constraints = new GridBagConstraints();
 		constraints.fill = GridBagConstraints.HORIZONTAL;
 		constraints.anchor = GridBagConstraints.CENTER;
@@ -598,7 +662,7 @@ class ExtraReturnsRemoverDialog extends JPanel {//JFrame {
 			100,
 			0,
 			this);
-		listsFld = new JTextField("-,[outline].,[outline]),*", 20);
+		listsFld = new JTextField(DEFAULT_LISTS, 20);
 		LibTTx.addGridBagComponent(
 			listsFld,
 			constraints,
@@ -666,13 +730,46 @@ class ExtraReturnsRemoverDialog extends JPanel {//JFrame {
 		msg = "Removes extra returns only within the highlighted section";
 		selectedRegionChk.setToolTipText(msg);
 		
+		// Options for text pasted from raw email bodies
+		flowedChk = new JCheckBox("Join format=flowed lines");
+		LibTTx.addGridBagComponent(
+			flowedChk,
+			constraints,
+			0,
+			5,
+			2,
+			1,
+			100,
+			0,
+			this);//contentPane);
+		flowedChk.setMnemonic(KeyEvent.VK_F);
+		msg = "<html>Always joins lines that end with a space to the next line"
+			+ "<br>at the same reply depth, as in format=flowed email</html>";
+		flowedChk.setToolTipText(msg);
+		
+		quotedPrintableChk = new JCheckBox("Remove quoted-printable soft breaks");
+		LibTTx.addGridBagComponent(
+			quotedPrintableChk,
+			constraints,
+			0,
+			6,
+			2,
+			1,
+			100,
+			0,
+			this);//contentPane);
+		quotedPrintableChk.setMnemonic(KeyEvent.VK_Q);
+		msg = "<html>Joins lines that end with \"=\" to the next line without"
+			+ "<br>a space, as in quoted-printable email</html>";
+		quotedPrintableChk.setToolTipText(msg);
+		
 		// Displays the results of the removal
 		resultsTitleLbl = new JLabel("Results: ");
 		LibTTx.addGridBagComponent(
 			resultsTitleLbl,
 			constraints,
 			0,
-			5,
+			7,
 			1,
 			1,
 			100,
@@ -684,7 +781,33 @@ class ExtraReturnsRemoverDialog extends JPanel {//JFrame {
 			resultsLbl,
 			constraints,
 			1,
-			5,
+			7,
+			1,
+			1,
+			100,
+			0,
+			this);//contentPane);
+
+		// Shows the progress of runs in the background
+		progressBar = new JProgressBar(0, 100);
+		progressBar.setEnabled(false);
+		LibTTx.addGridBagComponent(
+			progressBar,
+			constraints,
+			0,
+			8,
+			1,
+			1,
+			100,
+			0,
+			this);//contentPane);
+		cancelBtn = new JButton(cancelAction);
+		cancelBtn.setEnabled(false);
+		LibTTx.addGridBagComponent(
+			cancelBtn,
+			constraints,
+			1,
+			8,
 			1,
 			1,
 			100,
@@ -697,7 +820,7 @@ class ExtraReturnsRemoverDialog extends JPanel {//JFrame {
 			removerBtn,
 			constraints,
 			0,
-			6,
+			9,
 			2,
 			1,
 			100,
@@ -708,22 +831,60 @@ class ExtraReturnsRemoverDialog extends JPanel {//JFrame {
 	/**Gets the lists.
 	 * @return the list of list markers
 	*/
-	public String getLists() { return listsFld.getText(); }
+	public String getLists() { return built ? listsFld.getText() : DEFAULT_LISTS; }
 	/**Gets the threshold.
 	 * @return the minimum line length to remove returns from
 	*/
-	public int getThreshold() { return thresholdMdl.getNumber().intValue(); }
+	public int getThreshold() {
+		return built ? thresholdMdl.getNumber().intValue() : 0;
+	}
 	/**Gets the email markers flag.
 	 * @return the flag to add reply email boundary markers
 	*/
-	public boolean getEmailMarkers() { return emailMarkersChk.isSelected(); }
+	public boolean getEmailMarkers() { return built && emailMarkersChk.isSelected(); }
 	/**Gets the selected region flag.
 	 * @return flag to only work on the selected region
 	*/
-	public boolean getSelectedRegion() { return selectedRegionChk.isSelected(); }
+	public boolean getSelectedRegion() { return built && selectedRegionChk.isSelected(); }
+	/**Gets the format=flowed flag.
+	 * @return flag to join lines that end with a space
+	*/
+	public boolean getFlowed() { return built && flowedChk.isSelected(); }
+	/**Gets the quoted-printable flag.
+	 * @return flag to remove soft line breaks
+	*/
+	public boolean getQuotedPrintable() { return built && quotedPrintableChk.isSelected(); }
 	
 	public void setResultsLbl(String s) {
-		resultsLbl.setText(s);
+		if (built) resultsLbl.setText(s);
+	}
+
+	/**Readies the window for a run in the background.
+	*/
+	public void startProgress() {
+		if (!built) return;
+		progressBar.setValue(0);
+		progressBar.setEnabled(true);
+		cancelBtn.setEnabled(true);
+		removerBtn.setEnabled(false);
+		resultsLbl.setText("Working...");
+	}
+
+	/**Shows the progress of a run in the background.
+	 * @param percent the percentage of the text worked through so far
+	*/
+	public void setProgress(int percent) {
+		if (built) progressBar.setValue(percent);
+	}
+
+	/**Returns the window to rest after a run in the background.
+	*/
+	public void stopProgress() {
+		if (!built) return;
+		progressBar.setValue(0);
+		progressBar.setEnabled(false);
+		cancelBtn.setEnabled(false);
+		removerBtn.setEnabled(true);
 	}
 
 }
\ No newline at end of file
@@ -0,0 +1,95 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is the Text Trix code.
+ *
+ * The Initial Developer of the Original Code is
+ * Text Flex.
+ * Portions created by the Initial Developer are Copyright (C) 2003-4
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s): David Young <dvd@textflex.com>
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+
+
+package com.textflex.texttrix;
+
+/**Result of a batch run of the extra returns remover.
+ * Holds the cleaned text of each document in the batch, in the order
+ * in which the documents came, along with the statistics totaled 
+ * across the batch.
+*/
+public class RemoverBatch {
+	private String[] texts = null;
+	private RemoverStats stats = null;
+	private long charsIn = 0; // total length of the documents
+	private long charsOut = 0; // total length of the cleaned documents
+
+	/**Creates a result.
+	 * @param aTexts the cleaned text of each document
+	 * @param aStats the statistics totaled across the batch
+	 * @param aCharsIn the total length of the documents
+	 * @param aCharsOut the total length of the cleaned documents
+	*/
+	public RemoverBatch(
+		String[] aTexts,
+		RemoverStats aStats,
+		long aCharsIn,
+		long aCharsOut) {
+		texts = aTexts;
+		stats = aStats;
+		charsIn = aCharsIn;
+		charsOut = aCharsOut;
+	}
+
+	/**Gets the number of documents.
+	 * @return the number of documents in the batch
+	*/
+	public int size() { return texts.length; }
+	/**Gets the cleaned text of a document.
+	 * @param i the index of the document in the batch
+	 * @return the text, clean, washed, and ready
+	*/
+	public String getText(int i) { return texts[i]; }
+	/**Gets the cleaned text of all the documents.
+	 * @return the texts, in the order of the documents; the array 
+	 * belongs to the result
+	*/
+	public String[] getTexts() { return texts; }
+	/**Gets the statistics.
+	 * @return the statistics totaled across the batch
+	*/
+	public RemoverStats getStats() { return stats; }
+	/**Gets the total length of the documents.
+	 * @return the number of chars cleaned
+	*/
+	public long getCharsIn() { return charsIn; }
+	/**Gets the total length of the cleaned documents.
+	 * @return the number of chars output
+	*/
+	public long getCharsOut() { return charsOut; }
+}
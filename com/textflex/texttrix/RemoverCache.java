@@ -0,0 +1,367 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is the Text Trix code.
+ *
+ * The Initial Developer of the Original Code is
+ * Text Flex.
+ * Portions created by the Initial Developer are Copyright (C) 2003-4
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s): David Young <dvd@textflex.com>
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+
+package com.textflex.texttrix;
+
+import java.util.*;
+
+/**Cache of cleaned paragraphs for incremental runs of the extra 
+ * returns remover.
+ * Each block of paragraphs is looked up by a fingerprint of its text 
+ * along with the options used to clean it, and the block's text is 
+ * kept so that a hit is only taken once the text matches char for 
+ * char.  Texts that get cleaned again and again with only small 
+ * changes need only have their changed blocks cleaned anew.
+ * The cache also remembers the last run on an entire text, so that
+ * the next run can find what changed since then and work only on the
+ * blocks around the change.
+ * The least recently used blocks get dropped once the text held, both
+ * original and cleaned, reaches the cache's limit.
+ * Any number of threads can share a cache.
+*/
+public class RemoverCache {
+	// 64-bit FNV-1a hash constants
+	private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	private LinkedHashMap<Block, Entry> blocks = 
+		new LinkedHashMap<Block, Entry>(16, 0.75f, true);
+	private long maxChars = 0; // most chars to hold
+	private long chars = 0; // chars held, both original and cleaned
+	private Run run = null; // the last run on an entire text
+	private long hits = 0;
+	private long misses = 0;
+
+	/**Creates a cache.
+	 * @param aMaxChars the most cleaned chars to hold at a time
+	*/
+	public RemoverCache(long aMaxChars) {
+		maxChars = aMaxChars;
+	}
+
+	/**Gets the number of times that a cleaned block was found.
+	 * @return the number of hits
+	*/
+	public synchronized long getHits() { return hits; }
+	/**Gets the number of times that a block had to be cleaned anew.
+	 * @return the number of misses
+	*/
+	public synchronized long getMisses() { return misses; }
+	/**Gets the number of cleaned blocks held.
+	 * @return the number of blocks
+	*/
+	public synchronized int getSize() { return blocks.size(); }
+	/**Gets the amount of text held.
+	 * @return the number of chars held, both original and cleaned
+	*/
+	public synchronized long getChars() { return chars; }
+
+	/**Drops all the cleaned blocks, along with the last run, keeping 
+	 * the hit and miss counts.
+	*/
+	public synchronized void clear() {
+		blocks.clear();
+		run = null;
+		chars = 0;
+	}
+
+	/**Creates the key for a block of text.
+	 * @param options the options with which the block gets cleaned
+	 * @param s the text
+	 * @param from the index of the block's start
+	 * @param to the index of the block's end, noninclusive
+	 * @return the key
+	*/
+	static Block block(RemoverOptions options, String s, int from, int to) {
+		// hashes every fourth char together, so that the four hashes 
+		// can be worked out side by side
+		long hash0 = FNV_OFFSET;
+		long hash1 = FNV_OFFSET;
+		long hash2 = FNV_OFFSET;
+		long hash3 = FNV_OFFSET;
+		int i = from;
+		for (; i + 4 <= to; i += 4) {
+			hash0 = (hash0 ^ s.charAt(i)) * FNV_PRIME;
+			hash1 = (hash1 ^ s.charAt(i + 1)) * FNV_PRIME;
+			hash2 = (hash2 ^ s.charAt(i + 2)) * FNV_PRIME;
+			hash3 = (hash3 ^ s.charAt(i + 3)) * FNV_PRIME;
+		}
+		for (; i < to; i++) {
+			hash0 = (hash0 ^ s.charAt(i)) * FNV_PRIME;
+		}
+		long hash = (hash0 ^ Long.rotateLeft(hash1, 16)) * FNV_PRIME;
+		hash = (hash ^ Long.rotateLeft(hash2, 32)) * FNV_PRIME;
+		hash = (hash ^ Long.rotateLeft(hash3, 48)) * FNV_PRIME;
+		return new Block(options, hash, s, from, to - from);
+	}
+
+	/**Gets a cleaned block, counting the hit or miss.
+	 * @param block the block's key
+	 * @return the cleaned block, or <code>null</code> if it isn't held
+	*/
+	synchronized Entry get(Block block) {
+		Entry entry = blocks.get(block);
+		if (entry == null) {
+			misses++;
+		} else {
+			hits++;
+		}
+		return entry;
+	}
+
+	/**Holds a cleaned block, dropping the least recently used blocks
+	 * to make room for it.
+	 * Blocks too large for the cache aren't held at all.
+	 * @param block the block's key
+	 * @param text the cleaned block
+	 * @param stats the statistics from cleaning the block
+	*/
+	synchronized void put(Block block, String text, RemoverStats stats) {
+		if (block.getLength() + text.length() > maxChars) return;
+		// keeps only the block's own text rather than the whole text 
+		// around it
+		block = block.detach();
+		Entry old = blocks.put(block, new Entry(text, stats));
+		if (old != null) chars -= block.getLength() + old.getText().length();
+		chars += block.getLength() + text.length();
+		trim();
+	}
+
+	/**Counts blocks that a run took from the last run without looking
+	 * them up, as hits.
+	 * @param count the number of blocks
+	*/
+	synchronized void reused(int count) {
+		hits += count;
+	}
+
+	/**Gets the last run on an entire text.
+	 * @param options the options for the next run
+	 * @return the last run, or <code>null</code> if there is none or 
+	 * it was made with other options
+	*/
+	synchronized Run getRun(RemoverOptions options) {
+		return (run != null && run.getOptions().equals(options)) ? run : null;
+	}
+
+	/**Remembers a run on an entire text in place of the last one, 
+	 * dropping the least recently used blocks to make room for it.
+	 * Runs too large for the cache aren't remembered at all.
+	 * @param aRun the run
+	*/
+	synchronized void setRun(Run aRun) {
+		if (run != null) chars -= run.getChars();
+		run = null;
+		if (aRun.getChars() > maxChars) return;
+		run = aRun;
+		chars += run.getChars();
+		trim();
+	}
+
+	/**Drops the least recently used blocks until the text held fits 
+	 * within the cache's limit.
+	*/
+	private void trim() {
+		Iterator<Map.Entry<Block, Entry>> it = blocks.entrySet().iterator();
+		while (chars > maxChars && it.hasNext()) {
+			Map.Entry<Block, Entry> entry = it.next();
+			chars -= entry.getKey().getLength() + entry.getValue().getText().length();
+			it.remove();
+		}
+	}
+
+	/**Key for a block of text.
+	*/
+	static class Block {
+		private RemoverOptions options = null;
+		private long hash = 0; // hash of the text
+		private String s = null; // text that holds the block
+		private int from = 0; // index of the block's start in s
+		private int length = 0; // length of the block
+
+		/**Creates a key.
+		 * @param aOptions the options with which the block gets cleaned
+		 * @param aHash the hash of the block's text
+		 * @param aS the text that holds the block
+		 * @param aFrom the index of the block's start in the text
+		 * @param aLength the length of the block's text
+		*/
+		public Block(
+			RemoverOptions aOptions,
+			long aHash,
+			String aS,
+			int aFrom,
+			int aLength) {
+			options = aOptions;
+			hash = aHash;
+			s = aS;
+			from = aFrom;
+			length = aLength;
+		}
+
+		/**Gets the length of the block.
+		 * @return the number of chars in the block's text
+		*/
+		public int getLength() { return length; }
+
+		/**Gets a key that holds only the block's own text.
+		 * @return this key if it holds nothing more, or a new key
+		 * with a copy of the block's text
+		*/
+		Block detach() {
+			if (from == 0 && s.length() == length) return this;
+			return new Block(
+				options,
+				hash,
+				s.substring(from, from + length),
+				0,
+				length);
+		}
+
+		public boolean equals(Object o) {
+			if (!(o instanceof Block)) return false;
+			Block other = (Block) o;
+			// the hash only narrows the search; the texts must match too
+			return hash == other.hash
+				&& length == other.length
+				&& options.equals(other.options)
+				&& s.regionMatches(from, other.s, other.from, length);
+		}
+
+		public int hashCode() {
+			return (int) (hash ^ (hash >>> 32));
+		}
+	}
+
+	/**Cleaned block along with the statistics from cleaning it.
+	*/
+	static class Entry {
+		private String text = null;
+		private RemoverStats stats = null;
+
+		/**Creates an entry.
+		 * @param aText the cleaned block
+		 * @param aStats the statistics from cleaning the block
+		*/
+		public Entry(String aText, RemoverStats aStats) {
+			text = aText;
+			stats = aStats;
+		}
+
+		/**Gets the cleaned block.
+		 * @return the cleaned text
+		*/
+		public String getText() { return text; }
+		/**Gets the statistics.
+		 * @return the statistics from cleaning the block
+		*/
+		public RemoverStats getStats() { return stats; }
+	}
+
+	/**Run on an entire text, split into blocks, kept so that the next 
+	 * run can take whatever blocks didn't change from it.
+	*/
+	static class Run {
+		private RemoverOptions options = null;
+		private String s = null; // the text
+		private int[] cuts = null; // start of each block, then the length
+		private String cleaned = null; // the cleaned text
+		// start of each block's cleaned text, then the cleaned length
+		private int[] cleanedCuts = null;
+		private RemoverStats[] stats = null; // statistics for each block
+
+		/**Creates a run.
+		 * @param aOptions the options with which the text got cleaned
+		 * @param aS the text
+		 * @param aCuts the index of the start of each block, followed by
+		 * the length of the text
+		 * @param aCleaned the cleaned text
+		 * @param aCleanedCuts the index in the cleaned text of the start
+		 * of each cleaned block, followed by the length of the cleaned
+		 * text
+		 * @param aStats the statistics from cleaning each block
+		*/
+		public Run(
+			RemoverOptions aOptions,
+			String aS,
+			int[] aCuts,
+			String aCleaned,
+			int[] aCleanedCuts,
+			RemoverStats[] aStats) {
+			options = aOptions;
+			s = aS;
+			cuts = aCuts;
+			cleaned = aCleaned;
+			cleanedCuts = aCleanedCuts;
+			stats = aStats;
+		}
+
+		/**Gets the options.
+		 * @return the options with which the text got cleaned
+		*/
+		public RemoverOptions getOptions() { return options; }
+		/**Gets the text.
+		 * @return the text
+		*/
+		public String getText() { return s; }
+		/**Gets the blocks.
+		 * @return the index of the start of each block, followed by the
+		 * length of the text
+		*/
+		public int[] getCuts() { return cuts; }
+		/**Gets the cleaned text.
+		 * @return the cleaned text
+		*/
+		public String getCleaned() { return cleaned; }
+		/**Gets the cleaned blocks.
+		 * @return the index in the cleaned text of the start of each 
+		 * cleaned block, followed by the length of the cleaned text
+		*/
+		public int[] getCleanedCuts() { return cleanedCuts; }
+		/**Gets the statistics.
+		 * @return the statistics from cleaning each block
+		*/
+		public RemoverStats[] getStats() { return stats; }
+
+		/**Gets the amount of text held.
+		 * @return the number of chars in the text and the cleaned text
+		*/
+		long getChars() {
+			return (long) s.length() + cleaned.length();
+		}
+	}
+}
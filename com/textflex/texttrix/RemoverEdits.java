@@ -0,0 +1,219 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is the Text Trix code.
+ *
+ * The Initial Developer of the Original Code is
+ * Text Flex.
+ * Portions created by the Initial Developer are Copyright (C) 2003-4
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s): David Young <dvd@textflex.com>
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+
+package com.textflex.texttrix;
+
+/**Edits that turn a text into its cleaned form.
+ * Rather than a whole new copy of the text, the edits hold only the 
+ * changes, each of which replaces a range of the original text with
+ * a few chars, such as a space in place of a joined return, or with
+ * nothing at all.  The edits are ordered by position and never 
+ * overlap, and each keeps only the chars that actually change, so
+ * the memory they take grows with the number of changes rather than 
+ * with the length of the text.
+ * Editors can apply the edits in place by working from the last 
+ * edit to the first, so that the positions of the edits still to 
+ * come stay the same.
+*/
+public class RemoverEdits {
+	private int count = 0; // number of edits
+	// start and end in the original text of the range each edit replaces
+	private int[] starts = null;
+	private int[] ends = null;
+	// end in the replacement chars of each edit's replacement
+	private int[] textEnds = null;
+	private char[] text = null; // all the replacements, one after another
+	private int textLen = 0; // number of replacement chars
+	private RemoverStats stats = null;
+
+	/**Creates an empty set of edits.
+	 * @param capacity the initial number of edits to make room for
+	*/
+	RemoverEdits(int capacity) {
+		capacity = Math.max(capacity, 4);
+		starts = new int[capacity];
+		ends = new int[capacity];
+		textEnds = new int[capacity];
+		text = new char[capacity];
+	}
+
+	/**Gets the number of edits.
+	 * @return the number of edits
+	*/
+	public int getCount() { return count; }
+
+	/**Gets the start of the range that an edit replaces.
+	 * @param i the edit's place in the list
+	 * @return the index in the original text of the first char replaced
+	*/
+	public int getStart(int i) { return starts[i]; }
+
+	/**Gets the end of the range that an edit replaces.
+	 * @param i the edit's place in the list
+	 * @return the index in the original text after the last char 
+	 * replaced, which equals the start for pure insertions
+	*/
+	public int getEnd(int i) { return ends[i]; }
+
+	/**Gets the replacement for an edit's range.
+	 * @param i the edit's place in the list
+	 * @return the chars to put in place of the range, which is empty for 
+	 * pure deletions
+	*/
+	public String getText(int i) {
+		int textStart = (i == 0) ? 0 : textEnds[i - 1];
+		return new String(text, textStart, textEnds[i] - textStart);
+	}
+
+	/**Gets the statistics.
+	 * @return the statistics from the run that made the edits
+	*/
+	public RemoverStats getStats() { return stats; }
+
+	/**Gets the change in the text's length.
+	 * @return the length of the cleaned text less that of the original,
+	 * which is usually negative
+	*/
+	public int getLengthChange() {
+		int lengthChange = textLen;
+		for (int i = 0; i < count; i++) {
+			lengthChange -= ends[i] - starts[i];
+		}
+		return lengthChange;
+	}
+
+	/**Applies the edits to the text that they were made from.
+	 * @param s the original text
+	 * @return the cleaned text
+	*/
+	public String apply(String s) {
+		StringBuilder cleaned = 
+			new StringBuilder(s.length() + getLengthChange());
+		int copied = 0; // end of the last stretch copied from the original
+		int textStart = 0;
+		for (int i = 0; i < count; i++) {
+			cleaned.append(s, copied, starts[i]);
+			cleaned.append(text, textStart, textEnds[i] - textStart);
+			copied = ends[i];
+			textStart = textEnds[i];
+		}
+		cleaned.append(s, copied, s.length());
+		return cleaned.toString();
+	}
+
+	/**Adds chars to the replacement of the edit being built.
+	 * @param s the chars to add
+	*/
+	void addText(String s) {
+		int n = s.length();
+		if (textLen + n > text.length) {
+			char[] bigger = new char[Math.max(textLen + n, text.length * 2)];
+			System.arraycopy(text, 0, bigger, 0, textLen);
+			text = bigger;
+		}
+		s.getChars(0, n, text, textLen);
+		textLen += n;
+	}
+
+	/**Gets the number of replacement chars added for the edit being
+	 * built, which haven't yet been closed into an edit.
+	 * @return the number of pending replacement chars
+	*/
+	int getPendingText() {
+		return textLen - ((count == 0) ? 0 : textEnds[count - 1]);
+	}
+
+	/**Closes the edit being built, which replaces a range of the 
+	 * original text with the replacement chars added since the last 
+	 * edit.
+	 * Chars at either end that the range and its replacement share 
+	 * get trimmed away, and the edit gets dropped if nothing is left
+	 * to change.
+	 * @param s the original text
+	 * @param offset the index in the string of the original text's start
+	 * @param start the start of the range in the original text
+	 * @param end the end of the range in the original text
+	*/
+	void addEdit(String s, int offset, int start, int end) {
+		int textStart = (count == 0) ? 0 : textEnds[count - 1];
+		// trim the chars that stay the same at the front...
+		int same = 0;
+		while (start + same < end && textStart + same < textLen
+			&& s.charAt(offset + start + same) == text[textStart + same]) {
+			same++;
+		}
+		if (same > 0) {
+			System.arraycopy(
+				text, textStart + same, text, textStart, textLen - textStart - same);
+			start += same;
+			textLen -= same;
+		}
+		// ...and at the back
+		while (start < end && textStart < textLen
+			&& s.charAt(offset + end - 1) == text[textLen - 1]) {
+			end--;
+			textLen--;
+		}
+		if (start == end && textStart == textLen) return;
+		if (count == starts.length) {
+			int capacity = count * 2;
+			starts = grow(starts, capacity);
+			ends = grow(ends, capacity);
+			textEnds = grow(textEnds, capacity);
+		}
+		starts[count] = start;
+		ends[count] = end;
+		textEnds[count] = textLen;
+		count++;
+	}
+
+	/**Sets the statistics.
+	 * @param aStats the statistics from the run that made the edits
+	*/
+	void setStats(RemoverStats aStats) { stats = aStats; }
+
+	/**Copies an array into a larger one.
+	 * @param a the array
+	 * @param capacity the new length
+	 * @return the larger array
+	*/
+	private static int[] grow(int[] a, int capacity) {
+		int[] bigger = new int[capacity];
+		System.arraycopy(a, 0, bigger, 0, a.length);
+		return bigger;
+	}
+}
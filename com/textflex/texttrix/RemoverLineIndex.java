@@ -0,0 +1,296 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is the Text Trix code.
+ *
+ * The Initial Developer of the Original Code is
+ * Text Flex.
+ * Portions created by the Initial Developer are Copyright (C) 2003-4
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s): David Young <dvd@textflex.com>
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+
+
+package com.textflex.texttrix;
+
+import java.util.*;
+
+/**Index of the lines of a text, with the structure of each line 
+ * worked out in a single pass.
+ * For each line, the index holds where the line starts, its quote 
+ * depth and the length of its inline reply symbols, and a set of 
+ * flags for whether it falls in a <code>&#060;pre&#062;</code> area, 
+ * starts with a list marker, holds nothing but reply symbols and 
+ * whitespace, or falls short of the threshold.  Each of these is held
+ * in a primitive array, so the index takes up only a few bytes per 
+ * line.
+ * <p>The index is immutable once built, so it can be cached along 
+ * with its text and shared among threads and among any passes over 
+ * the text, such as quote stripping or rewrapping, that would 
+ * otherwise work out the same structure again.  The remover itself 
+ * takes its line ends, reply symbols, and list markers from an index 
+ * given to it through 
+ * {@link ExtraReturnsRemover#remove(RemoverLineIndex)}.
+ * <p>Lines end at a line feed, a carriage return on its own, or a 
+ * carriage return and line feed together, which together count as a
+ * single return.  The last line runs to the end of the text, so a 
+ * text that ends with a return has an empty last line.
+*/
+public final class RemoverLineIndex {
+	/**Flag for lines within a <code>&#060;pre&#062;</code> area, from
+	 * a line without reply symbols that starts with the opening tag 
+	 * through to the line with the closing tag, or to the end of the 
+	 * text if the area never closes.
+	*/
+	public static final int PRE = 1;
+	/**Flag for lines that start with a list marker after any reply 
+	 * symbols.
+	*/
+	public static final int LIST = 2;
+	/**Flag for lines that hold nothing but reply symbols, spaces, and
+	 * tabs, if anything at all.
+	*/
+	public static final int BLANK = 4;
+	/**Flag for lines that hold fewer chars than the threshold, 
+	 * including any reply symbols, which keep their returns.
+	*/
+	public static final int SHORT = 8;
+	private static final int CRLF = 16; // return is a CR and LF together
+	private static final int MAX_REPLY = 0xff; // longest reply length held
+	
+	private final String s; // the text
+	private final RemoverOptions options; // options the index was built for
+	private final int count; // number of lines
+	// where each line starts, followed by the length of the text
+	private final int[] starts;
+	private final byte[] depths; // reply signs before each line
+	// length of each line's reply symbols, up to MAX_REPLY
+	private final byte[] replyLengths;
+	private final byte[] flags; // flags for each line
+	
+	/**Builds an index of a text.
+	 * @param aS the text
+	 * @param aOptions the options that give the list markers and the 
+	 * threshold for the list and threshold flags
+	*/
+	public RemoverLineIndex(String aS, RemoverOptions aOptions) {
+		s = aS;
+		options = aOptions;
+		int len = s.length();
+		int capacity = Math.max(len / 32, 8);
+		int[] lineStarts = new int[capacity];
+		byte[] lineDepths = new byte[capacity];
+		byte[] lineReplies = new byte[capacity];
+		byte[] lineFlags = new byte[capacity];
+		RemoverSource src = new RemoverSource.StringSource(s);
+		ListMarkers listMarkers = options.getListMarkers();
+		int threshold = options.getThreshold();
+		boolean inPre = false; // within a <pre> area
+		int preClose = 0; // index of the closing tag of the <pre> area
+		int lines = 0;
+		int start = 0;
+		// next line feed and carriage return, each found only once
+		int lf = -1;
+		int cr = -1;
+		while (true) {
+			if (lines == lineStarts.length) {
+				capacity = lines * 2;
+				lineStarts = Arrays.copyOf(lineStarts, capacity);
+				lineDepths = Arrays.copyOf(lineDepths, capacity);
+				lineReplies = Arrays.copyOf(lineReplies, capacity);
+				lineFlags = Arrays.copyOf(lineFlags, capacity);
+			}
+			if (lf != len && lf < start) {
+				lf = s.indexOf('\n', start);
+				if (lf == -1) lf = len;
+			}
+			if (cr != len && cr < start) {
+				cr = s.indexOf('\r', start);
+				if (cr == -1) cr = len;
+			}
+			int end = Math.min(lf, cr);
+			int reply = ExtraReturnsRemover.containingSeq(
+				src,
+				start,
+				ExtraReturnsRemover.SEARCH_CHARS,
+				ExtraReturnsRemover.INLINE_REPLY_SIGNS);
+			int lineFlag = 0;
+			int content = start + reply;
+			char c = 0;
+			while (content < end 
+				&& ((c = s.charAt(content)) == ' ' || c == '\t' || c == '>')) {
+				content++;
+			}
+			if (content == end) lineFlag |= BLANK;
+			if (start + reply < len && listMarkers.matches(src, start + reply)) {
+				lineFlag |= LIST;
+			}
+			if (end - start < threshold) lineFlag |= SHORT;
+			if (!inPre && reply == 0 && s.startsWith("<pre>", start)) {
+				inPre = true;
+				preClose = s.indexOf("</pre>", start + 5);
+				if (preClose == -1) preClose = len;
+			}
+			if (inPre) {
+				lineFlag |= PRE;
+				if (preClose < end) inPre = false;
+			}
+			if (end < len && s.charAt(end) == '\r' 
+				&& end + 1 < len && s.charAt(end + 1) == '\n') {
+				lineFlag |= CRLF;
+			}
+			lineStarts[lines] = start;
+			lineDepths[lines] = (byte) Math.min(
+				ExtraReturnsRemover.quoteDepth(src, start, reply), 
+				Byte.MAX_VALUE);
+			lineReplies[lines] = (byte) Math.min(reply, MAX_REPLY);
+			lineFlags[lines] = (byte) lineFlag;
+			lines++;
+			if (end == len) break;
+			start = end + (((lineFlag & CRLF) != 0) ? 2 : 1);
+		}
+		count = lines;
+		starts = Arrays.copyOf(lineStarts, lines + 1);
+		starts[lines] = len;
+		depths = Arrays.copyOf(lineDepths, lines);
+		replyLengths = Arrays.copyOf(lineReplies, lines);
+		flags = Arrays.copyOf(lineFlags, lines);
+	}
+	
+	/**Gets the text.
+	 * @return the text that the index was built from
+	*/
+	public String getText() { return s; }
+	
+	/**Gets the options.
+	 * @return the options that the index was built for
+	*/
+	public RemoverOptions getOptions() { return options; }
+	
+	/**Gets the number of lines.
+	 * @return the number of lines, which is at least one
+	*/
+	public int getLineCount() { return count; }
+	
+	/**Gets the start of a line.
+	 * @param line the line number, from 0
+	 * @return the index in the text of the line's first char
+	*/
+	public int getLineStart(int line) { return starts[line]; }
+	
+	/**Gets the end of a line.
+	 * @param line the line number, from 0
+	 * @return the index in the text of the return that ends the line,
+	 * or -1 for the last line, which has none
+	*/
+	public int getLineEnd(int line) {
+		if (line == count - 1) return -1;
+		return starts[line + 1] - (((flags[line] & CRLF) != 0) ? 2 : 1);
+	}
+	
+	/**Gets the quote depth of a line.
+	 * @param line the line number, from 0
+	 * @return the number of inline reply signs, such as 
+	 * <code>&#062;</code>, at the start of the line, up to 127
+	*/
+	public int getDepth(int line) { return depths[line]; }
+	
+	/**Gets the length of a line's inline reply symbols.
+	 * @param line the line number, from 0
+	 * @return the number of reply signs and spaces among them at the 
+	 * start of the line, or 0 if the line has no reply signs
+	*/
+	public int getReplyLength(int line) {
+		int reply = replyLengths[line] & MAX_REPLY;
+		if (reply < MAX_REPLY) return reply;
+		// only lines with very long runs of reply symbols need counting
+		return ExtraReturnsRemover.containingSeq(
+			new RemoverSource.StringSource(s),
+			starts[line],
+			ExtraReturnsRemover.SEARCH_CHARS,
+			ExtraReturnsRemover.INLINE_REPLY_SIGNS);
+	}
+	
+	/**Gets the flags for a line.
+	 * @param line the line number, from 0
+	 * @return any of {@link #PRE}, {@link #LIST}, {@link #BLANK}, and 
+	 * {@link #SHORT}, or'ed together
+	*/
+	public int getFlags(int line) { 
+		return flags[line] & (PRE | LIST | BLANK | SHORT); 
+	}
+	
+	/**Checks whether a line falls within a <code>&#060;pre&#062;</code>
+	 * area.
+	 * @param line the line number, from 0
+	 * @return <code>true</code> if the line has the {@link #PRE} flag
+	*/
+	public boolean isPre(int line) { return (flags[line] & PRE) != 0; }
+	
+	/**Checks whether a line starts with a list marker.
+	 * @param line the line number, from 0
+	 * @return <code>true</code> if the line has the {@link #LIST} flag
+	*/
+	public boolean isList(int line) { return (flags[line] & LIST) != 0; }
+	
+	/**Checks whether a line is blank.
+	 * @param line the line number, from 0
+	 * @return <code>true</code> if the line has the {@link #BLANK} flag
+	*/
+	public boolean isBlank(int line) { return (flags[line] & BLANK) != 0; }
+	
+	/**Checks whether a line falls short of the threshold.
+	 * @param line the line number, from 0
+	 * @return <code>true</code> if the line has the {@link #SHORT} flag
+	*/
+	public boolean isShort(int line) { return (flags[line] & SHORT) != 0; }
+	
+	/**Finds the line that holds a given index in the text.
+	 * @param i the index in the text
+	 * @return the line number, from 0
+	*/
+	public int getLine(int i) {
+		if (i < 0 || i > starts[count]) {
+			throw new IndexOutOfBoundsException("Index: " + i);
+		}
+		int line = Arrays.binarySearch(starts, 0, count, i);
+		return (line >= 0) ? line : -2 - line;
+	}
+	
+	/**Finds the line that holds a given index in the text, searching 
+	 * forward from a line at or before it, for callers that work 
+	 * through the text from start to end.
+	 * @param i the index in the text
+	 * @param from the line at which to start searching
+	 * @return the line number, from 0
+	*/
+	int getLine(long i, int from) {
+		while (from < count - 1 && starts[from + 1] <= i) from++;
+		return from;
+	}
+}
@@ -0,0 +1,295 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is the Text Trix code.
+ *
+ * The Initial Developer of the Original Code is
+ * Text Flex.
+ * Portions created by the Initial Developer are Copyright (C) 2003-4
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s): David Young <dvd@textflex.com>
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+
+package com.textflex.texttrix;
+
+import java.lang.management.*;
+import java.util.concurrent.atomic.*;
+import javax.management.*;
+
+/**Running totals for the extra returns remover.
+ * Every run gets added to the totals, which are registered with the 
+ * platform MBean server under {@link #NAME} the first time that the 
+ * remover runs.  Where the virtual machine supports Flight Recorder
+ * and the plug-in ships with its event class, built from the separate
+ * <code>jfr</code> source tree, each run also emits an event that spans
+ * the run.
+ * The totals are updated without locking, so runs on any number of 
+ * threads can record at once.
+*/
+final class RemoverMetrics implements RemoverMetricsMXBean {
+	/** Name under which the totals are registered. */
+	public static final String NAME = "com.textflex.texttrix:type=ExtraReturnsRemover";
+
+	// upper bounds of the text length buckets, in chars
+	private static final long[] SIZE_BOUNDS = {
+		1L << 12, 1L << 16, 1L << 20, 1L << 24, Long.MAX_VALUE
+	};
+	private static final String[] SIZE_NAMES = {
+		"< 4K", "4K - 64K", "64K - 1M", "1M - 16M", ">= 16M"
+	};
+	// upper bounds of the run time buckets, in nanoseconds
+	private static final long[] LATENCY_BOUNDS = {
+		100000L, 1000000L, 10000000L, 100000000L, 1000000000L, 
+		10000000000L, Long.MAX_VALUE
+	};
+	private static final String[] LATENCY_NAMES = {
+		"< 100us", "100us - 1ms", "1ms - 10ms", "10ms - 100ms", 
+		"100ms - 1s", "1s - 10s", ">= 10s"
+	};
+
+	private static final RemoverMetrics metrics = register(new RemoverMetrics());
+	// name of the Flight Recorder event class, kept out of the main
+	// source tree so that the tree builds against any Java 8 library
+	private static final String EVENT_CLASS = "com.textflex.texttrix.RemoverEvent";
+	// makes the events for each run, or null where there are no events
+	private static final RemoverTrace events = loadEvents();
+
+	private AtomicLong runs = new AtomicLong();
+	private AtomicLong charsIn = new AtomicLong();
+	private AtomicLong charsOut = new AtomicLong();
+	private AtomicLong linesScanned = new AtomicLong();
+	private AtomicLong returnsRemoved = new AtomicLong();
+	private AtomicLong replyRegions = new AtomicLong();
+	private AtomicLong preBlocks = new AtomicLong();
+	private AtomicLong listLines = new AtomicLong();
+	private AtomicLong thresholdLines = new AtomicLong();
+	private AtomicLong totalTime = new AtomicLong();
+	private AtomicLong maxTime = new AtomicLong();
+	private AtomicLongArray timeBySize = 
+		new AtomicLongArray(SIZE_BOUNDS.length);
+	// run counts by size bucket, then by latency bucket
+	private AtomicLongArray histogram = 
+		new AtomicLongArray(SIZE_BOUNDS.length * LATENCY_BOUNDS.length);
+
+	/**Creates a set of totals.
+	*/
+	private RemoverMetrics() {
+	}
+
+	/**Gets the totals for the virtual machine.
+	 * @return the totals
+	*/
+	static RemoverMetrics getMetrics() { return metrics; }
+
+	/**Starts timing a run, beginning its Flight Recorder event if such
+	 * events are being recorded.
+	 * @return the run's timing, to hand back to 
+	 * {@link #record(RemoverMetrics.Timing, long, long, RemoverStats)}
+	 * once the run finishes
+	*/
+	static Timing start() {
+		return new Timing((events == null) ? null : events.open());
+	}
+
+	/**Records a finished run.
+	 * @param timing the run's timing, from {@link #start()}
+	 * @param in the length of the text cleaned
+	 * @param out the length of the cleaned text
+	 * @param stats the statistics from the run
+	*/
+	static void record(Timing timing, long in, long out, RemoverStats stats) {
+		metrics.add(in, out, stats, System.nanoTime() - timing.start);
+		if (timing.event != null) timing.event.close(in, out, stats);
+	}
+
+	/**Adds a run to the totals.
+	 * @param in the length of the text cleaned
+	 * @param out the length of the cleaned text
+	 * @param stats the statistics from the run
+	 * @param time the wall time of the run, in nanoseconds
+	*/
+	private void add(long in, long out, RemoverStats stats, long time) {
+		runs.incrementAndGet();
+		charsIn.addAndGet(in);
+		charsOut.addAndGet(out);
+		linesScanned.addAndGet(stats.getLinesScanned());
+		returnsRemoved.addAndGet(stats.getReturnsRemoved());
+		replyRegions.addAndGet(stats.getReplyRegions());
+		preBlocks.addAndGet(stats.getPreBlocks());
+		listLines.addAndGet(stats.getListLines());
+		thresholdLines.addAndGet(stats.getThresholdLines());
+		totalTime.addAndGet(time);
+		long max = maxTime.get();
+		while (time > max && !maxTime.compareAndSet(max, time)) {
+			max = maxTime.get();
+		}
+		int size = bucket(SIZE_BOUNDS, in);
+		timeBySize.addAndGet(size, time);
+		histogram.incrementAndGet(
+			size * LATENCY_BOUNDS.length + bucket(LATENCY_BOUNDS, time));
+	}
+
+	/**Finds the latency bucket for a run time, for timings kept 
+	 * alongside the totals in the same buckets.
+	 * @param time the time, in nanoseconds
+	 * @return the index into {@link #getLatencyBuckets()}
+	*/
+	static int latencyBucket(long time) {
+		return bucket(LATENCY_BOUNDS, time);
+	}
+
+	/**Finds the bucket for a value.
+	 * @param bounds the upper bound of each bucket, noninclusive
+	 * @param value the value
+	 * @return the first bucket whose upper bound exceeds the value
+	*/
+	private static int bucket(long[] bounds, long value) {
+		int i = 0;
+		while (i < bounds.length - 1 && value >= bounds[i]) i++;
+		return i;
+	}
+
+	public long getRuns() { return runs.get(); }
+	public long getCharsIn() { return charsIn.get(); }
+	public long getCharsOut() { return charsOut.get(); }
+	public long getLinesScanned() { return linesScanned.get(); }
+	public long getReturnsRemoved() { return returnsRemoved.get(); }
+	public long getReplyRegions() { return replyRegions.get(); }
+	public long getPreBlocks() { return preBlocks.get(); }
+	public long getListLines() { return listLines.get(); }
+	public long getThresholdLines() { return thresholdLines.get(); }
+	public long getTotalTime() { return totalTime.get(); }
+	public long getMaxTime() { return maxTime.get(); }
+	public String[] getSizeBuckets() { return SIZE_NAMES.clone(); }
+	public String[] getLatencyBuckets() { return LATENCY_NAMES.clone(); }
+
+	public long[] getRunsBySize() {
+		long[] counts = new long[SIZE_BOUNDS.length];
+		for (int i = 0; i < counts.length; i++) {
+			for (int j = 0; j < LATENCY_BOUNDS.length; j++) {
+				counts[i] += histogram.get(i * LATENCY_BOUNDS.length + j);
+			}
+		}
+		return counts;
+	}
+
+	public long[] getTimeBySize() {
+		long[] times = new long[SIZE_BOUNDS.length];
+		for (int i = 0; i < times.length; i++) {
+			times[i] = timeBySize.get(i);
+		}
+		return times;
+	}
+
+	public long[][] getLatencyHistogram() {
+		long[][] counts = new long[SIZE_BOUNDS.length][LATENCY_BOUNDS.length];
+		for (int i = 0; i < counts.length; i++) {
+			for (int j = 0; j < counts[i].length; j++) {
+				counts[i][j] = histogram.get(i * LATENCY_BOUNDS.length + j);
+			}
+		}
+		return counts;
+	}
+
+	public void reset() {
+		runs.set(0);
+		charsIn.set(0);
+		charsOut.set(0);
+		linesScanned.set(0);
+		returnsRemoved.set(0);
+		replyRegions.set(0);
+		preBlocks.set(0);
+		listLines.set(0);
+		thresholdLines.set(0);
+		totalTime.set(0);
+		maxTime.set(0);
+		for (int i = 0; i < timeBySize.length(); i++) {
+			timeBySize.set(i, 0);
+		}
+		for (int i = 0; i < histogram.length(); i++) {
+			histogram.set(i, 0);
+		}
+	}
+
+	/**Registers a set of totals with the platform MBean server.
+	 * Monitoring is never worth failing a run over, so the totals 
+	 * simply go unregistered if the server turns them down, as when 
+	 * another copy of the plug-in has already registered its own.
+	 * @param metrics the totals
+	 * @return the totals
+	*/
+	private static RemoverMetrics register(RemoverMetrics metrics) {
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(
+				metrics,
+				new ObjectName(NAME));
+		} catch (JMException e) {
+			// left unregistered
+		} catch (SecurityException e) {
+			// left unregistered
+		}
+		return metrics;
+	}
+
+	/**Loads the Flight Recorder event class, if the plug-in ships with
+	 * it and the virtual machine has Flight Recorder events, which Java
+	 * 8 runtimes only have from update 262 on.
+	 * @return an event that opens the events for each run, or 
+	 * <code>null</code> if events can't be emitted
+	*/
+	private static RemoverTrace loadEvents() {
+		try {
+			return (RemoverTrace) Class.forName(
+				EVENT_CLASS,
+				true,
+				RemoverMetrics.class.getClassLoader())
+				.getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException e) {
+			return null;
+		} catch (LinkageError e) {
+			return null;
+		} catch (SecurityException e) {
+			return null;
+		}
+	}
+
+	/**Start of a run, along with the run's Flight Recorder event.
+	*/
+	static final class Timing {
+		private long start = System.nanoTime();
+		private RemoverTrace event = null; // begun event, or null for none
+
+		/**Creates a timing, starting now.
+		 * @param aEvent the run's begun event, or <code>null</code> for
+		 * none
+		*/
+		private Timing(RemoverTrace aEvent) {
+			event = aEvent;
+		}
+	}
+}
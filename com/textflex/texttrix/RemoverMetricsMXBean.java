@@ -0,0 +1,121 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is the Text Trix code.
+ *
+ * The Initial Developer of the Original Code is
+ * Text Flex.
+ * Portions created by the Initial Developer are Copyright (C) 2003-4
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s): David Young <dvd@textflex.com>
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+
+package com.textflex.texttrix;
+
+/**Management interface to the extra returns remover's running totals.
+ * The totals cover every run of the remover in the virtual machine 
+ * since it started or since the totals were last reset.
+ * Run times are also gathered into histograms by the length of text
+ * cleaned, so that slow runs can be traced to the size of their texts.
+*/
+public interface RemoverMetricsMXBean {
+
+	/**Gets the number of runs.
+	 * @return the number of runs
+	*/
+	public long getRuns();
+	/**Gets the length of the text cleaned.
+	 * @return the total number of chars worked through
+	*/
+	public long getCharsIn();
+	/**Gets the length of the cleaned text.
+	 * @return the total number of chars output
+	*/
+	public long getCharsOut();
+	/**Gets the number of lines scanned.
+	 * @return the total number of lines worked through
+	*/
+	public long getLinesScanned();
+	/**Gets the number of returns removed.
+	 * @return the total number of hard returns whose lines were joined
+	*/
+	public long getReturnsRemoved();
+	/**Gets the number of reply regions.
+	 * @return the total number of inline message reply regions entered
+	*/
+	public long getReplyRegions();
+	/**Gets the number of pre blocks.
+	 * @return the total number of <code>&#060;pre&#062;</code>-delimited
+	 * areas skipped
+	*/
+	public long getPreBlocks();
+	/**Gets the number of list lines.
+	 * @return the total number of lines kept on their own for starting 
+	 * with list markers
+	*/
+	public long getListLines();
+	/**Gets the number of threshold lines.
+	 * @return the total number of lines kept on their own for being 
+	 * shorter than the threshold
+	*/
+	public long getThresholdLines();
+	/**Gets the time spent cleaning.
+	 * @return the total wall time of the runs, in nanoseconds
+	*/
+	public long getTotalTime();
+	/**Gets the longest run time.
+	 * @return the wall time of the slowest run, in nanoseconds
+	*/
+	public long getMaxTime();
+
+	/**Gets the names of the text length buckets.
+	 * @return the range of lengths of text that each bucket covers
+	*/
+	public String[] getSizeBuckets();
+	/**Gets the names of the run time buckets.
+	 * @return the range of run times that each bucket covers
+	*/
+	public String[] getLatencyBuckets();
+	/**Gets the number of runs in each text length bucket.
+	 * @return the number of runs for each bucket
+	*/
+	public long[] getRunsBySize();
+	/**Gets the total run time in each text length bucket.
+	 * @return the wall time of the runs for each bucket, in nanoseconds
+	*/
+	public long[] getTimeBySize();
+	/**Gets the histogram of run times.
+	 * @return the number of runs for each text length bucket, in the 
+	 * first dimension, and run time bucket, in the second
+	*/
+	public long[][] getLatencyHistogram();
+
+	/**Sets all the totals back to zero.
+	*/
+	public void reset();
+}
@@ -0,0 +1,61 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is the Text Trix code.
+ *
+ * The Initial Developer of the Original Code is
+ * Text Flex.
+ * Portions created by the Initial Developer are Copyright (C) 2003-4
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s): David Young <dvd@textflex.com>
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+
+package com.textflex.texttrix;
+
+/**Watches over a run of the extra returns remover.
+ * The remover checks in with its monitor every so often as it works 
+ * through the text, reporting how far it has come and stopping early
+ * if the monitor asks it to.
+ * Check-ins come from the thread doing the work, or, where the work
+ * gets split across threads, from each of them in turn, one at a time.
+*/
+public interface RemoverMonitor {
+
+	/**Reports how far the remover has come.
+	 * @param done the number of chars worked through so far
+	 * @param total the number of chars to work through
+	*/
+	public void progress(long done, long total);
+
+	/**Checks whether the run should stop.
+	 * Once the monitor asks it to stop, the remover gives up its run 
+	 * by throwing a {@link java.util.concurrent.CancellationException}.
+	 * @return <code>true</code> if the run should stop
+	*/
+	public boolean isCanceled();
+}
@@ -0,0 +1,184 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is the Text Trix code.
+ *
+ * The Initial Developer of the Original Code is
+ * Text Flex.
+ * Portions created by the Initial Developer are Copyright (C) 2003-4
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s): David Young <dvd@textflex.com>
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+
+package com.textflex.texttrix;
+
+/**Options for the extra returns remover.
+ * Options objects are immutable, with the list markers compiled when
+ * the object is created, so that any number of threads can share one.
+*/
+public final class RemoverOptions {
+	private final ListMarkers listMarkers; // compiled list markers
+	private final int threshold; // minimum line length
+	private final boolean emailMarkers; // mark reply regions
+	private final boolean selectedRegion; // only work on the selected region
+	private final boolean flowed; // join format=flowed lines
+	private final boolean quotedPrintable; // join quoted-printable soft breaks
+
+	/**Creates a set of options.
+	 * @param lists the comma-separated list of list markers, where
+	 * markers starting with "[outline]" are outline markers
+	 * @param aThreshold the minimum number of chars that a line must 
+	 * contain for its return to be removed
+	 * @param aEmailMarkers <code>true</code> to mark the boundaries of 
+	 * email reply regions
+	 * @param aSelectedRegion <code>true</code> to only work on the 
+	 * selected region of the text
+	*/
+	public RemoverOptions(
+		String lists,
+		int aThreshold,
+		boolean aEmailMarkers,
+		boolean aSelectedRegion) {
+		this(lists, aThreshold, aEmailMarkers, aSelectedRegion, false, false);
+	}
+
+	/**Creates a set of options for text from raw email bodies.
+	 * @param lists the comma-separated list of list markers, where
+	 * markers starting with "[outline]" are outline markers
+	 * @param aThreshold the minimum number of chars that a line must 
+	 * contain for its return to be removed
+	 * @param aEmailMarkers <code>true</code> to mark the boundaries of 
+	 * email reply regions
+	 * @param aSelectedRegion <code>true</code> to only work on the 
+	 * selected region of the text
+	 * @param aFlowed <code>true</code> to join each line that ends with a
+	 * space to the next line of the same quote depth, as for 
+	 * format=flowed text (RFC 3676)
+	 * @param aQuotedPrintable <code>true</code> to remove each 
+	 * <code>=</code> that ends a line along with the return after it, 
+	 * as for soft line breaks in quoted-printable text (RFC 2045)
+	*/
+	public RemoverOptions(
+		String lists,
+		int aThreshold,
+		boolean aEmailMarkers,
+		boolean aSelectedRegion,
+		boolean aFlowed,
+		boolean aQuotedPrintable) {
+		this(
+			new ListMarkers(lists),
+			aThreshold,
+			aEmailMarkers,
+			aSelectedRegion,
+			aFlowed,
+			aQuotedPrintable);
+	}
+
+	/**Creates a set of options with list markers that have already been
+	 * compiled.
+	 * @param aListMarkers the compiled list markers
+	 * @param aThreshold the minimum number of chars that a line must 
+	 * contain for its return to be removed
+	 * @param aEmailMarkers <code>true</code> to mark the boundaries of 
+	 * email reply regions
+	 * @param aSelectedRegion <code>true</code> to only work on the 
+	 * selected region of the text
+	 * @param aFlowed <code>true</code> to join format=flowed lines
+	 * @param aQuotedPrintable <code>true</code> to remove 
+	 * quoted-printable soft line breaks
+	*/
+	RemoverOptions(
+		ListMarkers aListMarkers,
+		int aThreshold,
+		boolean aEmailMarkers,
+		boolean aSelectedRegion,
+		boolean aFlowed,
+		boolean aQuotedPrintable) {
+		listMarkers = aListMarkers;
+		threshold = aThreshold;
+		emailMarkers = aEmailMarkers;
+		selectedRegion = aSelectedRegion;
+		flowed = aFlowed;
+		quotedPrintable = aQuotedPrintable;
+	}
+
+	/**Gets the lists.
+	 * @return the comma-separated list of list markers
+	*/
+	public String getLists() { return listMarkers.getLists(); }
+	/**Gets the compiled list markers.
+	 * @return the list markers
+	*/
+	ListMarkers getListMarkers() { return listMarkers; }
+	/**Gets the threshold.
+	 * @return the minimum line length to remove returns from
+	*/
+	public int getThreshold() { return threshold; }
+	/**Gets the email markers flag.
+	 * @return the flag to add reply email boundary markers
+	*/
+	public boolean getEmailMarkers() { return emailMarkers; }
+	/**Gets the selected region flag.
+	 * @return flag to only work on the selected region
+	*/
+	public boolean getSelectedRegion() { return selectedRegion; }
+	/**Gets the format=flowed flag.
+	 * @return flag to join lines that end with a space
+	*/
+	public boolean getFlowed() { return flowed; }
+	/**Gets the quoted-printable flag.
+	 * @return flag to remove soft line breaks
+	*/
+	public boolean getQuotedPrintable() { return quotedPrintable; }
+
+	/**Checks whether another set of options is the same as this one.
+	 * @param o the other options
+	 * @return <code>true</code> if the other options are the same, so
+	 * that the remover would clean text the same way with either set
+	*/
+	public boolean equals(Object o) {
+		if (o == this) return true;
+		if (!(o instanceof RemoverOptions)) return false;
+		RemoverOptions other = (RemoverOptions) o;
+		return threshold == other.threshold
+			&& emailMarkers == other.emailMarkers
+			&& selectedRegion == other.selectedRegion
+			&& flowed == other.flowed
+			&& quotedPrintable == other.quotedPrintable
+			&& getLists().equals(other.getLists());
+	}
+
+	public int hashCode() {
+		int hash = getLists().hashCode();
+		hash = hash * 31 + threshold;
+		hash = hash * 31 + (emailMarkers ? 1 : 0);
+		hash = hash * 31 + (selectedRegion ? 1 : 0);
+		hash = hash * 31 + (flowed ? 1 : 0);
+		return hash * 31 + (quotedPrintable ? 1 : 0);
+	}
+}
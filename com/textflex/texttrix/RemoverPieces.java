@@ -0,0 +1,267 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is the Text Trix code.
+ *
+ * The Initial Developer of the Original Code is
+ * Text Flex.
+ * Portions created by the Initial Developer are Copyright (C) 2003-4
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s): David Young <dvd@textflex.com>
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+
+
+package com.textflex.texttrix;
+
+import java.io.*;
+
+/**Cleaned text held as a table of pieces.
+ * Most of a cleaned text is long stretches of the original text, 
+ * broken up by the few chars that the remover inserts, such as spaces
+ * in place of joined returns.  Rather than copying those stretches 
+ * into a new array, the pieces only point at them in the original 
+ * text, with the inserted chars kept one after another in a small 
+ * array of their own, so the memory the text takes grows with the 
+ * number of pieces rather than with its length.  The text only gets 
+ * flattened into a single string if asked for one, or it can be 
+ * written straight to a writer a piece at a time.
+ * <p>Reading a char at a given position takes a binary search of the
+ * pieces, so reading the text through as a 
+ * <code>CharSequence</code> is slower than through its string or a
+ * writer.
+*/
+public class RemoverPieces implements CharSequence {
+	private String s = null; // the original text
+	private int count = 0; // number of pieces
+	// where each piece starts in the original text, or for pieces of
+	// inserted chars, -1 less the negative of where it starts among them
+	private int[] starts = null;
+	// end in the cleaned text of each piece
+	private int[] ends = null;
+	private char[] text = null; // all the inserted chars, one after another
+	private int textLen = 0; // number of inserted chars
+	private String flat = null; // the flattened text, once asked for
+	private RemoverStats stats = null;
+
+	/**Creates an empty table of pieces.
+	 * @param aS the original text, which the pieces point into
+	 * @param capacity the initial number of pieces to make room for
+	*/
+	RemoverPieces(String aS, int capacity) {
+		s = aS;
+		capacity = Math.max(capacity, 4);
+		starts = new int[capacity];
+		ends = new int[capacity];
+		text = new char[capacity];
+	}
+
+	/**Gets the number of pieces.
+	 * @return the number of stretches of original text and of inserted
+	 * chars that make up the cleaned text
+	*/
+	public int getPieceCount() { return count; }
+
+	/**Gets the statistics.
+	 * @return the statistics from the run that made the pieces
+	*/
+	public RemoverStats getStats() { return stats; }
+
+	public int length() {
+		return (count == 0) ? 0 : ends[count - 1];
+	}
+
+	public char charAt(int index) {
+		if (index < 0 || index >= length()) {
+			throw new IndexOutOfBoundsException("Index: " + index);
+		}
+		if (flat != null) return flat.charAt(index);
+		int i = piece(index);
+		int within = index - ((i == 0) ? 0 : ends[i - 1]);
+		return (starts[i] >= 0) 
+			? s.charAt(starts[i] + within)
+			: text[-1 - starts[i] + within];
+	}
+
+	public CharSequence subSequence(int start, int end) {
+		if (start < 0 || end > length() || start > end) {
+			throw new IndexOutOfBoundsException(start + " to " + end);
+		}
+		if (flat != null) return flat.substring(start, end);
+		char[] chars = new char[end - start];
+		getChars(start, end, chars, 0);
+		return new String(chars);
+	}
+
+	/**Gets the cleaned text as a single string, flattening the pieces
+	 * the first time that it's asked for.
+	 * @return the text, clean, washed, and ready
+	*/
+	public String toString() {
+		if (flat == null) {
+			char[] chars = new char[length()];
+			getChars(0, chars.length, chars, 0);
+			flat = new String(chars);
+		}
+		return flat;
+	}
+
+	/**Copies a range of the cleaned text into an array.
+	 * @param start the index of the first char to copy
+	 * @param end the index after the last char to copy
+	 * @param dst the array
+	 * @param dstStart the index in the array at which to start copying
+	*/
+	public void getChars(int start, int end, char[] dst, int dstStart) {
+		if (start == end) return;
+		if (flat != null) {
+			flat.getChars(start, end, dst, dstStart);
+			return;
+		}
+		int pieceStart = 0; // index in the cleaned text of the piece's start
+		for (int i = piece(start); i < count && pieceStart < end; i++) {
+			pieceStart = (i == 0) ? 0 : ends[i - 1];
+			int from = Math.max(start, pieceStart) - pieceStart;
+			int to = Math.min(end, ends[i]) - pieceStart;
+			if (from >= to) continue;
+			if (starts[i] >= 0) {
+				s.getChars(starts[i] + from, starts[i] + to, dst, dstStart);
+			} else {
+				System.arraycopy(text, -1 - starts[i] + from, dst, dstStart, to - from);
+			}
+			dstStart += to - from;
+			pieceStart = ends[i];
+		}
+	}
+
+	/**Writes the cleaned text to a writer a piece at a time, without
+	 * flattening it.
+	 * The writer doesn't get closed.
+	 * @param out the writer
+	 * @throws IOException if the writer fails
+	*/
+	public void writeTo(Writer out) throws IOException {
+		int pieceStart = 0;
+		for (int i = 0; i < count; i++) {
+			int len = ends[i] - pieceStart;
+			if (starts[i] >= 0) {
+				out.write(s, starts[i], len);
+			} else {
+				out.write(text, -1 - starts[i], len);
+			}
+			pieceStart = ends[i];
+		}
+	}
+
+	/**Finds the piece that holds a char of the cleaned text.
+	 * @param index the index of the char in the cleaned text
+	 * @return the piece's place in the table
+	*/
+	private int piece(int index) {
+		int lo = 0;
+		int hi = count - 1;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (ends[mid] <= index) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	/**Adds a stretch of the original text, extending the last piece
+	 * if the stretch carries straight on from it.
+	 * @param from the index in the original text of the stretch's start
+	 * @param to the index in the original text of the stretch's end
+	*/
+	void addCopy(int from, int to) {
+		if (from == to) return;
+		int len = length();
+		if (count > 0 && starts[count - 1] >= 0
+			&& starts[count - 1] + ends[count - 1] 
+				- ((count == 1) ? 0 : ends[count - 2]) == from) {
+			ends[count - 1] = len + to - from;
+		} else {
+			addPiece(from, len + to - from);
+		}
+	}
+
+	/**Adds inserted chars, extending the last piece if it also holds
+	 * inserted chars.
+	 * @param str the chars to add
+	*/
+	void addText(String str) {
+		int n = str.length();
+		if (n == 0) return;
+		if (textLen + n > text.length) {
+			char[] bigger = new char[Math.max(textLen + n, text.length * 2)];
+			System.arraycopy(text, 0, bigger, 0, textLen);
+			text = bigger;
+		}
+		str.getChars(0, n, text, textLen);
+		int len = length();
+		if (count > 0 && starts[count - 1] < 0) {
+			ends[count - 1] = len + n;
+		} else {
+			addPiece(-1 - textLen, len + n);
+		}
+		textLen += n;
+	}
+
+	/**Adds a piece to the end of the table.
+	 * @param start where the piece starts, as stored in 
+	 * <code>starts</code>
+	 * @param end the end of the piece in the cleaned text
+	*/
+	private void addPiece(int start, int end) {
+		if (count == starts.length) {
+			starts = grow(starts, count * 2);
+			ends = grow(ends, count * 2);
+		}
+		starts[count] = start;
+		ends[count] = end;
+		count++;
+	}
+
+	/**Sets the statistics.
+	 * @param aStats the statistics from the run that made the pieces
+	*/
+	void setStats(RemoverStats aStats) { stats = aStats; }
+
+	/**Copies an array into a larger one.
+	 * @param a the array
+	 * @param capacity the new length
+	 * @return the larger array
+	*/
+	private static int[] grow(int[] a, int capacity) {
+		int[] bigger = new int[capacity];
+		System.arraycopy(a, 0, bigger, 0, a.length);
+		return bigger;
+	}
+}
@@ -0,0 +1,88 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is the Text Trix code.
+ *
+ * The Initial Developer of the Original Code is
+ * Text Flex.
+ * Portions created by the Initial Developer are Copyright (C) 2003-4
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s): David Young <dvd@textflex.com>
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+
+package com.textflex.texttrix;
+
+/**Result of a run of the extra returns remover.
+ * Holds the cleaned text along with the statistics from the run.
+ * The cleaned text replaces a range of the original text, which 
+ * covers the whole of it unless the run worked on only a region.
+*/
+public class RemoverResult {
+	private String text = null;
+	private RemoverStats stats = null;
+	private int start = 0; // start of the range replaced
+	private int end = 0; // end of the range replaced
+
+	/**Creates a result.
+	 * @param aText the cleaned text
+	 * @param aStats the statistics from the run
+	 * @param aStart the index in the original text of the start of the 
+	 * range that the cleaned text replaces
+	 * @param aEnd the index in the original text of the end of the
+	 * range that the cleaned text replaces, noninclusive
+	*/
+	public RemoverResult(
+		String aText,
+		RemoverStats aStats,
+		int aStart,
+		int aEnd) {
+		text = aText;
+		stats = aStats;
+		start = aStart;
+		end = aEnd;
+	}
+
+	/**Gets the cleaned text.
+	 * @return the text, clean, washed, and ready
+	*/
+	public String getText() { return text; }
+	/**Gets the statistics.
+	 * @return the statistics from the run
+	*/
+	public RemoverStats getStats() { return stats; }
+	/**Gets the start of the range replaced.
+	 * @return the index in the original text of the first char that 
+	 * the cleaned text replaces
+	*/
+	public int getStart() { return start; }
+	/**Gets the end of the range replaced.
+	 * @return the index in the original text after the last char that
+	 * the cleaned text replaces
+	*/
+	public int getEnd() { return end; }
+}
@@ -0,0 +1,680 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is the Text Trix code.
+ *
+ * The Initial Developer of the Original Code is
+ * Text Flex.
+ * Portions created by the Initial Developer are Copyright (C) 2003-4
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s): David Young <dvd@textflex.com>
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+
+
+package com.textflex.texttrix;
+
+import com.sun.net.httpserver.*;
+import java.io.*;
+import java.lang.reflect.*;
+import java.net.*;
+import java.nio.charset.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**Embedded HTTP service for the extra returns remover.
+ * Text <code>POST</code>ed to <code>/remove</code> gets cleaned and 
+ * streamed back as it is read, so that memory per request depends on
+ * the length of the longest line rather than the length of the text.
+ * The remover options come as query parameters, eg 
+ * <code>/remove?lists=-,*&amp;threshold=5&amp;emailMarkers=true</code>,
+ * with the command-line options as defaults, and the text is taken to 
+ * be in the charset of the request's <code>Content-Type</code>, or 
+ * UTF-8 if none is given.  Engines get cached by their options, so 
+ * requests with the same options share compiled list markers.
+ * Many small documents can instead go to <code>/batch</code> in a 
+ * single request, separated by NUL chars, to come back cleaned in one
+ * batch run and separated the same way.  A batch has to be held whole
+ * while it gets cleaned, so batches beyond a fixed size get turned away
+ * with a 413.
+ * <p>Each request runs on a thread of its own, a virtual thread where 
+ * the virtual machine has them and a pooled one otherwise.  At most a 
+ * fixed number of requests get cleaned at once; a request beyond that
+ * gets turned away straight off with a 503 and a 
+ * <code>Retry-After</code> header rather than queued, so that bursts
+ * of load can't pile up work that clients have long given up on.
+ * <code>GET /stats</code> reports the requests taken and turned away,
+ * the throughput since the service started, and a histogram of the
+ * latency of the requests cleaned.
+ * No Swing or AWT classes get loaded.
+ * <p>Usage:
+ * <pre>
+ * java com.textflex.texttrix.RemoverServer [options]
+ * </pre>
+ * Run with <code>-help</code> for the list of options.
+*/
+public class RemoverServer {
+
+	private static final String USAGE = 
+		"Usage: java com.textflex.texttrix.RemoverServer [options]\n"
+		+ "Serves the extra returns remover over HTTP.  POST text to\n"
+		+ "/remove to get it back cleaned, or NUL-separated documents to\n"
+		+ "/batch; GET /stats for statistics.\n"
+		+ "Options:\n"
+		+ "  -host <address>      address to listen on (default: 127.0.0.1)\n"
+		+ "  -port <n>            port to listen on (default: 8080)\n"
+		+ "  -inFlight <n>        most requests to clean at once, beyond\n"
+		+ "                       which requests are turned away (default: 256)\n"
+		+ "  -maxBatch <bytes>    largest batch to take (default: 16777216)\n"
+		+ "  -lists <markers>     default comma-separated list markers\n"
+		+ "                       (default: -,[outline].,[outline]),*)\n"
+		+ "  -threshold <n>       default minimum length of line (default: 0)\n"
+		+ "  -emailMarkers        mark email reply region boundaries by default";
+
+	/** Path for cleaning text. */
+	public static final String REMOVE_PATH = "/remove";
+	/** Path for cleaning batches of documents. */
+	public static final String BATCH_PATH = "/batch";
+	/** Char separating the documents of a batch. */
+	public static final char BATCH_SEPARATOR = '\0';
+	/** Path for statistics. */
+	public static final String STATS_PATH = "/stats";
+	/** Largest batch taken by default, in bytes. */
+	public static final int DEFAULT_MAX_BATCH = 1 << 24;
+
+	// most engines to cache before starting the cache afresh
+	private static final int MAX_ENGINES = 64;
+	// seconds after which clients turned away may try again
+	private static final String RETRY_AFTER = "1";
+	// chars to buffer between the remover and the response
+	private static final int BUFFER_SIZE = 1 << 13;
+	// connections to queue for accepting before the socket refuses more
+	private static final int BACKLOG = 1024;
+
+	private HttpServer server = null;
+	private ExecutorService executor = null;
+	private RemoverOptions defaults = null;
+	private int maxInFlight = 0;
+	private int maxBatch = 0; // largest batch to take, in bytes
+	// permits for the requests being cleaned
+	private Semaphore inFlight = null;
+	// engines by their options
+	private ConcurrentHashMap<RemoverOptions, ExtraReturnsRemover> engines =
+		new ConcurrentHashMap<RemoverOptions, ExtraReturnsRemover>();
+
+	/* Totals since the service started */
+	private long started = 0;
+	private AtomicLong accepted = new AtomicLong();
+	private AtomicLong rejected = new AtomicLong();
+	private AtomicLong failures = new AtomicLong();
+	private AtomicLong bytesIn = new AtomicLong();
+	private AtomicLong totalTime = new AtomicLong();
+	private AtomicLong maxTime = new AtomicLong();
+	private AtomicInteger peakInFlight = new AtomicInteger();
+	private AtomicLongArray latencies = 
+		new AtomicLongArray(RemoverMetrics.getMetrics().getLatencyBuckets().length);
+
+	/**Creates a service, bound to its address but not yet started.
+	 * @param address the address to listen on; port 0 for any free port
+	 * @param aDefaults the options for parameters that requests leave
+	 * out
+	 * @param aMaxInFlight the most requests to clean at once
+	 * @throws IOException if the address can't be bound
+	*/
+	public RemoverServer(
+		InetSocketAddress address,
+		RemoverOptions aDefaults,
+		int aMaxInFlight) throws IOException {
+		this(address, aDefaults, aMaxInFlight, DEFAULT_MAX_BATCH);
+	}
+
+	/**Creates a service, bound to its address but not yet started.
+	 * @param address the address to listen on; port 0 for any free port
+	 * @param aDefaults the options for parameters that requests leave
+	 * out
+	 * @param aMaxInFlight the most requests to clean at once
+	 * @param aMaxBatch the largest batch to take, in bytes
+	 * @throws IOException if the address can't be bound
+	*/
+	public RemoverServer(
+		InetSocketAddress address,
+		RemoverOptions aDefaults,
+		int aMaxInFlight,
+		int aMaxBatch) throws IOException {
+		defaults = aDefaults;
+		maxInFlight = Math.max(1, aMaxInFlight);
+		maxBatch = Math.max(0, aMaxBatch);
+		inFlight = new Semaphore(maxInFlight);
+		server = HttpServer.create(address, BACKLOG);
+		server.createContext(REMOVE_PATH, new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				remove(exchange, false);
+			}
+		});
+		server.createContext(BATCH_PATH, new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				remove(exchange, true);
+			}
+		});
+		server.createContext(STATS_PATH, new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				stats(exchange);
+			}
+		});
+	}
+
+	/**Runs the service from the command line until the process is 
+	 * stopped.
+	 * @param args the options
+	*/
+	public static void main(String[] args) {
+		String host = "127.0.0.1";
+		int port = 8080;
+		int inFlight = 256;
+		int maxBatch = DEFAULT_MAX_BATCH;
+		String lists = "-,[outline].,[outline]),*";
+		int threshold = 0;
+		boolean emailMarkers = false;
+		try {
+			for (int i = 0; i < args.length; i++) {
+				String opt = args[i];
+				if (opt.equals("-help")) {
+					System.out.println(USAGE);
+					System.exit(0);
+				} else if (opt.equals("-host")) {
+					host = args[++i];
+				} else if (opt.equals("-port")) {
+					port = Integer.parseInt(args[++i]);
+				} else if (opt.equals("-inFlight")) {
+					inFlight = Math.max(1, Integer.parseInt(args[++i]));
+				} else if (opt.equals("-maxBatch")) {
+					maxBatch = Math.max(0, Integer.parseInt(args[++i]));
+				} else if (opt.equals("-lists")) {
+					lists = args[++i];
+				} else if (opt.equals("-threshold")) {
+					threshold = Integer.parseInt(args[++i]);
+				} else if (opt.equals("-emailMarkers")) {
+					emailMarkers = true;
+				} else {
+					throw new IllegalArgumentException("Unknown option: " + opt);
+				}
+			}
+		} catch (RuntimeException e) {
+			// covers missing option values and malformed numbers as well
+			System.err.println(e.getMessage() == null ? e.toString() : e.getMessage());
+			System.err.println(USAGE);
+			System.exit(2);
+		}
+		
+		final RemoverServer service;
+		try {
+			service = 
+				new RemoverServer(
+					new InetSocketAddress(host, port),
+					new RemoverOptions(lists, threshold, emailMarkers, false),
+					inFlight,
+					maxBatch);
+		} catch (IOException e) {
+			System.err.println(e.toString());
+			System.exit(1);
+			return;
+		}
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			public void run() {
+				service.stop(1);
+			}
+		});
+		service.start();
+		System.err.println(
+			"Listening on " + service.getAddress() + " with "
+				+ (service.isVirtual() ? "virtual" : "pooled") + " threads");
+	}
+
+	/**Starts the service.
+	*/
+	public void start() {
+		executor = newExecutor();
+		server.setExecutor(executor);
+		started = System.nanoTime();
+		server.start();
+	}
+
+	/**Stops the service, waiting for requests being cleaned to finish.
+	 * @param delay the most seconds to wait
+	*/
+	public void stop(int delay) {
+		server.stop(delay);
+		if (executor != null) executor.shutdownNow();
+	}
+
+	/**Gets the address that the service listens on.
+	 * @return the address, with the port that was bound
+	*/
+	public InetSocketAddress getAddress() { return server.getAddress(); }
+
+	/**Checks whether requests run on virtual threads.
+	 * @return <code>true</code> if the virtual machine has virtual 
+	 * threads and the service is running on them
+	*/
+	public boolean isVirtual() {
+		return executor != null && !(executor instanceof ThreadPoolExecutor);
+	}
+
+	public long getAccepted() { return accepted.get(); }
+	public long getRejected() { return rejected.get(); }
+	public long getFailures() { return failures.get(); }
+
+	/**Creates the executor for requests.
+	 * Virtual threads are only looked up by reflection so that the 
+	 * service still runs on virtual machines from before Java 21, 
+	 * where a cached pool stands in.  The limit on requests in flight
+	 * bounds the pool's threads either way, since requests turned away
+	 * finish straight off.
+	 * @return the executor
+	*/
+	private static ExecutorService newExecutor() {
+		try {
+			Method virtual = 
+				Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) virtual.invoke(null);
+		} catch (ReflectiveOperationException e) {
+			// no virtual threads, or only as a preview feature
+		}
+		return Executors.newCachedThreadPool(new ThreadFactory() {
+			private AtomicInteger count = new AtomicInteger();
+			
+			public Thread newThread(Runnable r) {
+				Thread thread = 
+					new Thread(r, "remover-server-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**Cleans the text of a request if there's room for it among the
+	 * requests in flight.
+	 * @param exchange the request
+	 * @param batch <code>true</code> if the request holds a batch of
+	 * documents
+	*/
+	private void remove(HttpExchange exchange, boolean batch) throws IOException {
+		try {
+			if (!exchange.getRequestMethod().equals("POST")) {
+				exchange.getResponseHeaders().set("Allow", "POST");
+				respond(exchange, 405, "Use POST\n");
+				return;
+			}
+			if (!inFlight.tryAcquire()) {
+				rejected.incrementAndGet();
+				exchange.getResponseHeaders().set("Retry-After", RETRY_AFTER);
+				respond(exchange, 503, "Too many requests in flight\n");
+				return;
+			}
+			try {
+				int count = maxInFlight - inFlight.availablePermits();
+				int peak = peakInFlight.get();
+				while (count > peak && !peakInFlight.compareAndSet(peak, count)) {
+					peak = peakInFlight.get();
+				}
+				if (batch) {
+					removeBatch(exchange, System.nanoTime());
+				} else {
+					remove(exchange, System.nanoTime());
+				}
+			} finally {
+				inFlight.release();
+			}
+		} finally {
+			exchange.close();
+		}
+	}
+
+	/**Cleans the text of a request that has been let in and streams
+	 * it back.
+	 * Once the response has started, a failure can only cut it short,
+	 * so clients should treat a response that ends early as failed.
+	 * @param exchange the request
+	 * @param start the time at which the request was let in
+	*/
+	private void remove(HttpExchange exchange, long start) throws IOException {
+		ExtraReturnsRemover remover = null;
+		Charset charset = null;
+		try {
+			remover = engine(exchange.getRequestURI().getRawQuery());
+			charset = charset(exchange.getRequestHeaders().getFirst("Content-Type"));
+		} catch (IllegalArgumentException e) {
+			respond(exchange, 400, e.getMessage() + "\n");
+			return;
+		}
+		accepted.incrementAndGet();
+		CountingInputStream body = 
+			new CountingInputStream(exchange.getRequestBody());
+		exchange.getResponseHeaders().set(
+			"Content-Type", 
+			"text/plain; charset=" + charset.name());
+		// streams the response in chunks as it gets cleaned
+		exchange.sendResponseHeaders(200, 0);
+		try {
+			Writer out = 
+				new BufferedWriter(
+					new OutputStreamWriter(exchange.getResponseBody(), charset),
+					BUFFER_SIZE);
+			remover.remove(new InputStreamReader(body, charset), out);
+			out.flush();
+		} catch (IOException | RuntimeException e) {
+			failures.incrementAndGet();
+			throw e;
+		} finally {
+			bytesIn.addAndGet(body.getCount());
+		}
+		recordTime(start);
+	}
+
+	/**Cleans a batch of documents that has been let in.
+	 * The documents come separated by {@link #BATCH_SEPARATOR} and go
+	 * back separated the same way, in the same order, all cleaned in a 
+	 * single batch run.  Batches larger than the service's limit get 
+	 * turned away with a 413, as soon as their declared length or the
+	 * bytes read so far go over it, so that each batch in flight holds
+	 * at most a bounded amount of memory.
+	 * @param exchange the request
+	 * @param start the time at which the request was let in
+	*/
+	private void removeBatch(HttpExchange exchange, long start) throws IOException {
+		ExtraReturnsRemover remover = null;
+		Charset charset = null;
+		try {
+			remover = engine(exchange.getRequestURI().getRawQuery());
+			charset = charset(exchange.getRequestHeaders().getFirst("Content-Type"));
+		} catch (IllegalArgumentException e) {
+			respond(exchange, 400, e.getMessage() + "\n");
+			return;
+		}
+		ByteArrayOutputStream body = null;
+		try {
+			body = readBatch(exchange);
+		} catch (IOException e) {
+			// counts the request as taken, then failed
+			accepted.incrementAndGet();
+			failures.incrementAndGet();
+			throw e;
+		}
+		if (body == null) {
+			rejected.incrementAndGet();
+			respond(exchange, 413, "Batch larger than " + maxBatch + " bytes\n");
+			return;
+		}
+		accepted.incrementAndGet();
+		bytesIn.addAndGet(body.size());
+		byte[] bytes = null;
+		try {
+			String[] docs = 
+				new String(body.toByteArray(), charset).split(
+					String.valueOf(BATCH_SEPARATOR),
+					-1);
+			String[] texts = remover.removeAll(Arrays.asList(docs)).getTexts();
+			StringBuilder out = new StringBuilder();
+			for (int i = 0; i < texts.length; i++) {
+				if (i > 0) out.append(BATCH_SEPARATOR);
+				out.append(texts[i]);
+			}
+			bytes = out.toString().getBytes(charset);
+		} catch (RuntimeException e) {
+			failures.incrementAndGet();
+			throw e;
+		}
+		exchange.getResponseHeaders().set(
+			"Content-Type", 
+			"text/plain; charset=" + charset.name());
+		exchange.sendResponseHeaders(200, bytes.length);
+		exchange.getResponseBody().write(bytes);
+		recordTime(start);
+	}
+
+	/**Reads the body of a batch request, as long as it fits within the
+	 * service's limit.
+	 * @param exchange the request
+	 * @return the body, or <code>null</code> if it's too large
+	 * @throws IOException if the body can't be read
+	*/
+	private ByteArrayOutputStream readBatch(HttpExchange exchange) 
+		throws IOException {
+		String declared = exchange.getRequestHeaders().getFirst("Content-Length");
+		long length = -1;
+		if (declared != null) {
+			try {
+				length = Long.parseLong(declared.trim());
+			} catch (NumberFormatException e) {
+				// left for the read to bound
+			}
+		}
+		if (length > maxBatch) return null;
+		ByteArrayOutputStream body = 
+			new ByteArrayOutputStream(
+				(length < 0) ? BUFFER_SIZE : (int) Math.max(length, 1));
+		InputStream in = exchange.getRequestBody();
+		byte[] buf = new byte[BUFFER_SIZE];
+		int n = 0;
+		while ((n = in.read(buf)) > 0) {
+			if (body.size() + n > maxBatch) return null;
+			body.write(buf, 0, n);
+		}
+		return body;
+	}
+
+	/**Adds the time taken by a request to the latencies.
+	 * @param start the time at which the request was let in
+	*/
+	private void recordTime(long start) {
+		long time = System.nanoTime() - start;
+		totalTime.addAndGet(time);
+		long max = maxTime.get();
+		while (time > max && !maxTime.compareAndSet(max, time)) {
+			max = maxTime.get();
+		}
+		latencies.incrementAndGet(RemoverMetrics.latencyBucket(time));
+	}
+
+	/**Reports the service's statistics.
+	 * @param exchange the request
+	*/
+	private void stats(HttpExchange exchange) throws IOException {
+		try {
+			double secs = Math.max((System.nanoTime() - started) / 1e9, 1e-9);
+			long done = accepted.get() - failures.get();
+			double mb = bytesIn.get() / (1024.0 * 1024.0);
+			StringBuilder stats = new StringBuilder();
+			stats.append("uptime: ").append(String.format("%.1f", secs)).append(" s\n")
+				.append("threads: ").append(isVirtual() ? "virtual" : "pooled").append('\n')
+				.append("accepted: ").append(accepted.get()).append('\n')
+				.append("rejected: ").append(rejected.get()).append('\n')
+				.append("failed: ").append(failures.get()).append('\n')
+				.append("in flight: ").append(maxInFlight - inFlight.availablePermits())
+				.append(" (peak ").append(peakInFlight.get())
+				.append(", limit ").append(maxInFlight).append(")\n")
+				.append("throughput: ")
+				.append(String.format("%.1f", done / secs)).append(" requests/s, ")
+				.append(String.format("%.2f", mb / secs)).append(" MB/s\n")
+				.append("latency: mean ")
+				.append(String.format("%.3f", done == 0 ? 0 : totalTime.get() / 1e6 / done))
+				.append(" ms, max ")
+				.append(String.format("%.3f", maxTime.get() / 1e6)).append(" ms\n");
+			String[] buckets = RemoverMetrics.getMetrics().getLatencyBuckets();
+			for (int i = 0; i < buckets.length; i++) {
+				stats.append("  ").append(buckets[i]).append(": ")
+					.append(latencies.get(i)).append('\n');
+			}
+			respond(exchange, 200, stats.toString());
+		} finally {
+			exchange.close();
+		}
+	}
+
+	/**Gets the engine for a request's options, compiling it only if no
+	 * earlier request has had the same options.
+	 * @param query the raw query of the request, or <code>null</code> 
+	 * for the default options
+	 * @return the engine
+	 * @throws IllegalArgumentException if the query is malformed
+	*/
+	private ExtraReturnsRemover engine(String query) {
+		String lists = defaults.getLists();
+		int threshold = defaults.getThreshold();
+		boolean emailMarkers = defaults.getEmailMarkers();
+		boolean flowed = defaults.getFlowed();
+		boolean quotedPrintable = defaults.getQuotedPrintable();
+		if (query != null) {
+			StringTokenizer params = new StringTokenizer(query, "&");
+			while (params.hasMoreTokens()) {
+				String param = params.nextToken();
+				int eq = param.indexOf('=');
+				String name = decode(eq == -1 ? param : param.substring(0, eq));
+				String value = eq == -1 ? "" : decode(param.substring(eq + 1));
+				if (name.equals("lists")) {
+					lists = value;
+				} else if (name.equals("threshold")) {
+					try {
+						threshold = Integer.parseInt(value);
+					} catch (NumberFormatException e) {
+						throw new IllegalArgumentException("Bad threshold: " + value);
+					}
+				} else if (name.equals("emailMarkers")) {
+					emailMarkers = isTrue(value);
+				} else if (name.equals("flowed")) {
+					flowed = isTrue(value);
+				} else if (name.equals("quotedPrintable")) {
+					quotedPrintable = isTrue(value);
+				} else {
+					throw new IllegalArgumentException("Unknown parameter: " + name);
+				}
+			}
+		}
+		RemoverOptions options = 
+			new RemoverOptions(
+				lists, threshold, emailMarkers, false, flowed, quotedPrintable);
+		ExtraReturnsRemover remover = engines.get(options);
+		if (remover == null) {
+			// starts afresh rather than growing without bound on requests
+			// that each bring options of their own
+			if (engines.size() >= MAX_ENGINES) engines.clear();
+			remover = new ExtraReturnsRemover(options);
+			engines.put(options, remover);
+		}
+		return remover;
+	}
+
+	/**Gets the charset of a request's text.
+	 * @param type the request's <code>Content-Type</code>, or 
+	 * <code>null</code> if it has none
+	 * @return the charset named in the type, or UTF-8 if none is named
+	 * @throws IllegalArgumentException if the charset isn't supported
+	*/
+	private static Charset charset(String type) {
+		if (type != null) {
+			StringTokenizer params = new StringTokenizer(type, ";");
+			while (params.hasMoreTokens()) {
+				String param = params.nextToken().trim();
+				if (param.toLowerCase().startsWith("charset=")) {
+					String name = param.substring(8).replace("\"", "").trim();
+					try {
+						return Charset.forName(name);
+					} catch (IllegalArgumentException e) {
+						throw new IllegalArgumentException("Unsupported charset: " + name);
+					}
+				}
+			}
+		}
+		return StandardCharsets.UTF_8;
+	}
+
+	/**Decodes a query parameter's name or value.
+	 * @param s the encoded text
+	 * @return the decoded text
+	 * @throws IllegalArgumentException if the text is malformed
+	*/
+	private static String decode(String s) {
+		try {
+			return URLDecoder.decode(s, "UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e); // UTF-8 is always supported
+		}
+	}
+
+	/**Checks whether a flag parameter is set.
+	 * @param value the parameter's value, empty if the parameter is 
+	 * given without one
+	 * @return <code>true</code> for an empty value or "true"
+	*/
+	private static boolean isTrue(String value) {
+		return value.length() == 0 || value.equalsIgnoreCase("true");
+	}
+
+	/**Sends a short plain text response.
+	 * @param exchange the request
+	 * @param status the HTTP status code
+	 * @param text the body of the response
+	*/
+	private static void respond(HttpExchange exchange, int status, String text) 
+		throws IOException {
+		byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+		exchange.sendResponseHeaders(status, bytes.length);
+		exchange.getResponseBody().write(bytes);
+	}
+
+	/**Stream that counts the bytes read through it.
+	*/
+	private static class CountingInputStream extends FilterInputStream {
+		private long count = 0;
+		
+		/**Creates a counting stream.
+		 * @param in the stream to count
+		*/
+		public CountingInputStream(InputStream in) {
+			super(in);
+		}
+		
+		public int read() throws IOException {
+			int b = super.read();
+			if (b != -1) count++;
+			return b;
+		}
+		
+		public int read(byte[] b, int off, int len) throws IOException {
+			int n = super.read(b, off, len);
+			if (n > 0) count += n;
+			return n;
+		}
+		
+		/**Gets the number of bytes read so far.
+		 * @return the count
+		*/
+		public long getCount() { return count; }
+	}
+}
@@ -0,0 +1,686 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is the Text Trix code.
+ *
+ * The Initial Developer of the Original Code is
+ * Text Flex.
+ * Portions created by the Initial Developer are Copyright (C) 2003-4
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s): David Young <dvd@textflex.com>
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+
+package com.textflex.texttrix;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.util.concurrent.*;
+
+/**Output for the extra returns remover.
+ * The remover builds its output from stretches of its source, which it
+ * copies in order, and the few chars that it inserts between them, 
+ * such as spaces in place of joined returns or email reply markers.
+ * Each output is tied to the source whose stretches it copies.
+*/
+abstract class RemoverSink {
+
+	/**Copies a stretch of the source.
+	 * @param from the index in the source of the first char to copy
+	 * @param to the index in the source after the last char to copy
+	*/
+	public abstract void copy(long from, long to);
+
+	/**Inserts chars that aren't in the source.
+	 * @param s the chars to insert
+	*/
+	public abstract void insert(String s);
+
+	/**Output to a char array from a string.
+	 * Stretches of the source get copied straight into the array in 
+	 * bulk, and the array only grows when it runs out of room.
+	 * The output isn't synchronized, and it can be reset to take the
+	 * output of another run, keeping the array.
+	*/
+	static class CharArraySink extends RemoverSink {
+		private String s = null;
+		private int offset = 0; // index in the string of the source's start
+		private char[] buf = null;
+		private int len = 0; // number of chars output so far
+
+		/**Creates an output for a source.
+		 * @param src the source
+		 * @param capacity the initial capacity of the array
+		*/
+		public CharArraySink(RemoverSource.StringSource src, int capacity) {
+			buf = new char[Math.max(capacity, 16)];
+			reset(src);
+		}
+
+		/**Empties the output and ties it to a new source.
+		 * @param src the source
+		*/
+		public void reset(RemoverSource.StringSource src) {
+			setSource(src);
+			len = 0;
+		}
+
+		/**Ties the output to a new source while keeping the output so
+		 * far, so that the output of runs over several sources can be
+		 * gathered in one array.
+		 * @param src the source
+		*/
+		public void setSource(RemoverSource.StringSource src) {
+			s = src.getString();
+			offset = src.getOffset();
+		}
+
+		/**Empties the output and lets go of its source.
+		*/
+		public void clear() {
+			s = null;
+			len = 0;
+		}
+
+		/**Makes room for more chars.
+		 * @param more the number of chars about to be output
+		*/
+		private void ensureRoom(int more) {
+			if (len + more > buf.length) {
+				char[] bigger = new char[Math.max(len + more, buf.length * 2)];
+				System.arraycopy(buf, 0, bigger, 0, len);
+				buf = bigger;
+			}
+		}
+
+		public void copy(long from, long to) {
+			int n = (int) (to - from);
+			ensureRoom(n);
+			s.getChars(offset + (int) from, offset + (int) to, buf, len);
+			len += n;
+		}
+
+		public void insert(String str) {
+			int n = str.length();
+			ensureRoom(n);
+			str.getChars(0, n, buf, len);
+			len += n;
+		}
+
+		/**Appends the output of another run.
+		 * @param out the other output
+		*/
+		public void append(CharArraySink out) {
+			ensureRoom(out.len);
+			System.arraycopy(out.buf, 0, buf, len, out.len);
+			len += out.len;
+		}
+
+		/**Gets the number of chars output so far.
+		 * @return the length of the output
+		*/
+		public int length() { return len; }
+
+		/**Gets the size of the array.
+		 * @return the number of chars that the output can hold without
+		 * growing
+		*/
+		public int capacity() { return buf.length; }
+
+		/**Gets part of the output so far.
+		 * @param from the index in the output of the first char to get
+		 * @return the output from that index on
+		*/
+		public String substring(int from) {
+			return new String(buf, from, len - from);
+		}
+
+		/**Gets the output so far.
+		 * @return the output
+		*/
+		public String toString() {
+			return new String(buf, 0, len);
+		}
+	}
+
+	/**Output as edits to a string.
+	 * Stretches of the source that get copied stay where they are, so 
+	 * only the gaps between them, along with any chars inserted there,
+	 * become edits.
+	*/
+	static class EditSink extends RemoverSink {
+		private RemoverSource.StringSource src = null;
+		private RemoverEdits edits = null;
+		private int copied = 0; // end of the last stretch copied
+
+		/**Creates an output for a source.
+		 * @param aSrc the source
+		 * @param capacity the initial number of edits to make room for
+		*/
+		public EditSink(RemoverSource.StringSource aSrc, int capacity) {
+			src = aSrc;
+			edits = new RemoverEdits(capacity);
+		}
+
+		public void copy(long from, long to) {
+			if (from > copied || edits.getPendingText() > 0) {
+				edits.addEdit(
+					src.getString(),
+					src.getOffset(),
+					copied,
+					(int) from);
+			}
+			copied = (int) to;
+		}
+
+		public void insert(String s) {
+			edits.addText(s);
+		}
+
+		/**Closes the output, turning whatever remains of the source 
+		 * after the last stretch copied into a final edit.
+		 * @return the edits
+		*/
+		public RemoverEdits finish() {
+			int end = (int) src.length();
+			if (end > copied || edits.getPendingText() > 0) {
+				edits.addEdit(src.getString(), src.getOffset(), copied, end);
+			}
+			copied = end;
+			return edits;
+		}
+	}
+
+	/**Output to a table of pieces that point into a string.
+	 * Stretches of the source become pieces without any chars getting
+	 * copied, and stretches that carry straight on from one another 
+	 * share a piece.
+	*/
+	static class PieceSink extends RemoverSink {
+		private RemoverSource.StringSource src = null;
+		private RemoverPieces pieces = null;
+
+		/**Creates an output for a source.
+		 * @param aSrc the source
+		 * @param capacity the initial number of pieces to make room for
+		*/
+		public PieceSink(RemoverSource.StringSource aSrc, int capacity) {
+			src = aSrc;
+			pieces = new RemoverPieces(src.getString(), capacity);
+		}
+
+		public void copy(long from, long to) {
+			pieces.addCopy(src.getOffset() + (int) from, src.getOffset() + (int) to);
+		}
+
+		public void insert(String s) {
+			pieces.addText(s);
+		}
+
+		/**Gets the pieces.
+		 * @return the pieces output so far
+		*/
+		public RemoverPieces getPieces() { return pieces; }
+	}
+
+	/**Output to a writer from a streamed source.
+	 * Errors from the writer get rethrown as 
+	 * {@link UncheckedIOException}s.
+	*/
+	static class WriterSink extends RemoverSink {
+		private RemoverSource.WindowSource src = null;
+		private Writer out = null;
+		private long length = 0; // number of chars written
+
+		/**Creates an output to a writer.
+		 * @param aSrc the source, whose window holds the chars to copy
+		 * @param aOut the writer
+		*/
+		public WriterSink(RemoverSource.WindowSource aSrc, Writer aOut) {
+			src = aSrc;
+			out = aOut;
+		}
+
+		public void copy(long from, long to) {
+			try {
+				src.write(from, to, out);
+				length += to - from;
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+
+		public void insert(String s) {
+			try {
+				out.write(s);
+				length += s.length();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+
+		/**Gets the length of the output so far.
+		 * @return the number of chars written
+		*/
+		public long getLength() { return length; }
+	}
+
+	/**Output that keeps a lone carriage return from running into a line
+	 * feed after it, passing everything on to another output.
+	 * A carriage return that ends a line on its own, whether copied or
+	 * inserted, would read as half of a single carriage return and line
+	 * feed if a line feed that didn't follow it in the source came 
+	 * next, losing a line.  A line feed goes between them instead, so 
+	 * that the carriage return ends its line along with that line feed.
+	*/
+	static class ReturnSink extends RemoverSink {
+		private RemoverSource src = null;
+		private RemoverSink out = null;
+		private boolean endsWithCr = false; // output so far ends with '\r'
+		// end of the last stretch copied, or -1 if chars got inserted 
+		// after it
+		private long copied = -1;
+
+		/**Creates an output that passes on to another.
+		 * @param aSrc the source
+		 * @param aOut the output to pass on to
+		 * @param at the index in the source at which output starts, 
+		 * with the source before it taken to have been output already
+		*/
+		public ReturnSink(RemoverSource aSrc, RemoverSink aOut, long at) {
+			src = aSrc;
+			out = aOut;
+			endsWithCr = at > 0 && src.charAt(at - 1) == '\r';
+			copied = at;
+		}
+
+		public void copy(long from, long to) {
+			if (from < to) {
+				if (endsWithCr && from != copied && src.charAt(from) == '\n') {
+					out.insert("\n");
+				}
+				endsWithCr = src.charAt(to - 1) == '\r';
+				copied = to;
+			}
+			out.copy(from, to);
+		}
+
+		public void insert(String s) {
+			int n = s.length();
+			if (n > 0) {
+				if (endsWithCr && s.charAt(0) == '\n') out.insert("\n");
+				endsWithCr = s.charAt(n - 1) == '\r';
+				copied = -1;
+			}
+			out.insert(s);
+		}
+
+		/**Ends the output where the rest of the source, from a given
+		 * index on, will follow it as it is.
+		 * @param at the index in the source of the rest
+		*/
+		public void finish(long at) {
+			if (endsWithCr && at != copied && src.has(at) && src.charAt(at) == '\n') {
+				out.insert("\n");
+				endsWithCr = false;
+				copied = -1;
+			}
+		}
+	}
+
+	/**Set of direct buffers for output to a file channel.
+	 * Bytes get put into each buffer in turn, and all of the buffers go
+	 * to the channel in a single gathering write once they fill, so 
+	 * that output takes few system calls and never passes through the
+	 * heap.  The sets of buffers are pooled from run to run.
+	*/
+	static class ChannelBuffers {
+		// number of buffers in each set
+		private static final int BUFFER_COUNT = 16;
+		// number of bytes in each buffer
+		private static final int BUFFER_SIZE = 1 << 16;
+		// sets of buffers left over from earlier runs
+		private static final ConcurrentLinkedQueue<ByteBuffer[]> pool =
+			new ConcurrentLinkedQueue<ByteBuffer[]>();
+
+		private FileChannel out = null;
+		private ByteBuffer[] buffers = null;
+		private int current = 0; // buffer being filled
+
+		/**Takes a set of buffers for output to a file channel.
+		 * @param aOut the file channel, written from its current 
+		 * position
+		*/
+		public ChannelBuffers(FileChannel aOut) {
+			out = aOut;
+			buffers = pool.poll();
+			if (buffers == null) {
+				buffers = new ByteBuffer[BUFFER_COUNT];
+				for (int i = 0; i < buffers.length; i++) {
+					buffers[i] = ByteBuffer.allocateDirect(BUFFER_SIZE);
+				}
+			}
+		}
+
+		/**Gets the buffer being filled.
+		 * @return the buffer
+		*/
+		public ByteBuffer current() {
+			return buffers[current];
+		}
+
+		/**Moves on to the next buffer, writing out the set if they have
+		 * all filled.
+		 * @throws IOException if the channel fails
+		*/
+		public void next() throws IOException {
+			if (++current == buffers.length) write();
+		}
+
+		/**Puts bytes into the buffers.
+		 * @param bytes the bytes to put
+		 * @throws IOException if the channel fails
+		*/
+		public void put(ByteBuffer bytes) throws IOException {
+			while (bytes.remaining() > buffers[current].remaining()) {
+				int limit = bytes.limit();
+				bytes.limit(bytes.position() + buffers[current].remaining());
+				buffers[current].put(bytes);
+				bytes.limit(limit);
+				next();
+			}
+			buffers[current].put(bytes);
+		}
+
+		/**Puts a byte into the buffers.
+		 * @param b the byte to put
+		 * @throws IOException if the channel fails
+		*/
+		public void put(byte b) throws IOException {
+			if (!buffers[current].hasRemaining()) next();
+			buffers[current].put(b);
+		}
+
+		/**Writes out the filled buffers in a single gathering write.
+		 * @throws IOException if the channel fails
+		*/
+		private void write() throws IOException {
+			int used = Math.min(current + 1, buffers.length);
+			long remaining = 0;
+			for (int i = 0; i < used; i++) {
+				buffers[i].flip();
+				remaining += buffers[i].remaining();
+			}
+			while (remaining > 0) {
+				remaining -= out.write(buffers, 0, used);
+			}
+			for (int i = 0; i < used; i++) {
+				buffers[i].clear();
+			}
+			current = 0;
+		}
+
+		/**Writes out the rest of the buffers, which then go back to the
+		 * pool.
+		 * @throws IOException if the channel fails
+		*/
+		public void finish() throws IOException {
+			write();
+			pool.offer(buffers);
+			buffers = null;
+		}
+	}
+
+	/**Output encoded straight to a file channel from a streamed source.
+	 * Chars get encoded into a set of {@link ChannelBuffers}.
+	 * Errors from the channel and encoding errors get rethrown as 
+	 * {@link UncheckedIOException}s.
+	*/
+	static class ChannelSink extends RemoverSink {
+		private RemoverSource.WindowSource src = null;
+		private ChannelBuffers buffers = null;
+		private CharsetEncoder encoder = null;
+		private long length = 0; // number of chars output
+		// first half of a surrogate pair split between two outputs
+		private char[] pair = new char[2];
+		private boolean split = false;
+
+		/**Creates an output to a file channel.
+		 * @param aSrc the source, whose window holds the chars to copy
+		 * @param out the file channel, written from its current 
+		 * position
+		 * @param charset the encoding for the output
+		*/
+		public ChannelSink(
+			RemoverSource.WindowSource aSrc,
+			FileChannel out,
+			Charset charset) {
+			src = aSrc;
+			buffers = new ChannelBuffers(out);
+			encoder = 
+				charset.newEncoder()
+					.onMalformedInput(CodingErrorAction.REPORT)
+					.onUnmappableCharacter(CodingErrorAction.REPORT);
+		}
+
+		public void copy(long from, long to) {
+			encode(src.chars(from, to));
+			length += to - from;
+		}
+
+		public void insert(String s) {
+			encode(CharBuffer.wrap(s));
+			length += s.length();
+		}
+
+		/**Encodes chars into the buffers, writing out the buffers 
+		 * whenever they all fill.
+		 * @param chars the chars to encode
+		*/
+		private void encode(CharBuffer chars) {
+			if (split && chars.hasRemaining()) {
+				// rejoins the halves of a pair split between outputs
+				pair[1] = chars.get();
+				split = false;
+				encode(CharBuffer.wrap(pair));
+			}
+			try {
+				while (true) {
+					CoderResult result = 
+						encoder.encode(chars, buffers.current(), false);
+					if (result.isError()) result.throwException();
+					if (result.isUnderflow()) break;
+					buffers.next();
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			if (chars.hasRemaining()) {
+				// holds the first half of a pair until the rest arrives
+				pair[0] = chars.get();
+				split = true;
+			}
+		}
+
+		/**Finishes the output, encoding any chars held back and writing
+		 * out the rest of the buffers, which then go back to the pool.
+		 * @throws IOException if the channel fails or the output ends 
+		 * with an unpaired surrogate
+		*/
+		public void finish() throws IOException {
+			CharBuffer rest = CharBuffer.wrap(pair, 0, split ? 1 : 0);
+			split = false;
+			while (true) {
+				CoderResult result = 
+					encoder.encode(rest, buffers.current(), true);
+				if (result.isError()) result.throwException();
+				if (result.isUnderflow()) break;
+				buffers.next();
+			}
+			while (encoder.flush(buffers.current()).isOverflow()) {
+				buffers.next();
+			}
+			buffers.finish();
+		}
+
+		/**Gets the length of the output so far.
+		 * @return the number of chars output
+		*/
+		public long getLength() { return length; }
+	}
+
+	/**Output of UTF-8 bytes straight to a file channel from a mapped
+	 * file.
+	 * Stretches of the mapped file get put into a set of 
+	 * {@link ChannelBuffers} as they are, without ever being decoded.
+	 * Errors from the channel get rethrown as 
+	 * {@link UncheckedIOException}s.
+	*/
+	static class MappedSink extends RemoverSink {
+		private RemoverSource.MappedSource src = null;
+		private ChannelBuffers buffers = null;
+		private long length = 0; // number of bytes output
+
+		/**Creates an output to a file channel.
+		 * @param aSrc the source, whose mapped bytes get copied
+		 * @param out the file channel, written from its current 
+		 * position
+		*/
+		public MappedSink(RemoverSource.MappedSource aSrc, FileChannel out) {
+			src = aSrc;
+			buffers = new ChannelBuffers(out);
+		}
+
+		public void copy(long from, long to) {
+			try {
+				buffers.put(src.slice(from, to));
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			length += to - from;
+		}
+
+		public void insert(String s) {
+			try {
+				if (isAscii(s)) {
+					for (int i = 0; i < s.length(); i++) {
+						buffers.put((byte) s.charAt(i));
+					}
+					length += s.length();
+				} else {
+					byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+					buffers.put(ByteBuffer.wrap(bytes));
+					length += bytes.length;
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+
+		/**Finishes the output, writing out the rest of the buffers, 
+		 * which then go back to the pool.
+		 * @throws IOException if the channel fails
+		*/
+		public void finish() throws IOException {
+			buffers.finish();
+		}
+
+		/**Gets the length of the output so far.
+		 * @return the number of bytes output
+		*/
+		public long getLength() { return length; }
+	}
+
+	/**Output of UTF-8 bytes to a stream from a byte array.
+	 * Stretches of the array get written as they are, without ever 
+	 * being decoded.
+	 * Errors from the stream get rethrown as 
+	 * {@link UncheckedIOException}s.
+	*/
+	static class OutputStreamSink extends RemoverSink {
+		private RemoverSource.ByteArraySource src = null;
+		private OutputStream out = null;
+		private byte[] ascii = new byte[64]; // room to encode inserts
+		private long length = 0; // number of bytes written
+
+		/**Creates an output to a stream.
+		 * @param aSrc the source, whose array holds the bytes to copy
+		 * @param aOut the stream
+		*/
+		public OutputStreamSink(RemoverSource.ByteArraySource aSrc, OutputStream aOut) {
+			src = aSrc;
+			out = aOut;
+		}
+
+		public void copy(long from, long to) {
+			try {
+				out.write(src.getBytes(), src.getOffset() + (int) from, (int) (to - from));
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			length += to - from;
+		}
+
+		public void insert(String s) {
+			byte[] bytes = ascii;
+			int n = s.length();
+			if (n <= ascii.length && isAscii(s)) {
+				for (int i = 0; i < n; i++) {
+					ascii[i] = (byte) s.charAt(i);
+				}
+			} else {
+				bytes = s.getBytes(StandardCharsets.UTF_8);
+				n = bytes.length;
+			}
+			try {
+				out.write(bytes, 0, n);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			length += n;
+		}
+
+		/**Gets the length of the output so far.
+		 * @return the number of bytes written
+		*/
+		public long getLength() { return length; }
+	}
+
+	/**Checks whether a string is entirely ASCII, and so encodes in 
+	 * UTF-8 as a byte per char.
+	 * @param s the string
+	 * @return <code>true</code> if each of the string's chars is ASCII
+	*/
+	static boolean isAscii(String s) {
+		for (int i = 0; i < s.length(); i++) {
+			if (s.charAt(i) >= 0x80) return false;
+		}
+		return true;
+	}
+}
@@ -0,0 +1,997 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is the Text Trix code.
+ *
+ * The Initial Developer of the Original Code is
+ * Text Flex.
+ * Portions created by the Initial Developer are Copyright (C) 2003-4
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s): David Young <dvd@textflex.com>
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+
+package com.textflex.texttrix;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+
+/**Text for the extra returns remover to work through.
+ * The remover reads the text by absolute index, usually a short way 
+ * ahead of its current position, and never goes back before the 
+ * position it last released.  Sources can therefore hold the entire
+ * text, as for strings, or only a window of it, as for readers.
+*/
+abstract class RemoverSource {
+
+	/**Checks whether the text extends to a given index, reading ahead
+	 * if necessary.
+	 * @param i the index to check
+	 * @return <code>true</code> if the text contains the index
+	*/
+	public abstract boolean has(long i);
+
+	/**Gets a char.
+	 * The index must already have been checked with {@link #has(long)} or
+	 * passed over by one of the searches.
+	 * @param i the index of the char
+	 * @return the char
+	*/
+	public abstract char charAt(long i);
+
+	/**Gets the length of the text, reading through to its end if 
+	 * necessary.
+	 * @return the length
+	*/
+	public abstract long length();
+
+	/**Finds the next occurrence of a char.
+	 * @param c the char to find
+	 * @param from the index at which to start searching
+	 * @return the index of the char, or -1 if the text ends first
+	*/
+	public abstract long indexOf(char c, long from);
+
+	/**Finds the last occurrence of a char.
+	 * @param c the char to find
+	 * @param from the index at which to start searching backward, which
+	 * must not precede the last released index
+	 * @return the index of the char, or -1 if none is found
+	*/
+	public abstract long lastIndexOf(char c, long from);
+
+	/**Finds the next hard return, whether a line feed, a carriage
+	 * return on its own, or a carriage return and line feed together.
+	 * @param from the index at which to start searching
+	 * @return the index of the return's first char, or -1 if the text
+	 * ends first
+	*/
+	public long lineEnd(long from) {
+		for (long i = from; has(i); i++) {
+			char c = charAt(i);
+			if (c == '\n' || c == '\r') return i;
+		}
+		return -1;
+	}
+
+	/**Finds the last char of the last hard return.
+	 * Searches back only as far as the line feed before the index,
+	 * since every return other than a carriage return on its own ends
+	 * with one.
+	 * @param from the index at which to start searching backward, which
+	 * must not precede the last released index
+	 * @return the index of the return's last char, or -1 if none is found
+	*/
+	public long lastLineEnd(long from) {
+		long lf = lastIndexOf('\n', from);
+		for (long i = from; i > lf; i--) {
+			if (has(i) && charAt(i) == '\r') return i;
+		}
+		return lf;
+	}
+
+	/**Gets the length of a hard return.
+	 * The index must already have been checked with {@link #has(long)}.
+	 * @param i the index of the return's first char
+	 * @return 2 for a carriage return and line feed together, or 1 for
+	 * any other return
+	*/
+	public int returnLength(long i) {
+		return (charAt(i) == '\r' && has(i + 1) && charAt(i + 1) == '\n') ? 2 : 1;
+	}
+
+	/**Checks whether a string appears at a given index.
+	 * @param str the string to check for
+	 * @param i the index
+	 * @return <code>true</code> if the text at <code>i</code> starts with
+	 * <code>str</code>
+	*/
+	public boolean startsWith(String str, long i) {
+		int len = str.length();
+		if (len > 0 && !has(i + len - 1)) return false;
+		for (int j = 0; j < len; j++) {
+			if (charAt(i + j) != str.charAt(j)) return false;
+		}
+		return true;
+	}
+
+	/**Copies text up to the next occurrence of a string.
+	 * Sources that only hold part of the text pass along the text 
+	 * as they search, so the string may be arbitrarily far ahead.
+	 * @param str the string to find
+	 * @param from the index at which to start searching
+	 * @param copyFrom the index at which to start copying
+	 * @param limit the index at which to stop copying if the string 
+	 * is never found
+	 * @param out the output to copy to
+	 * @return the index of the string, or -1 if the text ends first
+	*/
+	public abstract long copyUntil(
+		String str,
+		long from,
+		long copyFrom,
+		long limit,
+		RemoverSink out);
+
+	/**Signals that the remover will no longer read any text before a 
+	 * given index.
+	 * @param i the first index still needed
+	*/
+	public void release(long i) {
+	}
+
+	/**Checks whether the source's chars are the bytes of UTF-8 text,
+	 * each given as a char from 0 to 255, rather than UTF-16 chars.
+	 * Every char that the remover looks for is ASCII, which UTF-8
+	 * encodes as itself and never uses within the encoding of any
+	 * other char, so the remover works on such bytes as it would on
+	 * the chars they encode.
+	 * @return <code>true</code> if the source gives UTF-8 bytes
+	*/
+	public boolean isUtf8() {
+		return false;
+	}
+
+	/**Gets the index after a char, skipping the rest of its encoding
+	 * in sources that give bytes, and skipping a carriage return and
+	 * line feed together as a single hard return.
+	 * @param i the index of the char
+	 * @return the index of the next char
+	*/
+	public long next(long i) {
+		return (has(i + 1) && charAt(i) == '\r' && charAt(i + 1) == '\n')
+			? i + 2 : i + 1;
+	}
+
+	/**Gets a code point, decoding it in sources that give bytes.
+	 * Sources that give UTF-16 chars give each char on its own,
+	 * without combining surrogate pairs.
+	 * The index must already have been checked with {@link #has(long)}.
+	 * @param i the index of the code point
+	 * @return the code point
+	*/
+	public int codePointAt(long i) {
+		return charAt(i);
+	}
+
+	/**Counts the UTF-16 chars in a stretch of text, decoding the
+	 * stretch in sources that give bytes.
+	 * The stretch may precede the last released index.
+	 * @param from the index of the start of the stretch
+	 * @param to the index of the end of the stretch, noninclusive
+	 * @return the number of chars, negated if <code>to</code> precedes
+	 * <code>from</code>
+	*/
+	public long charCount(long from, long to) {
+		return to - from;
+	}
+
+	/**Gets an index of the lines of the text that has already been 
+	 * built, so that the remover can take the lines' structure from it.
+	 * @return the index, or <code>null</code> if the source has none
+	*/
+	RemoverLineIndex getLineIndex() {
+		return null;
+	}
+
+	/**Source for text held entirely in a string, or in a stretch of
+	 * one.
+	 * Indices are relative to the start of the stretch.
+	*/
+	static class StringSource extends RemoverSource {
+		private String s = null;
+		private int offset = 0; // index in the string of the stretch's start
+		private int length = 0; // length of the stretch
+		private RemoverLineIndex index = null; // index of the string's lines
+
+		/**Creates a source for a string.
+		 * @param aS the string
+		*/
+		public StringSource(String aS) {
+			this(aS, 0, aS.length());
+		}
+
+		/**Creates a source for a stretch of a string.
+		 * @param aS the string
+		 * @param aOffset the index in the string of the stretch's start
+		 * @param aLength the length of the stretch
+		*/
+		public StringSource(String aS, int aOffset, int aLength) {
+			s = aS;
+			offset = aOffset;
+			length = aLength;
+		}
+
+		/**Creates a source for the whole of an indexed string.
+		 * @param aIndex the index, which holds the string
+		*/
+		public StringSource(RemoverLineIndex aIndex) {
+			this(aIndex.getText());
+			index = aIndex;
+		}
+
+		/**Ties the source to the whole of another string, so that one 
+		 * source can serve for many strings in turn.
+		 * @param aS the string
+		*/
+		public void reset(String aS) {
+			s = aS;
+			offset = 0;
+			length = aS.length();
+			index = null;
+		}
+
+		RemoverLineIndex getLineIndex() {
+			return index;
+		}
+
+		/**Gets the string.
+		 * @return the string
+		*/
+		public String getString() { return s; }
+
+		/**Gets the index in the string of the stretch's start.
+		 * @return the offset
+		*/
+		public int getOffset() { return offset; }
+
+		public boolean has(long i) {
+			return i < length;
+		}
+
+		public char charAt(long i) {
+			return s.charAt(offset + (int) i);
+		}
+
+		public long length() {
+			return length;
+		}
+
+		public long indexOf(char c, long from) {
+			int i = s.indexOf(c, offset + (int) from);
+			return (i == -1 || i >= offset + length) ? -1 : i - offset;
+		}
+
+		public long lastIndexOf(char c, long from) {
+			if (from < 0) return -1;
+			int i = s.lastIndexOf(c, offset + (int) Math.min(from, length - 1));
+			return (i < offset) ? -1 : i - offset;
+		}
+
+		public long lineEnd(long from) {
+			int end = offset + length;
+			for (int i = offset + (int) from; i < end; i++) {
+				// a single comparison rules out all but the control chars
+				char c = s.charAt(i);
+				if (c <= '\r' && (c == '\n' || c == '\r')) return i - offset;
+			}
+			return -1;
+		}
+
+		public boolean startsWith(String str, long i) {
+			return i + str.length() <= length 
+				&& s.startsWith(str, offset + (int) i);
+		}
+
+		public long copyUntil(
+			String str,
+			long from,
+			long copyFrom,
+			long limit,
+			RemoverSink out) {
+			long i = s.indexOf(str, offset + (int) from);
+			i = (i == -1 || i + str.length() > offset + length) 
+				? -1 : i - offset;
+			long copyTo = (i != -1) ? i : Math.min(limit, length);
+			if (copyFrom < copyTo) out.copy(copyFrom, copyTo);
+			return i;
+		}
+	}
+
+	/**Source for text streamed through a window.
+	 * Only a window of the text is held at a time, reaching from the 
+	 * last released index to as far as the remover has read ahead.
+	 * The window slides along the text as the remover releases it and
+	 * only grows if a single line outgrows it, so memory stays bounded
+	 * by the longest line rather than by the length of the text.
+	 * Sections such as <code>&#060;pre&#062;</code> blocks that the 
+	 * remover copies without examining get passed along to the output 
+	 * in window-sized pieces.  Errors from reading the text get 
+	 * rethrown as {@link UncheckedIOException}s.
+	*/
+	abstract static class WindowSource extends RemoverSource {
+		private char[] buf = null; // the window
+		private long base = 0; // index in the text of the window's start
+		private int len = 0; // number of chars in the window
+		private long released = 0; // first index still needed
+		private boolean eof = false; // flags that the reader is spent
+
+		/**Creates a source with a window.
+		 * @param windowSize the initial number of chars to hold at a time
+		*/
+		public WindowSource(int windowSize) {
+			buf = new char[Math.max(windowSize, 16)];
+		}
+
+		/**Reads more of the text.
+		 * @param cbuf the array to read into
+		 * @param off the index in the array at which to start
+		 * @param n the most chars to read, which is at least one
+		 * @return the number of chars read, or -1 if the text has ended
+		 * @throws IOException if the text can't be read
+		*/
+		protected abstract int read(char[] cbuf, int off, int n) 
+			throws IOException;
+
+		/**Reads more of the text into the window.
+		 * Makes room first by dropping the released part of the window,
+		 * or if none of it has been released, by enlarging the window.
+		 * @return <code>true</code> if any chars were read
+		*/
+		private boolean fill() {
+			if (eof) return false;
+			if (len == buf.length) {
+				int drop = (int) Math.min(released - base, len);
+				if (drop > 0) {
+					System.arraycopy(buf, drop, buf, 0, len - drop);
+					base += drop;
+					len -= drop;
+				} else {
+					char[] bigger = new char[buf.length * 2];
+					System.arraycopy(buf, 0, bigger, 0, len);
+					buf = bigger;
+				}
+			}
+			try {
+				int read = read(buf, len, buf.length - len);
+				if (read == -1) {
+					eof = true;
+					return false;
+				}
+				len += read;
+				return true;
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+
+		public boolean has(long i) {
+			while (i >= base + len) {
+				if (!fill()) return false;
+			}
+			return true;
+		}
+
+		public char charAt(long i) {
+			return buf[(int) (i - base)];
+		}
+
+		public long length() {
+			while (!eof) fill();
+			return base + len;
+		}
+
+		public long indexOf(char c, long from) {
+			for (long i = from; has(i); i++) {
+				if (buf[(int) (i - base)] == c) return i;
+			}
+			return -1;
+		}
+
+		public long lastIndexOf(char c, long from) {
+			for (long i = Math.min(from, base + len - 1); i >= base; i--) {
+				if (buf[(int) (i - base)] == c) return i;
+			}
+			return -1;
+		}
+
+		public long lineEnd(long from) {
+			for (long i = from; has(i); i++) {
+				char c = buf[(int) (i - base)];
+				if (c <= '\r' && (c == '\n' || c == '\r')) return i;
+			}
+			return -1;
+		}
+
+		public long copyUntil(
+			String str,
+			long from,
+			long copyFrom,
+			long limit,
+			RemoverSink out) {
+			int strLen = str.length();
+			long i = from;
+			while (has(i + strLen - 1)) {
+				if (startsWith(str, i)) {
+					if (copyFrom < i) out.copy(copyFrom, i);
+					return i;
+				}
+				i++;
+				// passes along the searched text before reading further,
+				// so that the window can slide rather than grow;
+				// text beyond the limit only gets copied if the string
+				// turns up, so it has to stay in the window until then
+				if (i + strLen - 1 >= base + len) {
+					long copyTo = Math.min(i, limit);
+					if (copyFrom < copyTo) {
+						out.copy(copyFrom, copyTo);
+						copyFrom = copyTo;
+					}
+					release(Math.min(i, copyFrom));
+				}
+			}
+			long copyTo = Math.min(length(), limit);
+			if (copyFrom < copyTo) out.copy(copyFrom, copyTo);
+			return -1;
+		}
+
+		public void release(long i) {
+			if (i > released) released = i;
+		}
+
+		/**Writes part of the window.
+		 * @param from the index of the first char to write, which must
+		 * not precede the last released index
+		 * @param to the index after the last char to write
+		 * @param out the writer
+		*/
+		public void write(long from, long to, Writer out) throws IOException {
+			out.write(buf, (int) (from - base), (int) (to - from));
+		}
+
+		/**Gets part of the window, without copying it.
+		 * @param from the index of the first char to get, which must
+		 * not precede the last released index
+		 * @param to the index after the last char to get
+		 * @return a buffer over that part of the window, good until the
+		 * remover reads further
+		*/
+		public CharBuffer chars(long from, long to) {
+			return CharBuffer.wrap(buf, (int) (from - base), (int) (to - from));
+		}
+	}
+
+	/**Source for text streamed from a reader.
+	 * Errors from the reader get rethrown as 
+	 * {@link UncheckedIOException}s.
+	*/
+	static class ReaderSource extends WindowSource {
+		private Reader in = null;
+
+		/**Creates a source for a reader.
+		 * @param aIn the reader
+		 * @param windowSize the initial number of chars to hold at a time
+		*/
+		public ReaderSource(Reader aIn, int windowSize) {
+			super(windowSize);
+			in = aIn;
+		}
+
+		protected int read(char[] cbuf, int off, int n) throws IOException {
+			return in.read(cbuf, off, n);
+		}
+	}
+
+	/**Source for text decoded straight from a file channel.
+	 * The file gets mapped into memory a stretch at a time and decoded
+	 * into the window as the remover reads ahead, so the text never 
+	 * has to be read onto the heap as a whole.  Decoding errors get 
+	 * rethrown as {@link UncheckedIOException}s.
+	*/
+	static class ChannelSource extends WindowSource {
+		// number of bytes to map at a time
+		private static final long MAP_LENGTH = 1L << 26;
+
+		private FileChannel in = null;
+		private CharsetDecoder decoder = null;
+		private long size = 0; // length of the file
+		private long mapStart = 0; // position in the file of the mapped bytes
+		private ByteBuffer bytes = null; // the mapped bytes
+		private boolean flushed = false; // flags that decoding has finished
+
+		/**Creates a source for a file channel.
+		 * The text starts at the channel's current position.
+		 * @param aIn the file channel
+		 * @param charset the file's encoding
+		 * @param windowSize the initial number of chars to hold at a time
+		 * @throws IOException if the channel can't be read
+		*/
+		public ChannelSource(FileChannel aIn, Charset charset, int windowSize) 
+			throws IOException {
+			super(windowSize);
+			in = aIn;
+			decoder = 
+				charset.newDecoder()
+					.onMalformedInput(CodingErrorAction.REPORT)
+					.onUnmappableCharacter(CodingErrorAction.REPORT);
+			size = in.size();
+			map(in.position());
+		}
+
+		/**Maps the next stretch of the file.
+		 * @param position the position in the file at which to start
+		 * @throws IOException if the channel can't be mapped
+		*/
+		private void map(long position) throws IOException {
+			mapStart = position;
+			bytes = 
+				in.map(
+					FileChannel.MapMode.READ_ONLY,
+					position,
+					Math.min(MAP_LENGTH, size - position));
+		}
+
+		protected int read(char[] cbuf, int off, int n) throws IOException {
+			if (flushed) return -1;
+			CharBuffer out = CharBuffer.wrap(cbuf, off, n);
+			while (out.position() == off) {
+				boolean last = mapStart + bytes.limit() == size;
+				CoderResult result = decoder.decode(bytes, out, last);
+				if (result.isError()) result.throwException();
+				if (result.isUnderflow()) {
+					if (!last) {
+						// maps the next stretch from the first byte not 
+						// yet decoded, which may start a char split 
+						// between the two stretches
+						map(mapStart + bytes.position());
+					} else {
+						if (decoder.flush(out).isOverflow()) break;
+						flushed = true;
+						break;
+					}
+				}
+			}
+			int read = out.position() - off;
+			return (read == 0) ? -1 : read;
+		}
+	}
+
+	/**Source for UTF-8 text, given as bytes rather than decoded into
+	 * chars.
+	 * Each byte comes through as a char from 0 to 255, so the remover 
+	 * finds its ASCII markers just as it would in decoded text, while
+	 * multibyte chars pass through to the output untouched.  Malformed
+	 * bytes also pass through untouched, each counting as a char of 
+	 * its own.
+	*/
+	abstract static class Utf8Source extends RemoverSource {
+
+		/**Gets a byte.
+		 * @param i the index of the byte
+		 * @return the byte, from 0 to 255
+		*/
+		protected abstract int byteAt(long i);
+
+		public char charAt(long i) {
+			return (char) byteAt(i);
+		}
+
+		public boolean isUtf8() {
+			return true;
+		}
+
+		/**Gets the length of the encoding of a char.
+		 * @param i the index of the char's first byte
+		 * @return the number of bytes in the char's encoding, or 1 if 
+		 * the bytes there are malformed
+		*/
+		private int sequenceLength(long i) {
+			int lead = byteAt(i);
+			int len = 
+				(lead < 0xc2) ? 1 
+				: (lead < 0xe0) ? 2 
+				: (lead < 0xf0) ? 3 
+				: (lead < 0xf5) ? 4 
+				: 1;
+			for (int j = 1; j < len; j++) {
+				if (!has(i + j) || (byteAt(i + j) & 0xc0) != 0x80) return 1;
+			}
+			return len;
+		}
+
+		public long next(long i) {
+			if (!has(i)) return i + 1;
+			if (byteAt(i) == '\r' && has(i + 1) && byteAt(i + 1) == '\n') return i + 2;
+			return i + sequenceLength(i);
+		}
+
+		public int codePointAt(long i) {
+			int lead = byteAt(i);
+			if (lead < 0x80) return lead;
+			int len = sequenceLength(i);
+			if (len == 1) return 0xfffd; // replaces malformed bytes
+			int c = lead & (0x7f >> len);
+			for (int j = 1; j < len; j++) {
+				c = (c << 6) | (byteAt(i + j) & 0x3f);
+			}
+			return c;
+		}
+
+		public long charCount(long from, long to) {
+			if (from > to) return -charCount(to, from);
+			long count = 0;
+			for (long i = from; i < to; i++) {
+				int b = byteAt(i);
+				// counts lead bytes, with 4-byte chars taking a pair
+				if ((b & 0xc0) != 0x80) count += (b >= 0xf0) ? 2 : 1;
+			}
+			return count;
+		}
+	}
+
+	/**Source for UTF-8 text held entirely in a byte array, or in a 
+	 * stretch of one.
+	 * Indices are relative to the start of the stretch.
+	*/
+	static class ByteArraySource extends Utf8Source {
+		private byte[] b = null;
+		private int offset = 0; // index in the array of the stretch's start
+		private int length = 0; // length of the stretch
+
+		/**Creates a source for a stretch of a byte array.
+		 * @param aB the array
+		 * @param aOffset the index in the array of the stretch's start
+		 * @param aLength the length of the stretch
+		*/
+		public ByteArraySource(byte[] aB, int aOffset, int aLength) {
+			b = aB;
+			offset = aOffset;
+			length = aLength;
+		}
+
+		/**Gets the array.
+		 * @return the array
+		*/
+		public byte[] getBytes() { return b; }
+
+		/**Gets the index in the array of the stretch's start.
+		 * @return the offset
+		*/
+		public int getOffset() { return offset; }
+
+		protected int byteAt(long i) {
+			return b[offset + (int) i] & 0xff;
+		}
+
+		public boolean has(long i) {
+			return i < length;
+		}
+
+		public long length() {
+			return length;
+		}
+
+		public long indexOf(char c, long from) {
+			byte target = (byte) c;
+			int end = offset + length;
+			for (int i = offset + (int) from; i < end; i++) {
+				if (b[i] == target) return i - offset;
+			}
+			return -1;
+		}
+
+		public long lastIndexOf(char c, long from) {
+			byte target = (byte) c;
+			for (int i = offset + (int) Math.min(from, length - 1); i >= offset; i--) {
+				if (b[i] == target) return i - offset;
+			}
+			return -1;
+		}
+
+		public long lineEnd(long from) {
+			int end = offset + length;
+			for (int i = offset + (int) from; i < end; i++) {
+				byte c = b[i];
+				if (c <= '\r' && (c == '\n' || c == '\r')) return i - offset;
+			}
+			return -1;
+		}
+
+		public long copyUntil(
+			String str,
+			long from,
+			long copyFrom,
+			long limit,
+			RemoverSink out) {
+			long i = from;
+			long last = length - str.length();
+			while (i <= last && !startsWith(str, i)) {
+				i = indexOf(str.charAt(0), i + 1);
+				if (i == -1) break;
+			}
+			if (i > last) i = -1;
+			long copyTo = (i != -1) ? i : Math.min(limit, length);
+			if (copyFrom < copyTo) out.copy(copyFrom, copyTo);
+			return i;
+		}
+	}
+
+	/**Source for UTF-8 text mapped straight from a file channel.
+	 * The file gets mapped into memory a stretch at a time, from the 
+	 * last released index on, so that no part of it gets copied onto 
+	 * the heap at all.  A stretch grows past its usual length only to 
+	 * fit a line that's longer still.
+	 * Errors from the channel get rethrown as 
+	 * {@link UncheckedIOException}s.
+	*/
+	static class MappedSource extends Utf8Source {
+		// number of bytes to map at a time
+		private static final long MAP_LENGTH = 1L << 26;
+
+		private FileChannel in = null;
+		private long start = 0; // position in the file of the text's start
+		private long size = 0; // length of the text
+		private long mapStart = 0; // index of the mapped bytes' start
+		private int mapped = 0; // number of mapped bytes
+		private ByteBuffer bytes = null; // the mapped bytes
+		private long released = 0; // first index still needed
+
+		/**Creates a source for a file channel.
+		 * The text starts at the channel's current position.
+		 * @param aIn the file channel
+		 * @throws IOException if the channel can't be read
+		*/
+		public MappedSource(FileChannel aIn) throws IOException {
+			in = aIn;
+			start = in.position();
+			size = in.size() - start;
+		}
+
+		/**Maps the stretch of the file from the last released index 
+		 * through at least a given index.
+		 * @param i the index to map through
+		*/
+		private void map(long i) {
+			long len = Math.min(Math.max(MAP_LENGTH, i + 1 - released), size - released);
+			if (len > Integer.MAX_VALUE) {
+				throw new UncheckedIOException(
+					new IOException("Line too long to map: " + len + " bytes"));
+			}
+			try {
+				bytes = in.map(FileChannel.MapMode.READ_ONLY, start + released, len);
+				// puts the first byte lowest in each long for scanning
+				bytes.order(ByteOrder.LITTLE_ENDIAN);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			mapStart = released;
+			mapped = (int) len;
+		}
+
+		protected int byteAt(long i) {
+			return bytes.get((int) (i - mapStart)) & 0xff;
+		}
+
+		public boolean has(long i) {
+			if (i < mapStart + mapped) return true;
+			if (i >= size) return false;
+			map(i);
+			return true;
+		}
+
+		public long length() {
+			return size;
+		}
+
+		public long indexOf(char c, long from) {
+			long i = from;
+			while (has(i)) {
+				int j = scan(bytes, (int) (i - mapStart), mapped, (byte) c);
+				if (j != -1) return mapStart + j;
+				i = mapStart + mapped;
+			}
+			return -1;
+		}
+
+		public long lineEnd(long from) {
+			long i = from;
+			while (has(i)) {
+				int j = scanReturn(bytes, (int) (i - mapStart), mapped);
+				if (j != -1) return mapStart + j;
+				i = mapStart + mapped;
+			}
+			return -1;
+		}
+
+		public long lastIndexOf(char c, long from) {
+			byte target = (byte) c;
+			for (long i = Math.min(from, mapStart + mapped - 1); i >= mapStart; i--) {
+				if (bytes.get((int) (i - mapStart)) == target) return i;
+			}
+			return -1;
+		}
+
+		public long copyUntil(
+			String str,
+			long from,
+			long copyFrom,
+			long limit,
+			RemoverSink out) {
+			int strLen = str.length();
+			long i = from;
+			while (has(i + strLen - 1)) {
+				// skims to the next place in the mapping where the string
+				// could start
+				int j = 
+					scan(
+						bytes,
+						(int) (i - mapStart),
+						mapped - strLen + 1,
+						(byte) str.charAt(0));
+				if (j != -1) {
+					i = mapStart + j;
+					if (startsWith(str, i)) {
+						if (copyFrom < i) out.copy(copyFrom, i);
+						return i;
+					}
+					i++;
+				} else {
+					i = Math.max(i, mapStart + mapped - strLen + 1);
+				}
+				// passes along the searched text before mapping further,
+				// so that the mapping can slide rather than grow, as for
+				// windows
+				if (i + strLen - 1 >= mapStart + mapped) {
+					long copyTo = Math.min(i, limit);
+					if (copyFrom < copyTo) {
+						out.copy(copyFrom, copyTo);
+						copyFrom = copyTo;
+					}
+					release(Math.min(i, copyFrom));
+				}
+			}
+			long copyTo = Math.min(size, limit);
+			if (copyFrom < copyTo) out.copy(copyFrom, copyTo);
+			return -1;
+		}
+
+		public void release(long i) {
+			if (i > released) released = i;
+		}
+
+		public long charCount(long from, long to) {
+			if (from > to) return -charCount(to, from);
+			if (from >= mapStart) return super.charCount(from, to);
+			// maps the released bytes again to count them, which only
+			// happens when a line starts before the current mapping
+			long count = 0;
+			try {
+				for (long i = from; i < Math.min(to, mapStart); i += MAP_LENGTH) {
+					long len = Math.min(MAP_LENGTH, Math.min(to, mapStart) - i);
+					ByteBuffer earlier = 
+						in.map(FileChannel.MapMode.READ_ONLY, start + i, len);
+					for (int j = 0; j < len; j++) {
+						int b = earlier.get(j) & 0xff;
+						if ((b & 0xc0) != 0x80) count += (b >= 0xf0) ? 2 : 1;
+					}
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			return count + super.charCount(Math.min(to, mapStart), to);
+		}
+
+		/**Finds the next occurrence of a byte in a buffer.
+		 * Skims the buffer a long at a time, checking all eight of its
+		 * bytes at once for the one to find without branching on any 
+		 * of them, which takes a fraction of the time of getting each
+		 * byte from a direct buffer in turn.
+		 * @param buf the buffer, in little-endian order
+		 * @param from the index at which to start searching
+		 * @param to the index at which to stop searching
+		 * @param b the byte to find
+		 * @return the index of the byte, or -1 if none is found
+		*/
+		private static int scan(ByteBuffer buf, int from, int to, byte b) {
+			long pattern = (b & 0xffL) * 0x0101010101010101L;
+			int i = from;
+			for (; i + 8 <= to; i += 8) {
+				// zeroes the bytes that match before finding them
+				long found = zeroBytes(buf.getLong(i) ^ pattern);
+				if (found != 0) {
+					return i + (Long.numberOfTrailingZeros(found) >>> 3);
+				}
+			}
+			for (; i < to; i++) {
+				if (buf.get(i) == b) return i;
+			}
+			return -1;
+		}
+
+		/**Finds the next line feed or carriage return in a buffer,
+		 * skimming it a long at a time as for a single byte.
+		 * @param buf the buffer, in little-endian order
+		 * @param from the index at which to start searching
+		 * @param to the index at which to stop searching
+		 * @return the index of the return, or -1 if none is found
+		 * @see #scan(ByteBuffer, int, int, byte)
+		*/
+		private static int scanReturn(ByteBuffer buf, int from, int to) {
+			int i = from;
+			for (; i + 8 <= to; i += 8) {
+				long x = buf.getLong(i);
+				long found =
+					zeroBytes(x ^ 0x0a0a0a0a0a0a0a0aL)
+						| zeroBytes(x ^ 0x0d0d0d0d0d0d0d0dL);
+				if (found != 0) {
+					return i + (Long.numberOfTrailingZeros(found) >>> 3);
+				}
+			}
+			for (; i < to; i++) {
+				byte b = buf.get(i);
+				if (b == '\n' || b == '\r') return i;
+			}
+			return -1;
+		}
+
+		/**Finds the zero bytes in a long.
+		 * @param x the long
+		 * @return the long with the high bit set in just those bytes of
+		 * <code>x</code> that are zero, with no carries between bytes
+		*/
+		private static long zeroBytes(long x) {
+			return ~(((x & 0x7f7f7f7f7f7f7f7fL) + 0x7f7f7f7f7f7f7f7fL)
+				| x | 0x7f7f7f7f7f7f7f7fL);
+		}
+
+		/**Gets part of the mapped bytes, without copying them.
+		 * @param from the index of the first byte to get, which must
+		 * not precede the last released index
+		 * @param to the index after the last byte to get
+		 * @return a buffer over those bytes, good until the remover 
+		 * reads further
+		*/
+		public ByteBuffer slice(long from, long to) {
+			ByteBuffer slice = bytes.duplicate();
+			slice.limit((int) (to - mapStart));
+			slice.position((int) (from - mapStart));
+			return slice;
+		}
+	}
+}
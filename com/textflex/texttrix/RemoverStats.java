@@ -0,0 +1,101 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is the Text Trix code.
+ *
+ * The Initial Developer of the Original Code is
+ * Text Flex.
+ * Portions created by the Initial Developer are Copyright (C) 2003-4
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s): David Young <dvd@textflex.com>
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+
+package com.textflex.texttrix;
+
+/**Statistics from a run of the extra returns remover.
+ * Each run gathers its own statistics, which can then be totaled 
+ * across runs.
+*/
+public class RemoverStats {
+	private int returnsRemoved = 0; // hard returns joined
+	private int replyRegions = 0; // inline message reply regions
+	private int preBlocks = 0; // <pre>-delimited areas skipped
+	private int linesScanned = 0; // lines worked through
+	private int listLines = 0; // lines kept apart for their list markers
+	private int thresholdLines = 0; // lines kept apart for being short
+
+	/**Adds another set of statistics to these.
+	 * @param stats the statistics to add
+	*/
+	public void add(RemoverStats stats) {
+		returnsRemoved += stats.returnsRemoved;
+		replyRegions += stats.replyRegions;
+		preBlocks += stats.preBlocks;
+		linesScanned += stats.linesScanned;
+		listLines += stats.listLines;
+		thresholdLines += stats.thresholdLines;
+	}
+
+	/**Gets the number of returns removed.
+	 * @return the number of hard returns whose lines were joined
+	*/
+	public int getReturnsRemoved() { return returnsRemoved; }
+	/**Gets the number of reply regions.
+	 * @return the number of inline message reply regions stripped of
+	 * their reply symbols
+	*/
+	public int getReplyRegions() { return replyRegions; }
+	/**Gets the number of pre blocks.
+	 * @return the number of <code>&#060;pre&#062;</code>-delimited areas
+	 * left untouched
+	*/
+	public int getPreBlocks() { return preBlocks; }
+	/**Gets the number of lines scanned.
+	 * @return the number of lines worked through, with the lines of
+	 * <code>&#060;pre&#062;</code>-delimited areas counted as one
+	*/
+	public int getLinesScanned() { return linesScanned; }
+	/**Gets the number of list lines.
+	 * @return the number of lines kept on their own for starting with
+	 * list markers
+	*/
+	public int getListLines() { return listLines; }
+	/**Gets the number of threshold lines.
+	 * @return the number of lines kept on their own for being shorter
+	 * than the threshold
+	*/
+	public int getThresholdLines() { return thresholdLines; }
+
+	/* Counters for the remover */
+	void returnRemoved() { returnsRemoved++; }
+	void replyRegion() { replyRegions++; }
+	void preBlock() { preBlocks++; }
+	void lineScanned() { linesScanned++; }
+	void listLine() { listLines++; }
+	void thresholdLine() { thresholdLines++; }
+}
@@ -0,0 +1,111 @@
+/* ***** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is the Text Trix code.
+ *
+ * The Initial Developer of the Original Code is
+ * Text Flex.
+ * Portions created by the Initial Developer are Copyright (C) 2003-4
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s): David Young <dvd@textflex.com>
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * ***** END LICENSE BLOCK ***** */
+
+
+package com.textflex.texttrix;
+
+import jdk.jfr.*;
+
+/**Flight Recorder event for a run of the extra returns remover.
+ * Lives in its own source tree, apart from the main one, since it 
+ * needs the Flight Recorder classes to build: a Java 8 JDK from update
+ * 262 on, or any later JDK.  The metrics load it by name, and simply 
+ * go without events where it's missing or the virtual machine has no
+ * Flight Recorder.  Each event spans its run, so that its start time 
+ * and duration are the run's own.
+*/
+@Name("com.textflex.texttrix.ExtraReturnsRemoval")
+@Label("Extra Returns Removal")
+@Category({"Text Trix", "Plug-ins"})
+@Description("A run of the Extra Returns Remover")
+@StackTrace(false)
+final class RemoverEvent extends Event implements RemoverTrace {
+	@Label("Input Length")
+	@Description("Number of chars worked through")
+	long inputLength;
+
+	@Label("Output Length")
+	@Description("Number of chars output")
+	long outputLength;
+
+	@Label("Lines Scanned")
+	int linesScanned;
+
+	@Label("Returns Removed")
+	int returnsRemoved;
+
+	@Label("Reply Regions")
+	@Description("Number of inline message reply regions entered")
+	int replyRegions;
+
+	@Label("Pre Blocks")
+	@Description("Number of <pre>-delimited areas skipped")
+	int preBlocks;
+
+	@Label("List Lines")
+	@Description("Number of lines kept on their own for their list markers")
+	int listLines;
+
+	@Label("Threshold Lines")
+	@Description("Number of lines kept on their own for being short")
+	int thresholdLines;
+
+	/**Creates an event.
+	*/
+	RemoverEvent() {
+	}
+
+	public RemoverTrace open() {
+		if (!isEnabled()) return null;
+		RemoverEvent event = new RemoverEvent();
+		event.begin();
+		return event;
+	}
+
+	public void close(long in, long out, RemoverStats stats) {
+		end();
+		if (!shouldCommit()) return;
+		inputLength = in;
+		outputLength = out;
+		linesScanned = stats.getLinesScanned();
+		returnsRemoved = stats.getReturnsRemoved();
+		replyRegions = stats.getReplyRegions();
+		preBlocks = stats.getPreBlocks();
+		listLines = stats.getListLines();
+		thresholdLines = stats.getThresholdLines();
+		commit();
+	}
+}